@@ -1,323 +1,553 @@
-//
-// Eval
-//
-// This class implements tools for evaluating game states for the Zombie
-// Dice game.  These tools include a static function for calculating
-// the expected utility value of a game state using look-ahead to a 
-// fixed depth and a static heuristic evaluation function for estimating
-// game payoff values for non-terminal states.  Since these tools are
-// all static functions, no objects of this class need to be allocated in
-// order to use them.  In general, both heuristic evaluation function
-// values and expected utility values should be between plus and minus
-// "State.win_payoff".
-//
-// Zombie Dice is a trademark of Steve Jackson Games.  For more information
-// about this game, see "zombiedice.sjgames.com".
-//
-// David Noelle -- Sun Nov 17 17:29:53 PST 2019
-//
-
-
-public class Eval {
-
-	// Non-terminal states at this limit should be evaluated using
-	// the given heuristic evaluation function ...
-	static public int depth_limit = 3; 
-
-	// value -- This public function returns the payoff value of
-	// terminal states or the expected utility value of
-	// non-terminal states, backing up heuristic evaluation
-	// values once the given depth has reached the depth limit.
-	static public double value(State s, int depth) {
-		// Stop searching once either a terminal state is reached or the
-		// depth limit is reached ...
-		if ((s.terminal()) || (depth >= depth_limit)) {
-			return (s.payoff());
-		}
-		// Keep searching ...
-		switch (s.current_choice) {
-		case roll:
-			return (Eval.value_roll(s, depth));
-		case stop:
-			return (Eval.value_stop(s, depth));
-		case undecided:
-			return (Eval.value_choose(s, depth));
-		default:
-			// We should never get here ...
-			return (0.0);
-		}
-	}
-
-	// value -- This public function returns the payoff value of
-	// terminal states or the expected utility value of
-	// non-terminal states, backing up heuristic evaluation
-	// values once the given depth has reached the depth limit.
-	static public double value(State s) {
-		return (Eval.value(s, 0));
-	}
-
-	// value_rolled_hand -- Compute the expected utility value of this
-	// state, given that the hand has just been
-	// rolled to the specified dice faces.
-	static double value_rolled_hand(State rolled_s, int depth) {
-		State s = new State(rolled_s);
-		double val = 0.0; // return value
-
-		// Collect brain and blast dice from the hand ...
-		s.collectHand();
-		// Check to see if the current player has been shotgunned ...
-		if (s.shotgunned()) {
-			// This turn is over, so force the choice to stop ...
-			s.current_choice = Choice.stop;
-			// Calculate the expected utility value of the resulting
-			// state by processing the "stop" action ...
-			val = Eval.value(s, depth);
-		} else {
-			// The roll is done, but the turn is not, so set the
-			// choice to undecided ...
-			s.current_choice = Choice.undecided;
-			// Calculate the expected utility value of the resulting
-			// state. Note that this is one of the two places where
-			// the "depth" is incremented ...
-			val = Eval.value(s, (depth + 1));
-		}
-		// Deallocate storage ...
-		s = null;
-		// Return the expected value ...
-		return (val);
-	}
-
-	// value_roll_hand -- Compute the expected utility value of this
-	// state, given that the hand is full. Note that
-	// this function assumes that there are three dice
-	// in a hand (i.e., that the value of "have_size"
-	// is three).
-	static double value_roll_hand(State s, int depth) {
-		double val = 0.0; // return value
-
-		// PLACE YOUR CODE HERE!
-		// 
-		// YOUR CODE SHOULD CALCULATE THE EXPECTED UTILITY VALUE OF
-		// THE GIVEN STATE, GIVEN THAT THE THREE DICE CURRENTLY IN
-		// THE HAND WILL IMMEDIATELY BE ROLLED BY THE CURRENT PLAYER.
-		// 
-		// YOUR CODE SHOULD CALL "value_rolled_hand" AT SOME POINT.
-
-		
-		//sorts through all the possibilities of the first pair of die
-		//if the die has a value of invalid, continue through the loop
-		for (DieFace die1 : DieFace.values()) {
-			if(die1 == DieFace.invalid) {
-				continue;
-			}
-			
-
-			//sorts through all the possibilities of the second pair of die
-			//if the die has a value of invalid, continue through the loop
-			for (DieFace die2 : DieFace.values()) {
-				if(die2 == DieFace.invalid) {
-					continue;
-				}
-				
-
-				//sorts through all the possibilities of the third pair of die
-				//if the die has a value of invalid, continue through the loop
-				for (DieFace die3 : DieFace.values()) {
-					if(die3 == DieFace.invalid) {
-						continue;
-					}
-			
-		double prob;
-		//calculates the probability of rolling the three dice
-		prob = s.rollProb(die1, die2, die3);
-		
-		//rolls the three dice and updates the state to contain these
-		s.roll(die1,die2,die3);
-		
-		//sums the calculated utility of the rolled state and previous utilities
-		double value = value_rolled_hand(s,depth);
-		val += (prob * value);
-		
-				}
-		
-			}	
-		
-		}
-		
-		return (val);
-		
-	}	 
-		
-		
-
-	// value_roll -- Compute the expected utility value of this state,
-	// given that the current player will be immediately
-	// drawing dice and rolling.
-	static double value_roll(State s, int depth) {
-		double val = 0.0; // return value
-
-		if (s.numDiceInHand() == State.hand_size) {
-			// No need to draw more dice, so we need to consider all
-			// possible results of rolling the dice in hand ...
-			val = Eval.value_roll_hand(s, depth);
-		} else {
-			// Need to draw a die ...
-			if (s.cupIsEmpty()) {
-				// The cup is empty. According to the official rules,
-				// we should reuse collected brain dice at this point ...
-				State refilled_state = new State(s);
-				refilled_state.reuseBrains();
-				val = Eval.value_roll(refilled_state, depth);
-				refilled_state = null;
-			} else {
-				// Iterate over all possible colors for the next die ...
-				for (DieColor c : DieColor.values()) {
-					if (c != DieColor.invalid) {
-						double this_draw_prob = s.drawProb(c);
-						// Draw die of this color ...
-						Die d = s.draw(c);
-						if (d != null) {
-							// Recursive call ...
-							double draw_val = Eval.value_roll(s, depth);
-							// Update the expected utility value over all
-							// colors for this die ...
-							val = val + (draw_val * this_draw_prob);
-							// Replace the drawn die in the cup ...
-							s.replace(d);
-						}
-					}
-				}
-			}
-		}
-		// Return expected value ...
-		return (val);
-	}
-
-	// value_stop -- Compute the expected utility value of this state,
-	// given that the current player will not continue
-	// to roll at this point.
-	static double value_stop(State stop_s, int depth) {
-		State s = new State(stop_s);
-		double val = 0.0; // return value
-
-		// Update scores ...
-		s.endTurn();
-		// Check for end of game ...
-		if (s.terminal()) {
-			val = s.payoff();
-		} else {
-			// Move to next player ...
-			s.nextPlayer();
-			// Recursively calculate the expected utility value of the
-			// next player's choice node. Note that this is one of the
-			// two places where "depth" is incremented.
-			val = Eval.value(s, (depth + 1));
-		}
-		// Deallocate storage ...
-		s = null;
-		// Return value ...
-		return (val);
-	}
-
-	// value_choose -- Compute the expected utility value of each of two
-	// actions: rolling and stopping. Return the greater
-	// of these two values if the computer is the current
-	// player, and return the lesser of these two values
-	// if the user is the current player.
-	static double value_choose(State s, int depth) {
-		double eu_roll; // expected utility value of rolling
-		double eu_stop; // expected utility value of stoping
-
-		// Always roll if no brains have been collected ...
-		if (s.brains_collected == 0) {
-			s.current_choice = Choice.roll;
-			eu_roll = Eval.value(s, depth);
-			// Revert the state ...
-			s.current_choice = Choice.undecided;
-			// Return value of rolling ...
-			return (eu_roll);
-		}
-		// First, calculate the case of choosing to roll ...
-		s.current_choice = Choice.roll;
-		eu_roll = Eval.value(s, depth);
-		// Now, calculate the case of choosing to stop ...
-		s.current_choice = Choice.stop;
-		eu_stop = Eval.value(s, depth);
-		// Revert the state ...
-		s.current_choice = Choice.undecided;
-		// Which one is better depends on whose turn it is ...
-		if (s.current_player == Turn.computer) {
-			// MAX node -- Looking for high values ...
-			if (eu_roll >= eu_stop) {
-				return (eu_roll);
-			} else {
-				return (eu_stop);
-			}
-		} else {
-			// MIN node -- Looking for low values ...
-			if (eu_roll <= eu_stop) {
-				return (eu_roll);
-			} else {
-				return (eu_stop);
-			}
-		}
-	}
-
-	// heuristic -- Compute a heuristic evaluation function value for the
-	// specified State object. This function must be
-	// calculated quickly, with no look-ahead search, and it
-	// should be bounded between plus and minus the value of
-	// "State.win_payoff". The heuristic evaluation value
-	// is returned.
-	static public double heuristic(State s) {
-		// Heuristic value to be returned ...
-		double value = 0.0;
-
-		// PLACE YOUR CODE HERE!
-		// 
-		// YOUR CODE SHOULD ESTIMATE THE EXPECTED UTILITY VALUE OF
-		// THE GIVEN STATE WITHOUT PERFORMING ANY LOOK-AHEAD SEARCH.
-		// THE RETURNED HEURISTIC VALUE SHOULD BE BETWEEN PLUS AND
-		// MINUS "State.win_payoff".  THIS FUNCTION SHOULD BE FAST.
-
-		
-		//if the current player is the computer then the computer is in the lead
-		if(s.current_player.equals(Turn.computer)) {
-			value = value + ((Turn.values().length - 1)) * State.win_payoff;
-		}
-		else {
-			value = value - ((Turn.values().length - 1)) * State.win_payoff;
-			
-		}
-		
-		//if the computer eats more brains then the computer wins
-		if (s.comp_brains_eaten + s.brains_collected >= State.brains_to_win) {
-			return (State.win_payoff);
-		}
-		
-		
-		//this variable shows the difference between the number of brains eaten by the user and the computer; and collected by the computer 
-		double hvalue_brains = s.comp_brains_eaten + s.brains_collected;
-		double diff_compuser = hvalue_brains - s.user_brains_eaten;
-		
-		//Calculates the progress of the game with the ratio of the player in the lead and the number of brains to win. Multiply it by the win payoff
-		value = value + ((diff_compuser / State.brains_to_win)) * State.win_payoff;
-			
-		//returns the value
-		value = value * -1;
-		
-		
-		//if the value is less 0 then the computer is in the lead
-		if (value <= 0) {
-			return (-State.win_payoff);
-		}
-		//if not then the user is in the lead
-		else {
-			return (State.win_payoff);
-		}
-		
-		// Return the resulting heuristic value ...
-		//return (value);
-	}
-
-}
+//
+// Eval
+//
+// This class implements tools for evaluating game states for the Zombie
+// Dice game.  These tools include a static function for calculating
+// the expected utility value of a game state using look-ahead to a 
+// fixed depth and a static heuristic evaluation function for estimating
+// game payoff values for non-terminal states.  Since these tools are
+// all static functions, no objects of this class need to be allocated in
+// order to use them.  In general, both heuristic evaluation function
+// values and expected utility values should be between plus and minus
+// "State.win_payoff".
+//
+// With more than two players, "value" performs a paranoid search, in
+// which every opponent is assumed to play against the computer in seat
+// zero.  The alternative "value_maxn" performs a max-n search, in which
+// each player maximizes its own payoff.  It returns a vector of payoffs,
+// one per seat, and caches the values of opponent decision nodes by
+// state key, since the same opponent turn is reached along many paths
+// (e.g., after the computer banks the same number of brains in
+// different ways).
+//
+// If "opponent_model" is set, paranoid search takes each opponent's
+// whole turn as a single chance node over the number of brains banked,
+// with the chances given by the model, rather than searching the
+// opponent's choices as MIN nodes (see "OpponentModel").  The whole
+// turn then takes a single ply of the depth limit.  An opponent
+// found partway through its turn makes each choice as a chance node,
+// rolling or stopping with the chances given by the model, and the
+// less likely choice is not searched at all when it is negligible.
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+// David Noelle -- Sun Nov 17 17:29:53 PST 2019
+//
+
+
+import java.util.*;
+
+
+public class Eval {
+
+	// Non-terminal states at this limit should be evaluated using
+	// the given heuristic evaluation function ...
+	static public int depth_limit = 3; 
+
+	// Use max-n search, rather than paranoid search, for the
+	// computer's decisions ...
+	static public boolean use_maxn = false;
+
+	// Learned table of win probabilities to use in place of the
+	// hand-written heuristic, or null ...
+	static public HeuristicTable heuristic_table = null;
+
+	// Policy for adjusting the search depth to the position, used by
+	// "Searcher", or null to search every position to the same
+	// depth ...
+	static public DepthPolicy depth_policy = null;
+
+	// Model of how the opponents choose, used by paranoid search in
+	// place of assuming that they play against the computer, or
+	// null ...
+	static public OpponentModel opponent_model = null;
+
+	// value -- This public function returns the payoff value of
+	// terminal states or the expected utility value of
+	// non-terminal states, backing up heuristic evaluation
+	// values once the given depth has reached the depth limit.
+	static public double value(State s, int depth) {
+		// Stop searching once either a terminal state is reached or the
+		// depth limit is reached ...
+		if ((s.terminal()) || (depth >= depth_limit)) {
+			return (s.payoff());
+		}
+		// Keep searching ...
+		switch (s.current_choice) {
+		case roll:
+			return (Eval.value_roll(s, depth));
+		case stop:
+			return (Eval.value_stop(s, depth));
+		case undecided:
+			return (Eval.value_choose(s, depth));
+		default:
+			// We should never get here ...
+			return (0.0);
+		}
+	}
+
+	// value -- This public function returns the payoff value of
+	// terminal states or the expected utility value of
+	// non-terminal states, backing up heuristic evaluation
+	// values once the given depth has reached the depth limit.
+	static public double value(State s) {
+		return (Eval.value(s, 0));
+	}
+
+	// value_rolled_hand -- Compute the expected utility value of this
+	// state, given that the hand has just been
+	// rolled to the specified dice faces.
+	static double value_rolled_hand(State rolled_s, int depth) {
+		State s = new State(rolled_s);
+		double val = 0.0; // return value
+
+		// Collect brain and blast dice from the hand ...
+		s.collectHand();
+		// Check to see if the current player has been shotgunned ...
+		if (s.shotgunned()) {
+			// This turn is over, so force the choice to stop ...
+			s.current_choice = Choice.stop;
+			// Calculate the expected utility value of the resulting
+			// state by processing the "stop" action ...
+			val = Eval.value(s, depth);
+		} else {
+			// The roll is done, but the turn is not, so set the
+			// choice to undecided ...
+			s.current_choice = Choice.undecided;
+			// Calculate the expected utility value of the resulting
+			// state. Note that this is one of the two places where
+			// the "depth" is incremented ...
+			val = Eval.value(s, (depth + 1));
+		}
+		// Deallocate storage ...
+		s = null;
+		// Return the expected value ...
+		return (val);
+	}
+
+	// value_roll_hand -- Compute the expected utility value of this
+	// state, given that the hand is full. The distinct
+	// outcomes of the roll, by color, are taken from the
+	// shared "RollTable", rather than enumerating every
+	// face of every die.
+	static double value_roll_hand(State s, int depth) {
+		double val = 0.0; // return value
+
+		int[] hand = RollTable.handColors(s);
+		for (RollTable.Outcome o : RollTable.get().outcomes(hand[1], hand[2], hand[3])) {
+			// Sum the utility of each rolled state, weighted by the
+			// probability of that roll ...
+			val += (o.prob * value_rolled_hand(s.roll(o), depth));
+		}
+		return (val);
+	}
+
+	// value_roll -- Compute the expected utility value of this state,
+	// given that the current player will be immediately
+	// drawing dice and rolling.
+	static double value_roll(State s, int depth) {
+		double val = 0.0; // return value
+
+		if (s.numDiceInHand() == State.hand_size) {
+			// No need to draw more dice, so we need to consider all
+			// possible results of rolling the dice in hand ...
+			val = Eval.value_roll_hand(s, depth);
+		} else {
+			// Need to draw a die ...
+			if (s.cupIsEmpty()) {
+				// The cup is empty. According to the official rules,
+				// we should reuse collected brain dice at this point ...
+				State refilled_state = new State(s);
+				refilled_state.reuseBrains();
+				val = Eval.value_roll(refilled_state, depth);
+				refilled_state = null;
+			} else {
+				// Iterate over all possible colors for the next die ...
+				for (DieColor c : DieColor.values()) {
+					if (c != DieColor.invalid) {
+						double this_draw_prob = s.drawProb(c);
+						// Draw die of this color ...
+						Die d = s.draw(c);
+						if (d != null) {
+							// Recursive call ...
+							double draw_val = Eval.value_roll(s, depth);
+							// Update the expected utility value over all
+							// colors for this die ...
+							val = val + (draw_val * this_draw_prob);
+							// Replace the drawn die in the cup ...
+							s.replace(d);
+						}
+					}
+				}
+			}
+		}
+		// Return expected value ...
+		return (val);
+	}
+
+	// value_stop -- Compute the expected utility value of this state,
+	// given that the current player will not continue
+	// to roll at this point.
+	static double value_stop(State stop_s, int depth) {
+		State s = new State(stop_s);
+		double val = 0.0; // return value
+
+		// Update scores ...
+		s.endTurn();
+		// Check for end of game ...
+		if (s.terminal()) {
+			val = s.payoff();
+		} else {
+			// Move to next player ...
+			s.nextPlayer();
+			// Recursively calculate the expected utility value of the
+			// next player's choice node. Note that this is one of the
+			// two places where "depth" is incremented.
+			val = Eval.value(s, (depth + 1));
+		}
+		// Deallocate storage ...
+		s = null;
+		// Return value ...
+		return (val);
+	}
+
+	// value_choose -- Compute the expected utility value of each of two
+	// actions: rolling and stopping. Return the greater
+	// of these two values if the computer is the current
+	// player, and return the lesser of these two values
+	// if the user is the current player, unless the user
+	// follows the "opponent_model".
+	static double value_choose(State s, int depth) {
+		double eu_roll; // expected utility value of rolling
+		double eu_stop; // expected utility value of stoping
+
+		// An opponent following a model takes its whole turn as one
+		// chance node ...
+		if ((s.currentPlayer() != Turn.computer) && (opponent_model != null) && (Eval.turn_start(s))) {
+			return (Eval.value_turn(s, depth, opponent_model.estimate().turn(s)));
+		}
+		// Always roll if no brains have been collected ...
+		if (s.brains_collected == 0) {
+			s.current_choice = Choice.roll;
+			eu_roll = Eval.value(s, depth);
+			// Revert the state ...
+			s.current_choice = Choice.undecided;
+			// Return value of rolling ...
+			return (eu_roll);
+		}
+		// An opponent following a model partway through its turn is a
+		// chance node ...
+		if ((s.currentPlayer() != Turn.computer) && (opponent_model != null)) {
+			return (Eval.value_modeled(s, depth, opponent_model.estimate().stop(s)));
+		}
+		// First, calculate the case of choosing to roll ...
+		s.current_choice = Choice.roll;
+		eu_roll = Eval.value(s, depth);
+		// Now, calculate the case of choosing to stop ...
+		s.current_choice = Choice.stop;
+		eu_stop = Eval.value(s, depth);
+		// Revert the state ...
+		s.current_choice = Choice.undecided;
+		// Which one is better depends on whose turn it is ...
+		if (s.currentPlayer() == Turn.computer) {
+			// MAX node -- Looking for high values ...
+			if (eu_roll >= eu_stop) {
+				return (eu_roll);
+			} else {
+				return (eu_stop);
+			}
+		} else {
+			// MIN node -- Looking for low values ...
+			if (eu_roll <= eu_stop) {
+				return (eu_roll);
+			} else {
+				return (eu_stop);
+			}
+		}
+	}
+
+	// turn_start -- Return true iff the state is at the start of a turn,
+	// with every die in the cup.
+	static boolean turn_start(State s) {
+		return ((s.brains_collected == 0) && (s.blasts_collected == 0) && (s.cup.num_dice == Cup.total_num_dice));
+	}
+
+	// value_turn -- Compute the expected utility value of an opponent's
+	// whole turn, given the chance that it banks each
+	// number of brains, a shotgun banking none.
+	static double value_turn(State s, int depth, double[] odds) {
+		double val = 0.0; // return value
+
+		for (int b = 0; b < odds.length; b++) {
+			if (odds[b] > 0.0) {
+				// Bank these brains and end the turn ...
+				s.brains_collected = b;
+				val = val + (odds[b] * Eval.value_stop(s, depth));
+			}
+		}
+		// Revert the state ...
+		s.brains_collected = 0;
+		return (val);
+	}
+
+	// value_modeled -- Compute the expected utility value of an
+	// opponent's choice partway through its turn, given
+	// the chance that the opponent stops. A choice less
+	// likely than "OpponentModel.negligible" is not
+	// searched.
+	static double value_modeled(State s, int depth, double p_stop) {
+		double val = 0.0; // return value
+
+		if (p_stop > OpponentModel.negligible) {
+			s.current_choice = Choice.stop;
+			val = Eval.value(s, depth);
+			if (p_stop >= 1.0 - OpponentModel.negligible) {
+				s.current_choice = Choice.undecided;
+				return (val);
+			}
+			val = val * p_stop;
+		} else {
+			p_stop = 0.0;
+		}
+		s.current_choice = Choice.roll;
+		val = val + (Eval.value(s, depth) * (1.0 - p_stop));
+		// Revert the state ...
+		s.current_choice = Choice.undecided;
+		return (val);
+	}
+
+	// value_maxn -- This public function returns the vector of payoff
+	// values, indexed by seat, of terminal states or
+	// the expected utility values of non-terminal
+	// states under max-n search, backing up heuristic
+	// evaluation values at the depth limit.
+	static public double[] value_maxn(State s) {
+		// One cache of opponent decision nodes per depth ...
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Map<StateKey, double[]>[] memo = new Map[depth_limit + 1];
+		for (int i = 0; i <= depth_limit; i++) {
+			memo[i] = new HashMap<StateKey, double[]>();
+		}
+		return (Eval.value_maxn(new State(s), 0, memo));
+	}
+
+	// value_maxn -- Compute the vector of expected utility values of
+	// the given state at the given depth, consulting and
+	// filling the given caches of opponent decisions.
+	static double[] value_maxn(State s, int depth, Map<StateKey, double[]>[] memo) {
+		if ((s.terminal()) || (depth >= depth_limit)) {
+			double[] val = new double[s.num_players];
+			for (int seat = 0; seat < s.num_players; seat++) {
+				val[seat] = s.payoff(seat);
+			}
+			return (val);
+		}
+		switch (s.current_choice) {
+		case roll:
+			return (Eval.value_maxn_roll(s, depth, memo));
+		case stop:
+			return (Eval.value_maxn_stop(s, depth, memo));
+		case undecided:
+			// Opponent turns are reached along many paths, so look
+			// for a cached value first ...
+			if (s.current_seat != 0) {
+				StateKey k = s.key();
+				double[] val = memo[depth].get(k);
+				if (val == null) {
+					val = Eval.value_maxn_choose(s, depth, memo);
+					memo[depth].put(k, val);
+				}
+				return (val);
+			}
+			return (Eval.value_maxn_choose(s, depth, memo));
+		default:
+			// We should never get here ...
+			return (new double[s.num_players]);
+		}
+	}
+
+	// value_maxn_roll -- Compute the vector of expected utility values
+	// of this state, given that the current player
+	// will be immediately drawing dice and rolling.
+	static double[] value_maxn_roll(State s, int depth, Map<StateKey, double[]>[] memo) {
+		double[] val = new double[s.num_players];
+
+		if (s.numDiceInHand() == State.hand_size) {
+			// Consider every distinct roll of the dice in hand ...
+			int[] hand = RollTable.handColors(s);
+			for (RollTable.Outcome o : RollTable.get().outcomes(hand[1], hand[2], hand[3])) {
+				State rolled_s = s.roll(o);
+				rolled_s.collectHand();
+				double[] sub;
+				if (rolled_s.shotgunned()) {
+					rolled_s.current_choice = Choice.stop;
+					sub = Eval.value_maxn(rolled_s, depth, memo);
+				} else {
+					rolled_s.current_choice = Choice.undecided;
+					sub = Eval.value_maxn(rolled_s, (depth + 1), memo);
+				}
+				for (int seat = 0; seat < val.length; seat++) {
+					val[seat] = val[seat] + (o.prob * sub[seat]);
+				}
+			}
+		} else if (s.cupIsEmpty()) {
+			// Reuse collected brain dice ...
+			State refilled_state = new State(s);
+			refilled_state.reuseBrains();
+			val = Eval.value_maxn_roll(refilled_state, depth, memo);
+		} else {
+			// Iterate over all possible colors for the next die ...
+			for (DieColor c : DieColor.values()) {
+				if (c != DieColor.invalid) {
+					double this_draw_prob = s.drawProb(c);
+					Die d = s.draw(c);
+					if (d != null) {
+						double[] sub = Eval.value_maxn_roll(s, depth, memo);
+						for (int seat = 0; seat < val.length; seat++) {
+							val[seat] = val[seat] + (this_draw_prob * sub[seat]);
+						}
+						s.replace(d);
+					}
+				}
+			}
+		}
+		return (val);
+	}
+
+	// value_maxn_stop -- Compute the vector of expected utility values
+	// of this state, given that the current player
+	// will not continue to roll at this point.
+	static double[] value_maxn_stop(State stop_s, int depth, Map<StateKey, double[]>[] memo) {
+		State s = new State(stop_s);
+
+		s.endTurn();
+		if (s.terminal()) {
+			return (Eval.value_maxn(s, depth, memo));
+		}
+		s.nextPlayer();
+		return (Eval.value_maxn(s, (depth + 1), memo));
+	}
+
+	// value_maxn_choose -- Compute the vectors of expected utility
+	// values of rolling and stopping, and return
+	// the one preferred by the current player.
+	static double[] value_maxn_choose(State s, int depth, Map<StateKey, double[]>[] memo) {
+		double[] eu_roll;
+		double[] eu_stop;
+
+		// Always roll if no brains have been collected ...
+		s.current_choice = Choice.roll;
+		eu_roll = Eval.value_maxn(s, depth, memo);
+		if (s.brains_collected == 0) {
+			s.current_choice = Choice.undecided;
+			return (eu_roll);
+		}
+		s.current_choice = Choice.stop;
+		eu_stop = Eval.value_maxn(s, depth, memo);
+		s.current_choice = Choice.undecided;
+		// Each player looks after its own payoff ...
+		if (eu_roll[s.current_seat] >= eu_stop[s.current_seat]) {
+			return (eu_roll);
+		} else {
+			return (eu_stop);
+		}
+	}
+
+	// heuristic -- Compute a heuristic evaluation function value for the
+	// specified State object, from the point of view of the
+	// computer.
+	static public double heuristic(State s) {
+		return (Eval.heuristic(s, 0));
+	}
+
+	// heuristic -- Compute a heuristic evaluation function value for the
+	// specified State object. This function must be
+	// calculated quickly, with no look-ahead search, and it
+	// should be bounded between plus and minus the value of
+	// "State.win_payoff". The heuristic evaluation value
+	// is returned.
+	static public double heuristic(State s, int seat) {
+		return (Eval.heuristic(s.brains_eaten, s.num_players, s.current_seat, s.brains_collected, s.blasts_collected,
+				seat));
+	}
+
+	// heuristic -- Compute a heuristic evaluation function value for the
+	// state encoded under the given view, from the point of view
+	// of the given seat, without decoding the state.
+	static public double heuristic(StateView v, int seat) {
+		return (Eval.heuristic(v.scores(), v.numPlayers(), v.currentSeat(), v.brainsCollected(), v.blastsCollected(),
+				seat));
+	}
+
+	// heuristic -- Compute a heuristic evaluation function value for a
+	// state given by its scores, indexed by seat, and its
+	// turn status, from the point of view of the given
+	// seat. This form lets search engines that do not build
+	// State objects share the same evaluation.
+	static public double heuristic(int[] scores, int num_players, int current_seat, int brains_collected,
+			int blasts_collected, int seat) {
+		// Heuristic value to be returned ...
+		double value = 0.0;
+
+		// Prefer the learned table of win probabilities, if loaded ...
+		if (heuristic_table != null) {
+			return (heuristic_table.value(scores, num_players, current_seat, brains_collected, blasts_collected,
+					seat));
+		}
+
+		// PLACE YOUR CODE HERE!
+		// 
+		// YOUR CODE SHOULD ESTIMATE THE EXPECTED UTILITY VALUE OF
+		// THE GIVEN STATE WITHOUT PERFORMING ANY LOOK-AHEAD SEARCH.
+		// THE RETURNED HEURISTIC VALUE SHOULD BE BETWEEN PLUS AND
+		// MINUS "State.win_payoff".  THIS FUNCTION SHOULD BE FAST.
+
+		
+		//if the current player is the given seat then that player is in the lead
+		if(current_seat == seat) {
+			value = value + (num_players) * State.win_payoff;
+		}
+		else {
+			value = value - (num_players) * State.win_payoff;
+			
+		}
+		
+		//if the player eats more brains then the player wins
+		if (scores[seat] + brains_collected >= State.brains_to_win) {
+			return (State.win_payoff);
+		}
+		
+		//finds the highest score among the other players
+		int best_opponent = 0;
+		for (int i = 0; i < num_players; i++) {
+			if ((i != seat) && (scores[i] > best_opponent)) {
+				best_opponent = scores[i];
+			}
+		}
+		
+		//this variable shows the difference between the number of brains eaten by the best opponent and the player; and collected by the player 
+		double hvalue_brains = scores[seat] + brains_collected;
+		double diff_compuser = hvalue_brains - best_opponent;
+		
+		//Calculates the progress of the game with the ratio of the player in the lead and the number of brains to win. Multiply it by the win payoff
+		value = value + ((diff_compuser / State.brains_to_win)) * State.win_payoff;
+			
+		//returns the value
+		value = value * -1;
+		
+		
+		//if the value is less 0 then the computer is in the lead
+		if (value <= 0) {
+			return (-State.win_payoff);
+		}
+		//if not then the user is in the lead
+		else {
+			return (State.win_payoff);
+		}
+		
+		// Return the resulting heuristic value ...
+		//return (value);
+	}
+
+}
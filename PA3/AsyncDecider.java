@@ -0,0 +1,112 @@
+//
+// AsyncDecider
+//
+// This class implements an asynchronous, cancellable form of the
+// computer's decision in "Game.chooseMove".  A call to "decide" returns
+// at once with a "CompletableFuture" for the move, while the search runs
+// on a worker thread.  The search deepens one ply at a time (see
+// "Searcher.choose" with a "SearchControl"), so when its time runs out
+// the future is completed with the move from the deepest search
+// finished so far, or from a cheap fallback policy if not even a one ply
+// search was finished.
+//
+// Completing the future from outside, whether by cancelling it, by
+// completing it with a move of one's own, or through "orTimeout", stops
+// the search at the next node it visits, so a decision that is no longer
+// wanted (e.g., because the player has gone) frees its worker at once.
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+
+public class AsyncDecider {
+
+	// Worker threads ...
+	final ExecutorService pool;
+
+	// Decisions not yet complete ...
+	final Set<CompletableFuture<Choice>> pending = ConcurrentHashMap.newKeySet();
+
+	// Policy used when the search finished nothing in time ...
+	Policy fallback = new ThresholdPolicy(3);
+
+	// Statistics ...
+	final LongAdder searched = new LongAdder();
+	final LongAdder fallbacks = new LongAdder();
+	final LongAdder cancelled = new LongAdder();
+
+	// Constructor with the number of worker threads specified ...
+	public AsyncDecider(int threads) {
+		AtomicInteger n = new AtomicInteger(0);
+		this.pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "async-decider-" + n.getAndIncrement());
+			t.setDaemon(true);
+			return (t);
+		});
+	}
+
+	// decide -- Start deciding the computer's move in the given state,
+	// taking no more than the given time, or with no limit if
+	// the time is zero, and return the future move. The state
+	// is copied.
+	public CompletableFuture<Choice> decide(State s, long time, TimeUnit unit) {
+		State status = new State(s);
+		long deadline = (time > 0L) ? (System.nanoTime() + Math.max(unit.toNanos(time), 1L)) : 0L;
+		SearchControl control = new SearchControl(0L, deadline);
+		CompletableFuture<Choice> result = new CompletableFuture<Choice>();
+		// However the future completes, the search is no longer needed ...
+		pending.add(result);
+		result.whenComplete((act, e) -> {
+			control.cancel();
+			pending.remove(result);
+		});
+		try {
+			pool.execute(() -> run(status, control, result));
+		} catch (RejectedExecutionException e) {
+			result.completeExceptionally(e);
+		}
+		return (result);
+	}
+
+	// run -- Search for a move on a worker thread, completing the given
+	// future with it unless the future is already complete.
+	void run(State status, SearchControl control, CompletableFuture<Choice> result) {
+		if (result.isDone()) {
+			// Cancelled while waiting for a worker ...
+			cancelled.increment();
+			return;
+		}
+		try {
+			Choice act = Searcher.local().choose(status, control);
+			if (control.cancelled()) {
+				cancelled.increment();
+				return;
+			}
+			if (act == null) {
+				fallbacks.increment();
+				act = fallback.choose(status);
+			} else {
+				searched.increment();
+			}
+			result.complete(act);
+		} catch (RuntimeException e) {
+			result.completeExceptionally(e);
+		}
+	}
+
+	// shutdown -- Stop accepting decisions, and cancel those not yet
+	// complete.
+	public void shutdown() {
+		pool.shutdown();
+		for (CompletableFuture<Choice> result : pending) {
+			result.cancel(false);
+		}
+	}
+
+}
@@ -0,0 +1,138 @@
+//
+// BatchEval
+//
+// This class implements batch decisions for the computer, for serving
+// many decision requests at once.  Many requests are for the same
+// position, particularly early in games, where few scores and turn
+// states are possible.  A batch is canonicalized by "StateKey", which
+// records everything the search depends upon, so two states with the
+// same key always get the same answer.  Each distinct position is then
+// searched once, in parallel, with every search sharing its subtrees
+// with the others through the shared "TransTable", and the answers are
+// fanned back out to the requests in their original order.  Positions
+// are searched in order of their scores, since positions with the same
+// scores share the most subtrees, and those are then still in the table.
+//
+// Usage:  java BatchEval [requests] [depth]
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.util.*;
+import java.util.stream.*;
+
+
+public class BatchEval {
+
+	// Requests and distinct positions seen in all batches ...
+	long requests = 0L;
+	long distinct = 0L;
+
+	// values -- Return the expected utility value of each of the given
+	// states, as computed by "Eval.value".
+	public double[] values(List<State> states) {
+		int[] slot = new int[states.size()];
+		List<State> unique = canonicalize(states, slot, false);
+		double[] unique_values = new double[unique.size()];
+		IntStream.range(0, unique.size()).parallel().forEach(i -> {
+			unique_values[i] = Searcher.local().value(unique.get(i));
+		});
+		double[] values = new double[states.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = unique_values[slot[i]];
+		}
+		return (values);
+	}
+
+	// choose -- Return the move that "Game.chooseMove" would select for
+	// the computer in each of the given states.
+	public Choice[] choose(List<State> states) {
+		int[] slot = new int[states.size()];
+		List<State> unique = canonicalize(states, slot, true);
+		Choice[] unique_moves = new Choice[unique.size()];
+		IntStream.range(0, unique.size()).parallel().forEach(i -> {
+			unique_moves[i] = Searcher.local().choose(unique.get(i));
+		});
+		Choice[] moves = new Choice[states.size()];
+		for (int i = 0; i < moves.length; i++) {
+			moves[i] = unique_moves[slot[i]];
+		}
+		return (moves);
+	}
+
+	// canonicalize -- Return one state for each distinct position among
+	// the given states, filling in the index of the position
+	// of each state. When deciding, the choice already made
+	// in a state does not matter.
+	List<State> canonicalize(List<State> states, int[] slot, boolean deciding) {
+		// Positions in order of scores, so that positions sharing
+		// subtrees are searched close together ...
+		TreeMap<StateKey, List<Integer>> seen = new TreeMap<StateKey, List<Integer>>(
+				Comparator.comparingLong((StateKey k) -> k.scores).thenComparingLong(k -> k.turn));
+		int[] f = new int[Searcher.frame_size];
+		for (int i = 0; i < slot.length; i++) {
+			Searcher.load(states.get(i), f);
+			if (deciding) {
+				f[Searcher.f_choice] = Searcher.undecided;
+			}
+			StateKey k = new StateKey(Searcher.keyTurn(f), Searcher.keyScores(f));
+			seen.computeIfAbsent(k, x -> new ArrayList<Integer>()).add(i);
+		}
+		List<State> unique = new ArrayList<State>();
+		for (List<Integer> same : seen.values()) {
+			for (int i : same) {
+				slot[i] = unique.size();
+			}
+			unique.add(states.get(same.get(0)));
+		}
+		synchronized (this) {
+			requests += slot.length;
+			distinct += unique.size();
+		}
+		return (unique);
+	}
+
+	public static void main(String[] args) {
+		int count = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+		if (args.length > 1) {
+			Eval.depth_limit = Integer.parseInt(args[1]);
+		}
+		List<State> states = EvalBench.positions(count, 1L);
+		TransTable table = TransTable.shared();
+		// Warm up the search engine ...
+		for (int i = 0; i < Math.min(count, 20); i++) {
+			Searcher.local().choose(states.get(i));
+		}
+
+		// One search per request ...
+		if (table != null) {
+			table.clear();
+		}
+		long start = System.nanoTime();
+		Choice[] reference = new Choice[count];
+		for (int i = 0; i < count; i++) {
+			reference[i] = Searcher.local().choose(states.get(i));
+		}
+		long single = System.nanoTime() - start;
+
+		// One batch ...
+		if (table != null) {
+			table.clear();
+		}
+		BatchEval batch = new BatchEval();
+		start = System.nanoTime();
+		Choice[] moves = batch.choose(states);
+		long batched = System.nanoTime() - start;
+		int mismatches = 0;
+		for (int i = 0; i < count; i++) {
+			mismatches += (moves[i] == reference[i]) ? 0 : 1;
+		}
+		System.out.printf("%d requests, %d distinct, depth %d\n", batch.requests, batch.distinct, Eval.depth_limit);
+		System.out.printf("one by one %10.1f decisions/s\n", count / (single / 1.0e9));
+		System.out.printf("batched    %10.1f decisions/s\n", count / (batched / 1.0e9));
+		System.out.printf("%d mismatches\n", mismatches);
+	}
+
+}
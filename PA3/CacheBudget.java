@@ -0,0 +1,213 @@
+//
+// CacheBudget
+//
+// This class implements a single memory budget shared by every cache of
+// search results kept on the heap, so that caches kept by many games at
+// once cannot grow without bound.  The budget is a fraction of the
+// largest heap the JVM may use, set by the "zombie.cache.budget" system
+// property (default 0.25) or by "setFraction".
+//
+// Each cache registers itself, reports its approximate size in bytes,
+// and reports the value per byte of its least valuable entries, where
+// an entry is worth more the deeper the search it holds and the more
+// often it has been used.  Whenever a cache checks the budget and the
+// caches together are over it, the manager asks the caches holding the
+// least value per byte to shed enough bytes to bring the total back
+// under a low water mark, taking as much as possible from the least
+// valuable cache first.  Caches are rarely thread safe, so a request to
+// shed is only noted, and each cache sheds its least valuable entries
+// at its next safe point, on its own thread.
+//
+// The manager keeps metrics for each kind of cache, by name: hits,
+// misses, evictions and bytes evicted.  Caches are held weakly, so a
+// cache dropped by its owner is simply forgotten.
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.io.*;
+import java.lang.ref.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+
+public class CacheBudget {
+
+	// Fraction of the budget to shrink to, once it is exceeded ...
+	static double low_water = 0.9;
+
+	// A cache managed under the budget ...
+	public interface Cache {
+
+		// bytes -- Return the approximate size of the cache, in bytes.
+		// May be called from any thread.
+		long bytes();
+
+		// valuePerByte -- Return the value per byte of the least valuable
+		// entries of the cache. May be called from any thread.
+		double valuePerByte();
+
+		// shed -- Ask the cache to free about the given number of bytes,
+		// now or at its next safe point. May be called from any
+		// thread.
+		void shed(long bytes);
+
+	}
+
+	// Metrics of every cache of one kind ...
+	public static final class Stats {
+		public final String name;
+		final LongAdder hits = new LongAdder();
+		final LongAdder misses = new LongAdder();
+		final LongAdder evictions = new LongAdder();
+		final LongAdder evicted_bytes = new LongAdder();
+
+		Stats(String name) {
+			this.name = name;
+		}
+
+		// hit -- Record a lookup answered by the cache.
+		public void hit() {
+			hits.increment();
+		}
+
+		// miss -- Record a lookup the cache could not answer.
+		public void miss() {
+			misses.increment();
+		}
+
+		// evicted -- Record the eviction of the given number of entries,
+		// of the given total size.
+		public void evicted(long entries, long bytes) {
+			evictions.add(entries);
+			evicted_bytes.add(bytes);
+		}
+
+		// hitRate -- Return the fraction of lookups answered.
+		public double hitRate() {
+			long h = hits.sum();
+			long n = h + misses.sum();
+			return ((n == 0L) ? 0.0 : ((double) h) / n);
+		}
+	}
+
+	// Budget, in bytes ...
+	volatile long budget;
+
+	// Registered caches, and the metrics of each kind ...
+	final List<WeakReference<Cache>> caches = new ArrayList<WeakReference<Cache>>();
+	final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+
+	// Statistics ...
+	final LongAdder checks = new LongAdder();
+	final LongAdder overruns = new LongAdder();
+
+	// The budget shared by all caches ...
+	static final CacheBudget shared = new CacheBudget(
+			Double.parseDouble(System.getProperty("zombie.cache.budget", "0.25")));
+
+	// Constructor with the budget given as a fraction of the maximum
+	// heap size ...
+	public CacheBudget(double fraction) {
+		setFraction(fraction);
+	}
+
+	// shared -- Return the budget shared by all caches.
+	public static CacheBudget shared() {
+		return (shared);
+	}
+
+	// setFraction -- Set the budget to the given fraction of the maximum
+	// heap size.
+	public void setFraction(double fraction) {
+		budget = (long) (fraction * Runtime.getRuntime().maxMemory());
+	}
+
+	// setBytes -- Set the budget in bytes.
+	public void setBytes(long bytes) {
+		budget = bytes;
+	}
+
+	// budget -- Return the budget in bytes.
+	public long budget() {
+		return (budget);
+	}
+
+	// register -- Manage the given cache under this budget, and return
+	// the metrics it should record into, shared with every other
+	// cache of the same name.
+	public Stats register(String name, Cache c) {
+		synchronized (caches) {
+			caches.add(new WeakReference<Cache>(c));
+		}
+		return (stats.computeIfAbsent(name, Stats::new));
+	}
+
+	// live -- Return the registered caches still in use, forgetting the
+	// others.
+	List<Cache> live() {
+		List<Cache> found = new ArrayList<Cache>();
+		synchronized (caches) {
+			for (Iterator<WeakReference<Cache>> it = caches.iterator(); it.hasNext();) {
+				Cache c = it.next().get();
+				if (c == null) {
+					it.remove();
+				} else {
+					found.add(c);
+				}
+			}
+		}
+		return (found);
+	}
+
+	// bytes -- Return the total size of the registered caches.
+	public long bytes() {
+		long total = 0L;
+		for (Cache c : live()) {
+			total += c.bytes();
+		}
+		return (total);
+	}
+
+	// check -- If the caches are over the budget, ask the least valuable
+	// ones to shed bytes. Caches call this at their safe points,
+	// after growing.
+	public void check() {
+		checks.increment();
+		List<Cache> found = live();
+		long total = 0L;
+		for (Cache c : found) {
+			total += c.bytes();
+		}
+		if (total <= budget) {
+			return;
+		}
+		overruns.increment();
+		long excess = total - (long) (budget * low_water);
+		found.sort(Comparator.comparingDouble(Cache::valuePerByte));
+		for (Cache c : found) {
+			if (excess <= 0L) {
+				break;
+			}
+			long take = Math.min(excess, c.bytes());
+			if (take > 0L) {
+				c.shed(take);
+				excess -= take;
+			}
+		}
+	}
+
+	// write -- Print the budget and the metrics of each kind of cache.
+	public void write(PrintStream out) {
+		out.printf("cache budget %.1f MB, %.1f MB in use, %d checks, %d over budget\n", budget / 1.0e6,
+				bytes() / 1.0e6, checks.sum(), overruns.sum());
+		for (Stats s : new TreeMap<String, Stats>(stats).values()) {
+			out.printf("  %-12s %12d hits %12d misses %.4f hit rate %10d evictions %10.1f MB evicted\n", s.name,
+					s.hits.sum(), s.misses.sum(), s.hitRate(), s.evictions.sum(), s.evicted_bytes.sum() / 1.0e6);
+		}
+	}
+
+}
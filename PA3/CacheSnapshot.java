@@ -0,0 +1,233 @@
+//
+// CacheSnapshot
+//
+// This class implements an on-disk snapshot of the search results held in
+// a "TransTable", so that a restarted JVM does not have to learn them all
+// over again.  A snapshot is written when the JVM shuts down and on a
+// timer.  It is read back by mapping the file into memory, and entries
+// are only looked up, one at a time, when the table misses, so the file
+// is paged in lazily as the searches need it.  Entries carried over
+// from the previous snapshot are kept only while there is room, so a
+// snapshot never holds more entries than the table itself.
+//
+// The file starts with a header recording the rules, the heuristic in
+// use (see "TransTable.context") and "Eval.depth_limit".  A snapshot
+// written under different settings is rejected when it is opened.  The
+// header is followed by an open-addressed hash table of 40-byte entries,
+// laid out as in "TransTable", with the check word of an empty slot
+// left at zero.
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+
+public class CacheSnapshot {
+
+	// File format parameters ...
+	static final long magic = 0x5a44435348303031L; // "ZDCSH001"
+	static final int header_bytes = 64;
+	static final int entry_bytes = TransTable.entry_bytes;
+
+	// Mapped file ...
+	final File file;
+	final MappedByteBuffer data;
+	final long num_slots;
+
+	// Timer for periodic snapshots ...
+	static ScheduledExecutorService timer = null;
+
+	// Constructor -- Map the given snapshot file, rejecting one written
+	// under different settings.
+	CacheSnapshot(File file) throws IOException {
+		this.file = file;
+		try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			this.data = ch.map(FileChannel.MapMode.READ_ONLY, 0L, ch.size());
+		}
+		data.order(ByteOrder.LITTLE_ENDIAN);
+		if ((data.capacity() < header_bytes) || (data.getLong(0) != magic)) {
+			throw new IOException("not a cache snapshot: " + file);
+		}
+		if ((data.getInt(8) != TransTable.context()) || (data.getInt(12) != Eval.depth_limit)
+				|| (data.getInt(16) != State.brains_to_win) || (data.getInt(20) != State.num_terminal_blasts)
+				|| (data.getInt(24) != State.hand_size) || (data.getInt(28) != Cup.total_num_dice)) {
+			throw new IOException("cache snapshot was written under different settings: " + file);
+		}
+		this.num_slots = data.getLong(32);
+		if (header_bytes + (num_slots * entry_bytes) != data.capacity()) {
+			throw new IOException("cache snapshot is truncated: " + file);
+		}
+	}
+
+	// open -- Map the given snapshot file, returning null if there is no
+	// usable snapshot there.
+	public static CacheSnapshot open(File file) {
+		if (!(file.exists())) {
+			return (null);
+		}
+		try {
+			return (new CacheSnapshot(file));
+		} catch (IOException e) {
+			System.err.println("IGNORING CACHE SNAPSHOT: " + e.getMessage());
+			return (null);
+		}
+	}
+
+	// slot -- Return the first slot probed for the given key.
+	static long slot(long turn, long scores, long num_slots) {
+		long h = (turn * 0x9e3779b97f4a7c15L) ^ (scores * 0xc2b2ae3d27d4eb4fL);
+		h ^= (h >>> 31);
+		return (h & (num_slots - 1));
+	}
+
+	// get -- Return the value stored for the given key and meta word,
+	// or NaN if there is none.
+	public double get(long turn, long scores, long meta) {
+		long i = slot(turn, scores, num_slots);
+		for (long n = 0; n < num_slots; n++) {
+			int at = (int) (header_bytes + (i * entry_bytes));
+			long c = data.getLong(at + TransTable.w_check);
+			if (c == 0L) {
+				// An empty slot ends the probe ...
+				return (Double.NaN);
+			}
+			long t = data.getLong(at + TransTable.w_turn);
+			long p = data.getLong(at + TransTable.w_scores);
+			long m = data.getLong(at + TransTable.w_meta);
+			if ((t == turn) && (p == scores) && (m == meta)) {
+				return (Double.longBitsToDouble(data.getLong(at + TransTable.w_value)));
+			}
+			i = (i + 1) & (num_slots - 1);
+		}
+		return (Double.NaN);
+	}
+
+	// save -- Write the entries of the given table, and those of the
+	// snapshot it was warmed from, to the given file. The file
+	// is replaced atomically, so a crash during the save leaves
+	// the previous snapshot intact.
+	public static synchronized void save(TransTable table, File file) throws IOException {
+		long[] w = new long[4];
+		// Count the live entries ...
+		long count = 0L;
+		for (long e = 0; e < table.numEntries(); e++) {
+			if (table.entry(e, w)) {
+				count++;
+			}
+		}
+		CacheSnapshot old = table.warm;
+		if (old != null) {
+			count += old.num_slots / 2;
+		}
+		count = Math.min(count, table.numEntries());
+		// Size the hash table at most half full ...
+		long slots = Long.highestOneBit(Math.max(2L * count, 1L)) << 1;
+		long size = header_bytes + (slots * entry_bytes);
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("cache snapshot would be too large: " + size + " bytes");
+		}
+		// Build the hash table directly in a temporary file, mapped into
+		// memory, so that it never has to fit on the heap ...
+		File tmp = new File(file.getPath() + ".tmp");
+		MappedByteBuffer out;
+		try (FileChannel ch = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			out = ch.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+		}
+		out.order(ByteOrder.LITTLE_ENDIAN);
+		out.putLong(0, magic);
+		out.putInt(8, TransTable.context());
+		out.putInt(12, Eval.depth_limit);
+		out.putInt(16, State.brains_to_win);
+		out.putInt(20, State.num_terminal_blasts);
+		out.putInt(24, State.hand_size);
+		out.putInt(28, Cup.total_num_dice);
+		out.putLong(32, slots);
+		// Current entries take precedence over older ones ...
+		long inserted = 0L;
+		for (long e = 0; e < table.numEntries(); e++) {
+			if (table.entry(e, w) && insert(out, slots, w)) {
+				inserted++;
+			}
+		}
+		if (old != null) {
+			for (long i = 0; (i < old.num_slots) && (inserted < count); i++) {
+				int at = (int) (header_bytes + (i * entry_bytes));
+				if (old.data.getLong(at + TransTable.w_check) != 0L) {
+					w[0] = old.data.getLong(at + TransTable.w_turn);
+					w[1] = old.data.getLong(at + TransTable.w_scores);
+					w[2] = old.data.getLong(at + TransTable.w_value);
+					w[3] = old.data.getLong(at + TransTable.w_meta);
+					if (insert(out, slots, w)) {
+						inserted++;
+					}
+				}
+			}
+		}
+		// Flush the temporary file, then move it into place ...
+		out.force();
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// insert -- Insert the given entry words into the hash table in the
+	// given buffer, unless the key is already present or the
+	// table is full. Return true iff the entry was added.
+	static boolean insert(ByteBuffer out, long slots, long[] w) {
+		long i = slot(w[0], w[1], slots);
+		for (long n = 0; n < slots; n++) {
+			int at = (int) (header_bytes + (i * entry_bytes));
+			if (out.getLong(at + TransTable.w_check) == 0L) {
+				out.putLong(at + TransTable.w_turn, w[0]);
+				out.putLong(at + TransTable.w_scores, w[1]);
+				out.putLong(at + TransTable.w_value, w[2]);
+				out.putLong(at + TransTable.w_meta, w[3]);
+				// The check word is never zero for a live entry ...
+				long c = w[0] ^ w[1] ^ w[2] ^ w[3];
+				out.putLong(at + TransTable.w_check, (c == 0L) ? 1L : c);
+				return (true);
+			}
+			if ((out.getLong(at + TransTable.w_turn) == w[0]) && (out.getLong(at + TransTable.w_scores) == w[1])
+					&& (out.getLong(at + TransTable.w_meta) == w[3])) {
+				return (false);
+			}
+			i = (i + 1) & (slots - 1);
+		}
+		return (false);
+	}
+
+	// install -- Warm the given table from the snapshot in the given
+	// file, if there is a usable one, and save the table back
+	// to that file every given number of seconds and when the
+	// JVM shuts down.
+	public static void install(TransTable table, File file, long period_s) {
+		table.warm = open(file);
+		Runnable snapshot = () -> {
+			try {
+				save(table, file);
+			} catch (IOException e) {
+				System.err.println("CANNOT SAVE CACHE SNAPSHOT: " + e.getMessage());
+			}
+		};
+		Runtime.getRuntime().addShutdownHook(new Thread(snapshot));
+		if (period_s > 0) {
+			synchronized (CacheSnapshot.class) {
+				if (timer == null) {
+					timer = Executors.newSingleThreadScheduledExecutor(r -> {
+						Thread t = new Thread(r, "cache-snapshot");
+						t.setDaemon(true);
+						return (t);
+					});
+				}
+			}
+			timer.scheduleAtFixedRate(snapshot, period_s, period_s, TimeUnit.SECONDS);
+		}
+	}
+
+}
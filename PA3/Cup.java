@@ -6,6 +6,14 @@
 // provides utilties for calculating the probabilities of draws of fresh
 // dice from the cup.
 //
+// Copying a cup is cheap: the copy shares the list of dice with the
+// original, and whichever of the two is changed first takes a copy of
+// the list.  The dice themselves are shared as well, each die being
+// owned by at most one cup (and the "State" holding it).  The dice of a
+// cup are only changed in place by the owner of the cup, and a die that
+// is not owned by the cup is copied before its face is changed.  A cup
+// must not be copied by one thread while another thread uses it.
+//
 // Zombie Dice is a trademark of Steve Jackson Games.  For more information
 // about this game, see "zombiedice.sjgames.com".
 //
@@ -32,6 +40,11 @@ public class Cup {
 
 	// Contents of cup as Die objects ...
 	List<Die> dice;
+	// Whether the list of dice is shared with another cup ...
+	boolean shared = false;
+	// Owner of the dice that may be changed in place, renewed
+	// whenever the cup is copied ...
+	Object owner = new Object();
 
 	// Default constructor ...
 	public Cup() {
@@ -46,14 +59,17 @@ public class Cup {
 		Die new_die = null;
 		for (int i_green = 0; i_green < total_num_green; i_green++) {
 			new_die = new Die(DieColor.green);
+			new_die.owner = this.owner;
 			this.dice.add(new_die);
 		}
 		for (int i_yellow = 0; i_yellow < total_num_yellow; i_yellow++) {
 			new_die = new Die(DieColor.yellow);
+			new_die.owner = this.owner;
 			this.dice.add(new_die);
 		}
 		for (int i_red = 0; i_red < total_num_red; i_red++) {
 			new_die = new Die(DieColor.red);
+			new_die.owner = this.owner;
 			this.dice.add(new_die);
 		}
 	}
@@ -64,16 +80,35 @@ public class Cup {
 		this.num_green = c.num_green;
 		this.num_yellow = c.num_yellow;
 		this.num_red = c.num_red;
-		// Allocate list of dice ...
-		this.dice = new ArrayList<Die>();
-		// Copy corresponding Die objects ...
-		Die die_copy;
-		for (Die this_die : c.dice) {
-			die_copy = new Die(this_die);
-			this.dice.add(die_copy);
+		// Share the list of dice until either cup changes it ...
+		this.dice = c.dice;
+		this.shared = true;
+		c.shared = true;
+		// Neither cup may now change the shared dice in place ...
+		c.owner = new Object();
+	}
+
+	// own -- Take a copy of the list of dice, if it is shared, so that
+	// it may be changed.
+	void own() {
+		if (shared) {
+			dice = new ArrayList<Die>(dice);
+			shared = false;
 		}
 	}
 
+	// mutable -- Return a die that may be changed in place, in place of
+	// the given one: the die itself if this cup owns it, and an
+	// owned copy of it otherwise.
+	Die mutable(Die d) {
+		if (d.owner == owner) {
+			return (d);
+		}
+		Die copy = new Die(d);
+		copy.owner = owner;
+		return (copy);
+	}
+
 	// isEmpty -- Returns true iff the cup is empty.
 	public boolean isEmpty() {
 		return (num_dice <= 0);
@@ -81,14 +116,26 @@ public class Cup {
 
 	// shake -- Randomize the order of dice in the cup.
 	public void shake() {
+		own();
 		Collections.shuffle(dice);
 	}
 
+	// shake -- Randomize the order of dice in the cup, drawing from the
+	//          given random number generator. The dice are first put
+	//          in order of color, so that the result depends only on
+	//          the generator and the contents of the cup.
+	public void shake(Random generator) {
+		own();
+		dice.sort((a, b) -> a.getColor().compareTo(b.getColor()));
+		Collections.shuffle(dice, generator);
+	}
+
 	// draw -- Draw a random die from the cup.
 	public Die draw() {
 		if (dice.isEmpty()) {
 			return (null);
 		} else {
+			own();
 			Die drawn_die = dice.get(0);
 			dice.remove(0);
 			// Update counts ...
@@ -125,6 +172,7 @@ public class Cup {
 				drawn_die = dice.get(drawn_die_i);
 				if (drawn_die.getColor() == col) {
 					// Found a die of the required color ...
+					own();
 					dice.remove(drawn_die_i);
 					// Update counts ...
 					num_dice = num_dice - 1;
@@ -156,6 +204,7 @@ public class Cup {
 	// replace -- Replace the given die into the cup.
 	public void replace(Die d) {
 		// Place die in list ...
+		own();
 		dice.add(d);
 		// Update counts ...
 		num_dice = num_dice + 1;
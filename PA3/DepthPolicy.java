@@ -0,0 +1,150 @@
+//
+// DepthPolicy
+//
+// This class implements a policy for adjusting the search depth of the
+// "Searcher" to the position being searched.  Rather than spending the
+// same number of plies everywhere, the search counts depth in fractions
+// of a ply.  Each time the search reaches a new decision, the policy
+// decides how much of the depth budget the step to it uses up.  Critical
+// positions take less than a ply, so the search looks further past them:
+//
+//   - the next roll has a high chance of ending the turn with a shotgun,
+//   - some player is within a few brains of "State.brains_to_win", or
+//   - the cup no longer holds enough dice to fill the hand, so collected
+//     brain dice are about to be reused.
+//
+// Quiet positions, with little risk and no player close to winning, take
+// more than a ply, so the search looks less far past them, though never
+// within the first ply below the root.  All other positions take exactly
+// one ply.  The default settings were chosen with "EvalBench", which
+// compares the nodes visited, and the decisions made, against a search
+// one ply deeper.  As the depth limit is a whole number of plies, any
+// extension, however small, buys a whole extra ply on the paths it is
+// taken on, and that costs far more than the reductions save.  So by
+// default critical positions take a full ply, and only quiet positions
+// are adjusted, taking two plies.
+//
+// The policy is enabled by setting "Eval.depth_policy".  "Eval.depth_limit"
+// is still given in plies.
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+public class DepthPolicy {
+
+	// Depth units in one ply ...
+	static final int ply = 4;
+
+	// Depth used up by the step to a critical position ...
+	int extend_step = ply;
+	// Depth used up by the step to a quiet position ...
+	int reduce_step = 2 * ply;
+	// Positions at least this likely to be shotgunned are critical ...
+	double extend_risk = 0.9;
+	// Positions at most this likely to be shotgunned may be quiet ...
+	double reduce_risk = 0.1;
+	// Positions with a player this close to winning are critical ...
+	int near_win = 1;
+
+	// Shotgun risk by hand, cup and blasts collected, computed when
+	// the policy is built so that the search only indexes an array ...
+	final int max_hand = State.hand_size;
+	final int[] cup_sizes = { Cup.total_num_green + 1, Cup.total_num_yellow + 1, Cup.total_num_red + 1 };
+	final double[] risks;
+
+	// Default constructor ...
+	public DepthPolicy() {
+		int n = (max_hand + 1) * (max_hand + 1) * (max_hand + 1) * cup_sizes[0] * cup_sizes[1] * cup_sizes[2]
+				* State.num_terminal_blasts;
+		this.risks = new double[n];
+		RollTable table = RollTable.get();
+		for (int green = 0; green <= max_hand; green++) {
+			for (int yellow = 0; yellow + green <= max_hand; yellow++) {
+				for (int red = 0; red + yellow + green <= max_hand; red++) {
+					int need = max_hand - (green + yellow + red);
+					for (int cup_green = 0; cup_green + green < cup_sizes[0]; cup_green++) {
+						for (int cup_yellow = 0; cup_yellow + yellow < cup_sizes[1]; cup_yellow++) {
+							for (int cup_red = 0; cup_red + red < cup_sizes[2]; cup_red++) {
+								for (int blasts = 0; blasts < State.num_terminal_blasts; blasts++) {
+									risks[index(green, yellow, red, cup_green, cup_yellow, cup_red, blasts)] = table
+											.risk(green, yellow, red, cup_green, cup_yellow, cup_red, need, blasts);
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	// Constructor with the steps and thresholds specified ...
+	public DepthPolicy(int extend_step, int reduce_step, double extend_risk, double reduce_risk, int near_win) {
+		this();
+		this.extend_step = extend_step;
+		this.reduce_step = reduce_step;
+		this.extend_risk = extend_risk;
+		this.reduce_risk = reduce_risk;
+		this.near_win = near_win;
+	}
+
+	// fingerprint -- Return a hash of the settings of this policy, which
+	// stays the same from one run to the next. Search values
+	// found under different policies must not be mixed.
+	public int fingerprint() {
+		int h = ply;
+		h = (31 * h) + extend_step;
+		h = (31 * h) + reduce_step;
+		h = (31 * h) + Double.hashCode(extend_risk);
+		h = (31 * h) + Double.hashCode(reduce_risk);
+		h = (31 * h) + near_win;
+		return (h);
+	}
+
+	// step -- Return the depth, in units of 1/"ply" plies, used up by
+	// the step to the decision in the given "Searcher" frame,
+	// taken having used up the given depth.
+	int step(int[] f, int depth) {
+		int in_hand = f[Searcher.f_hand] + f[Searcher.f_hand + 1] + f[Searcher.f_hand + 2];
+		int in_cup = f[Searcher.f_cup] + f[Searcher.f_cup + 1] + f[Searcher.f_cup + 2];
+		int need = State.hand_size - in_hand;
+		if (need > in_cup) {
+			// Brain dice are about to be reused ...
+			return (extend_step);
+		}
+		for (int seat = 0; seat < f[Searcher.f_players]; seat++) {
+			int score = f[Searcher.f_scores + seat];
+			if (seat == f[Searcher.f_seat]) {
+				score += f[Searcher.f_brains];
+			}
+			if (score + near_win >= State.brains_to_win) {
+				return (extend_step);
+			}
+		}
+		double risk = risk(f);
+		if (risk >= extend_risk) {
+			return (extend_step);
+		}
+		if ((risk <= reduce_risk) && (depth >= ply)) {
+			return (reduce_step);
+		}
+		return (ply);
+	}
+
+	// index -- Return the index of the shotgun risk of the given hand,
+	// cup and blasts collected.
+	int index(int green, int yellow, int red, int cup_green, int cup_yellow, int cup_red, int blasts) {
+		int i = (((green * (max_hand + 1)) + yellow) * (max_hand + 1)) + red;
+		i = (((((i * cup_sizes[0]) + cup_green) * cup_sizes[1]) + cup_yellow) * cup_sizes[2]) + cup_red;
+		return ((i * State.num_terminal_blasts) + blasts);
+	}
+
+	// risk -- Return the chance that rolling in the given frame ends
+	// the turn with a shotgun, as in "RollTable.shotgunRisk".
+	double risk(int[] f) {
+		return (risks[index(f[Searcher.f_hand], f[Searcher.f_hand + 1], f[Searcher.f_hand + 2], f[Searcher.f_cup],
+				f[Searcher.f_cup + 1], f[Searcher.f_cup + 2], f[Searcher.f_blasts])]);
+	}
+
+}
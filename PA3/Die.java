@@ -45,6 +45,10 @@ public class Die {
 	double Pfeet = 0.0;
 	double Pblast = 0.0;
 
+	// Cup (and state of play) that may change this die in place, or
+	// null. Copies of a die are owned by no one ...
+	Object owner = null;
+
 	// Default constructor ...
 	public Die() {
 		this.color = DieColor.yellow;
@@ -125,8 +129,13 @@ public class Die {
 
 	// roll -- Randomly select a top face symbol for the die.
 	public DieFace roll() {
+		return (roll(new Random()));
+	}
+
+	// roll -- Select a top face symbol for the die, drawing from the
+	//         given random number generator.
+	public DieFace roll(Random generator) {
 		// Pick a random number between zero and one ...
-		Random generator = new Random();
 		double num = generator.nextDouble();
 		// Translate random number into a face symbol ...
 		if (num <= Pbrain) {
@@ -142,8 +151,6 @@ public class Die {
 				}
 			}
 		}
-		// Clean up ...
-		generator = null;
 		// Return the roll ...
 		return (up);
 	}
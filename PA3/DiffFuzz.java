@@ -0,0 +1,274 @@
+//
+// DiffFuzz
+//
+// This class provides a "main" method that checks the fast search
+// engines against the reference "Eval.value" on random states of play.
+// States are generated by playing a few random rolls of a real game
+// from random scores, favoring long turns that empty the cup and force
+// collected brain dice to be reused, and scores close to
+// "State.brains_to_win".  Each state is evaluated by the reference and
+// by every candidate engine, at each given depth, and any value that
+// differs from the reference by more than a small epsilon is reported.
+//
+// States are checked in parallel.  A state is described by the recipe
+// that generated it, so a failing state can be shrunk by simplifying
+// its recipe (fewer players, lower scores, fewer rolls) as long as the
+// engine still fails on it, and the minimal failing state is printed.
+//
+// Usage:  java DiffFuzz [states] [depths, e.g. 1,2] [seed]
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+
+public class DiffFuzz {
+
+	// Largest difference accepted between engine and reference ...
+	static double epsilon = 1.0e-9;
+	// Failures to shrink and print, per engine and depth ...
+	static int max_reports = 3;
+	// Dice tried for each recipe ...
+	static int max_attempts = 16;
+
+	// The recipe for a random state ...
+	static final class Recipe {
+		int num_players;
+		int[] scores;
+		int seat;
+		long seed; // dice for the rolls
+		int rolls; // rolls made before the state is taken
+		int choice; // 0 undecided, 1 roll, 2 stop
+
+		Recipe(Random r) {
+			this.num_players = (r.nextInt(4) == 0) ? 2 + r.nextInt(State.max_players - 1) : 2;
+			this.scores = new int[num_players];
+			for (int i = 0; i < num_players; i++) {
+				if (r.nextInt(3) == 0) {
+					// Close to winning, or just past it ...
+					scores[i] = State.brains_to_win - 3 + r.nextInt(5);
+				} else {
+					scores[i] = r.nextInt(State.brains_to_win);
+				}
+			}
+			this.seat = r.nextInt(num_players);
+			this.seed = r.nextLong();
+			// Long turns empty the cup ...
+			this.rolls = (r.nextInt(3) == 0) ? 4 + r.nextInt(8) : r.nextInt(4);
+			this.choice = r.nextInt(3);
+		}
+
+		Recipe(Recipe other) {
+			this.num_players = other.num_players;
+			this.scores = other.scores.clone();
+			this.seat = other.seat;
+			this.seed = other.seed;
+			this.rolls = other.rolls;
+			this.choice = other.choice;
+		}
+
+		// state -- Return the state made by this recipe, or null if the
+		// recipe makes no playable state.
+		State state() {
+			State s = null;
+			// Most long turns end early with a shotgun, so try a few
+			// dice until the turn lasts as long as the recipe says ...
+			for (int attempt = 0; attempt < max_attempts; attempt++) {
+				Game g = new Game(num_players, seed + attempt);
+				g.verbose = false;
+				s = g.status;
+				System.arraycopy(scores, 0, s.brains_eaten, 0, num_players);
+				s.current_seat = seat;
+				s.current_choice = Choice.undecided;
+				int i = 0;
+				while ((i < rolls) && (s.current_seat == seat) && !(s.terminal())) {
+					g.takeAction(Choice.roll);
+					i++;
+				}
+				if ((i == rolls) && (s.current_seat == seat)) {
+					break;
+				}
+			}
+			if (s.terminal()) {
+				return (null);
+			}
+			if (s.current_choice != Choice.stop) {
+				s.current_choice = (choice == 1) ? Choice.roll : ((choice == 2) ? Choice.stop : Choice.undecided);
+			}
+			return (s);
+		}
+
+		// simpler -- Return the recipes one step simpler than this one.
+		List<Recipe> simpler() {
+			List<Recipe> found = new ArrayList<Recipe>();
+			if (num_players > 2) {
+				Recipe r = new Recipe(this);
+				r.num_players = num_players - 1;
+				r.scores = Arrays.copyOf(scores, r.num_players);
+				r.seat = Math.min(seat, r.num_players - 1);
+				found.add(r);
+			}
+			if (rolls > 0) {
+				Recipe r = new Recipe(this);
+				r.rolls = rolls - 1;
+				found.add(r);
+			}
+			if (choice != 0) {
+				Recipe r = new Recipe(this);
+				r.choice = 0;
+				found.add(r);
+			}
+			if (seat != 0) {
+				Recipe r = new Recipe(this);
+				r.seat = 0;
+				found.add(r);
+			}
+			for (int i = 0; i < num_players; i++) {
+				if (scores[i] > 0) {
+					Recipe r = new Recipe(this);
+					r.scores[i] = 0;
+					found.add(r);
+					r = new Recipe(this);
+					r.scores[i] = scores[i] - 1;
+					found.add(r);
+				}
+			}
+			return (found);
+		}
+	}
+
+	// A candidate engine ...
+	static final class Engine {
+		final String name;
+		final ToDoubleFunction<State> value;
+		final AtomicLong mismatches = new AtomicLong(0L);
+		final AtomicInteger reported = new AtomicInteger(0);
+
+		Engine(String name, ToDoubleFunction<State> value) {
+			this.name = name;
+			this.value = value;
+		}
+
+		// fails -- Return true iff this engine disagrees with the
+		// reference on the given state.
+		boolean fails(State s) {
+			double expected = Eval.value(new State(s));
+			double found = value.applyAsDouble(new State(s));
+			return (!(Math.abs(found - expected) <= epsilon));
+		}
+	}
+
+	// engines -- Return the candidate engines.
+	static List<Engine> engines() {
+		ThreadLocal<Searcher> bare = ThreadLocal.withInitial(() -> {
+			Searcher s = new Searcher();
+			s.useTable(null);
+			return (s);
+		});
+		ThreadLocal<SearchTree> tree = ThreadLocal.withInitial(() -> {
+			SearchTree t = new SearchTree();
+			t.useTable(null);
+			return (t);
+		});
+		List<Engine> engines = new ArrayList<Engine>();
+		engines.add(new Engine("Searcher", s -> bare.get().value(s)));
+		if (TransTable.shared() != null) {
+			engines.add(new Engine("Searcher+TT", s -> Searcher.local().value(s)));
+		}
+		engines.add(new Engine("SearchTree", s -> tree.get().value(s)));
+		return (engines);
+	}
+
+	// shrink -- Return the simplest recipe derived from the given one
+	// on which the given engine still fails.
+	static Recipe shrink(Recipe failing, Engine e) {
+		boolean simpler = true;
+		while (simpler) {
+			simpler = false;
+			for (Recipe r : failing.simpler()) {
+				State s = r.state();
+				if ((s != null) && (e.fails(s))) {
+					failing = r;
+					simpler = true;
+					break;
+				}
+			}
+		}
+		return (failing);
+	}
+
+	// describe -- Return a one line description of the given state.
+	static String describe(State s) {
+		int[] f = new int[Searcher.frame_size];
+		Searcher.load(s, f);
+		int[] scores = Arrays.copyOf(s.brains_eaten, s.num_players);
+		return (String.format("scores %s seat %d choice %s brains %d blasts %d cup %s hand %s blast dice %s brain dice %s",
+				Arrays.toString(scores), s.current_seat, s.current_choice, s.brains_collected, s.blasts_collected,
+				colors(f, Searcher.f_cup), colors(f, Searcher.f_hand), colors(f, Searcher.f_blast_dice),
+				colors(f, Searcher.f_brain_dice)));
+	}
+
+	// colors -- Return the dice counts at the given offset of a frame,
+	// as green/yellow/red.
+	static String colors(int[] f, int offset) {
+		return (f[offset] + "/" + f[offset + 1] + "/" + f[offset + 2]);
+	}
+
+	public static void main(String[] args) {
+		int count = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+		String[] depths = ((args.length > 1) ? args[1] : "1,2").split(",");
+		long seed = (args.length > 2) ? Long.parseLong(args[2]) : 1L;
+		List<Engine> engines = engines();
+		boolean failed = false;
+		for (String d : depths) {
+			Eval.depth_limit = Integer.parseInt(d);
+			for (Engine e : engines) {
+				e.mismatches.set(0L);
+				e.reported.set(0);
+			}
+			AtomicLong checked = new AtomicLong(0L);
+			ConcurrentLinkedQueue<String> reports = new ConcurrentLinkedQueue<String>();
+			long start = System.nanoTime();
+			IntStream.range(0, count).parallel().forEach(i -> {
+				Recipe recipe = new Recipe(new Random(seed + (i * 0x9e3779b97f4a7c15L)));
+				State s = recipe.state();
+				if (s == null) {
+					return;
+				}
+				checked.incrementAndGet();
+				double expected = Eval.value(new State(s));
+				for (Engine e : engines) {
+					double found = e.value.applyAsDouble(new State(s));
+					if (Math.abs(found - expected) <= epsilon) {
+						continue;
+					}
+					e.mismatches.incrementAndGet();
+					if (e.reported.incrementAndGet() <= max_reports) {
+						State small = shrink(recipe, e).state();
+						reports.add(String.format("%s at depth %d: %s\n    eval %.12f, engine %.12f", e.name,
+								Eval.depth_limit, describe(small), Eval.value(new State(small)),
+								e.value.applyAsDouble(new State(small))));
+					}
+				}
+			});
+			double seconds = (System.nanoTime() - start) / 1.0e9;
+			System.out.printf("depth %d: %d states checked, %.1f s\n", Eval.depth_limit, checked.get(), seconds);
+			for (Engine e : engines) {
+				System.out.printf("  %-12s %d mismatches\n", e.name, e.mismatches.get());
+				failed |= (e.mismatches.get() > 0L);
+			}
+			for (String r : reports) {
+				System.out.println("  " + r);
+			}
+		}
+		System.exit(failed ? 1 : 0);
+	}
+
+}
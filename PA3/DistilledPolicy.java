@@ -0,0 +1,94 @@
+//
+// DistilledPolicy
+//
+// This class implements a roll/stop policy distilled from the computer's
+// search, by "PolicyDistiller" from 20000 positions labeled by a search
+// of depth 3.  It follows the exact rules of "ThresholdPolicy", and
+// otherwise stops once the brains collected reach a threshold looked up
+// by the blasts collected, the dice left in the cup, and the gap to the
+// best opponent's score.  It allocates nothing.  Do not edit this file;
+// run "PolicyDistiller" again instead.
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+public class DistilledPolicy implements Policy {
+
+	// Table dimensions ...
+	static final int num_blasts = 3;
+	static final int num_dice = 14;
+	static final int max_gap = 6;
+	static final int num_gaps = 13;
+
+	// Brain thresholds, by blasts, then dice in the cup, then gap ...
+	static final byte[] thresholds = {
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 0 blasts, 0 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 0 blasts, 1 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 0 blasts, 2 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 0 blasts, 3 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 0 blasts, 4 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 0 blasts, 5 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 0 blasts, 6 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 0 blasts, 7 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 0 blasts, 8 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 0 blasts, 9 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 0 blasts, 10 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 0 blasts, 11 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 0 blasts, 12 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 0 blasts, 13 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 1 blasts, 0 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 1 blasts, 1 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 1 blasts, 2 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 1 blasts, 3 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 1 blasts, 4 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 1 blasts, 5 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 1 blasts, 6 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 1 blasts, 7 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 1 blasts, 8 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 1 blasts, 9 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 1 blasts, 10 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 1 blasts, 11 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 1 blasts, 12 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 1 blasts, 13 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 2 blasts, 0 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 2 blasts, 1 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 2 blasts, 2 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 2 blasts, 3 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 2 blasts, 4 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 2 blasts, 5 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 2 blasts, 6 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 2 blasts, 7 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 2 blasts, 8 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 2 blasts, 9 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 2 blasts, 10 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 2 blasts, 11 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 2 blasts, 12 dice
+			14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, // 2 blasts, 13 dice
+	};
+
+	// choose -- Return the action taken by this policy.
+	public Choice choose(State s) {
+		// Always roll if no brains have been collected ...
+		if (s.brains_collected == 0) {
+			return (Choice.roll);
+		}
+		int mine = s.brains_eaten[s.current_seat] + s.brains_collected;
+		int best = s.bestOpponentScore(s.current_seat);
+		// In the final round, the last seat must take the lead ...
+		if ((s.current_seat == s.num_players - 1) && (best >= State.brains_to_win) && (mine <= best)) {
+			return (Choice.roll);
+		}
+		// Bank a winning score ...
+		if (mine >= State.brains_to_win) {
+			return (Choice.stop);
+		}
+		int blasts = Math.min(s.blasts_collected, num_blasts - 1);
+		int dice = Math.min(s.cup.num_dice, num_dice - 1);
+		int gap = Math.max(-max_gap, Math.min(max_gap, mine - best)) + max_gap;
+		int threshold = thresholds[(((blasts * num_dice) + dice) * num_gaps) + gap];
+		return ((s.brains_collected >= threshold) ? Choice.stop : Choice.roll);
+	}
+
+}
@@ -0,0 +1,194 @@
+//
+// EvalBench
+//
+// This class provides a "main" method that benchmarks the search engines
+// for the Zombie Dice game on a common set of positions.  Positions are
+// collected from simulated games, at every point where the computer has
+// to decide whether to roll or stop.  For each engine, the benchmark
+// reports the time per decision, the nodes visited, and the bytes
+// allocated by the benchmarking thread, and it checks that the engines
+// agree with the reference "Eval.value".  Finally, it compares search with
+// and without a "DepthPolicy", by nodes visited and by agreement with the
+// decisions of a search one ply deeper.
+//
+// Usage:  java EvalBench [positions] [depth]
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.lang.management.*;
+import java.util.*;
+
+
+public class EvalBench {
+
+	// positions -- Collect the given number of positions at which the
+	// computer must decide, from seeded simulated games.
+	static List<State> positions(int count, long seed) {
+		List<State> found = new ArrayList<State>();
+		Random generator = new Random(seed);
+		Policy[] policies = { new ThresholdPolicy(2 + generator.nextInt(4)), new ThresholdPolicy(3) };
+		while (found.size() < count) {
+			Game g = new Game(generator.nextLong());
+			g.verbose = false;
+			while ((!(g.status.terminal())) && (found.size() < count)) {
+				if ((g.status.current_seat == 0) && (g.status.brains_collected > 0)) {
+					found.add(new State(g.status));
+				}
+				g.takeAction(policies[g.status.current_seat].choose(g.status));
+			}
+		}
+		return (found);
+	}
+
+	// allocated -- Return the bytes allocated so far by this thread, or
+	// -1 if the JVM cannot tell.
+	static long allocated() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return (((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId()));
+		}
+		return (-1L);
+	}
+
+	// report -- Print one line of results.
+	static void report(String name, int count, long nanos, long nodes, long bytes) {
+		System.out.printf("%-12s %10.3f ms/decision %12d nodes %14d bytes/decision\n", name,
+				nanos / 1.0e6 / count, nodes, (bytes < 0) ? -1 : (bytes / count));
+	}
+
+	public static void main(String[] args) {
+		int count = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+		if (args.length > 1) {
+			Eval.depth_limit = Integer.parseInt(args[1]);
+		}
+		List<State> states = positions(count, 1L);
+		double[] reference = new double[count];
+		Searcher searcher = Searcher.local();
+
+		// Warm up both engines ...
+		for (int i = 0; i < Math.min(count, 20); i++) {
+			Eval.value(new State(states.get(i)));
+			searcher.value(states.get(i));
+		}
+
+		// Reference engine ...
+		long bytes = allocated();
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			reference[i] = Eval.value(new State(states.get(i)));
+		}
+		report("Eval", count, System.nanoTime() - start, -1L, allocated() - bytes);
+
+		// Primitive engine, alone and with the shared table ...
+		TransTable table = TransTable.shared();
+		searcher.useTable(null);
+		int mismatches = run("Searcher", searcher, states, reference);
+		if (table != null) {
+			table.clear();
+			searcher.useTable(table);
+			mismatches += run("Searcher+TT", searcher, states, reference);
+			System.out.printf("table of %d MB, hit rate %.3f\n", table.bytes() >> 20, table.hitRate());
+		}
+
+		// Search tree kept from one decision to the next ...
+		SearchTree tree = new SearchTree();
+		tree.useTable(null);
+		bytes = allocated();
+		start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			double v = tree.value(states.get(i));
+			if (Math.abs(v - reference[i]) > 1.0e-9) {
+				mismatches++;
+			}
+		}
+		report("SearchTree", count, System.nanoTime() - start, tree.visited(), allocated() - bytes);
+		System.out.printf("tree of %d nodes, %d expanded\n", tree.size(), tree.expanded());
+		System.out.printf("%d positions, depth %d, %d mismatches\n", count, Eval.depth_limit, mismatches);
+
+		// Depth adjustment, judged against decisions one ply deeper ...
+		adjust(states);
+	}
+
+	// adjust -- Compare searches at the fixed depth limit, with and
+	// without a depth adjustment policy, and at one more ply.
+	// Report the nodes visited by each, how often its decisions
+	// agree with those of the deeper search, and how far its
+	// margin of rolling over stopping is from the deeper one.
+	static void adjust(List<State> states) {
+		Searcher searcher = new Searcher();
+		int depth = Eval.depth_limit;
+		Eval.depth_limit = depth + 1;
+		double[] deeper = margins("deeper", searcher, states, null);
+		Eval.depth_limit = depth;
+		double[] fixed = margins("fixed", searcher, states, null);
+		double[] adjusted = margins("adjusted", searcher, states, new DepthPolicy());
+		System.out.printf("against depth %d: fixed agrees %d of %d, margin error %.3f\n", depth + 1,
+				agree(fixed, deeper), states.size(), error(fixed, deeper));
+		System.out.printf("against depth %d: adjusted agrees %d of %d, margin error %.3f\n", depth + 1,
+				agree(adjusted, deeper), states.size(), error(adjusted, deeper));
+	}
+
+	// margins -- Return the expected utility value of rolling less that
+	// of stopping in each of the given states, under the given
+	// depth policy, and report the nodes visited.
+	static double[] margins(String name, Searcher searcher, List<State> states, DepthPolicy policy) {
+		double[] margins = new double[states.size()];
+		Eval.depth_policy = policy;
+		if (searcher.table != null) {
+			searcher.table.clear();
+		}
+		searcher.resetNodes();
+		long start = System.nanoTime();
+		for (int i = 0; i < margins.length; i++) {
+			State s = new State(states.get(i));
+			s.current_choice = Choice.roll;
+			margins[i] = searcher.value(s);
+			s.current_choice = Choice.stop;
+			margins[i] -= searcher.value(s);
+		}
+		report(name, margins.length, System.nanoTime() - start, searcher.nodes(), -1L);
+		Eval.depth_policy = null;
+		return (margins);
+	}
+
+	// agree -- Return the number of positions in which the given margins
+	// lead to the same move.
+	static int agree(double[] a, double[] b) {
+		int n = 0;
+		for (int i = 0; i < a.length; i++) {
+			n += ((a[i] >= 0.0) == (b[i] >= 0.0)) ? 1 : 0;
+		}
+		return (n);
+	}
+
+	// error -- Return the mean absolute difference of the given margins.
+	static double error(double[] a, double[] b) {
+		double sum = 0.0;
+		for (int i = 0; i < a.length; i++) {
+			sum += Math.abs(a[i] - b[i]);
+		}
+		return (sum / a.length);
+	}
+
+	// run -- Benchmark the given searcher, returning the number of
+	// values that differ from the reference values.
+	static int run(String name, Searcher searcher, List<State> states, double[] reference) {
+		int count = states.size();
+		int mismatches = 0;
+		searcher.resetNodes();
+		long bytes = allocated();
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			double v = searcher.value(states.get(i));
+			if (Math.abs(v - reference[i]) > 1.0e-9) {
+				mismatches++;
+			}
+		}
+		report(name, count, System.nanoTime() - start, searcher.nodes(), allocated() - bytes);
+		return (mismatches);
+	}
+
+}
@@ -11,42 +11,174 @@
 
 
 import java.io.*;
+import java.util.*;
 
 
 public class Game {
 
 	State status;
 
+	// Random seed and the generator drawn from for this game ...
+	long seed;
+	Random generator;
+
+	// Journal of this game, or null if the game is not journaled ...
+	Journal journal = null;
+
+	// Whether to report events to the console ...
+	boolean verbose = true;
+
+	// Search tree kept between decisions when there is no shared
+	// table of search results, created when first needed ...
+	SearchTree tree = null;
+
+	// Scheduler shared with other games to decide the computer's
+	// moves, and the time allowed for each move, or null to search
+	// without a time limit ...
+	MoveScheduler scheduler = null;
+	long move_time_ms = 1000L;
+
+	// Statistics gathered from this game, or null ...
+	GameMetrics metrics = null;
+
+	// Search behind the last move selected by the computer, for its
+	// flight recorder event ...
+	int decided_depth = 0;
+	double decided_eu_roll = Double.NaN;
+	double decided_eu_stop = Double.NaN;
+
 	// Default constructor ...
 	public Game() {
+		this(new Random().nextLong());
+	}
+
+	// Constructor with the random seed specified ...
+	public Game(long seed) {
+		this(2, seed);
+	}
+
+	// Constructor with the number of players and the random seed
+	// specified. The computer sits in seat zero ...
+	public Game(int num_players, long seed) {
 		// Initialize the game state ...
-		this.status = new State();
+		this.status = new State(num_players);
+		this.seed = seed;
+		this.generator = new Random(seed);
+	}
+
+	// Constructor resuming a game from the given state of play, such
+	// as one rebuilt from a journal ...
+	public Game(State s, long seed) {
+		this.status = s;
+		this.seed = seed;
+		this.generator = new Random(seed);
+	}
+
+	// useMetrics -- Record statistics of this game in the given metrics.
+	public void useMetrics(GameMetrics m) {
+		metrics = m;
+		status.metrics = m;
+		m.gameStarted();
 	}
 
-	// chooseMove -- Return a move selected by the computer.
+	// chooseMove -- Return a move selected by the computer, recording
+	// the time taken to select it.
 	Choice chooseMove() {
+		GameEvents.Decision event = new GameEvents.Decision();
+		long searched = event.isEnabled() ? searched() : 0L;
+		event.begin();
+		if (metrics == null) {
+			Choice act = selectMove();
+			decided(event, act, searched);
+			return (act);
+		}
+		long start = System.nanoTime();
+		Choice act = selectMove();
+		metrics.decided(System.nanoTime() - start);
+		decided(event, act, searched);
+		return (act);
+	}
+
+	// searched -- Return the nodes visited so far by the searches this
+	// game makes on the calling thread.
+	long searched() {
+		return (Searcher.local().nodes() + ((tree == null) ? 0L : tree.visited()));
+	}
+
+	// decided -- Commit the given flight recorder event for the given
+	// move, if it is wanted, given the nodes visited before the
+	// move was selected.
+	void decided(GameEvents.Decision event, Choice act, long searched) {
+		event.end();
+		if (!(event.shouldCommit())) {
+			return;
+		}
+		event.seed = seed;
+		event.seat = status.current_seat;
+		event.position = status.key().toString();
+		event.brains = status.brains_collected;
+		event.blasts = status.blasts_collected;
+		event.choice = act.name();
+		event.depth = decided_depth;
+		event.nodes = searched() - searched;
+		event.eu_roll = decided_eu_roll;
+		event.eu_stop = decided_eu_stop;
+		event.commit();
+	}
+
+	// selectMove -- Return a move selected by the computer.
+	Choice selectMove() {
 		double eu_roll; // expected utility value of rolling
 		double eu_stop; // expected utility value of stoping
 
-		if (status.current_player == Turn.computer) {
+		decided_depth = 0;
+		decided_eu_roll = Double.NaN;
+		decided_eu_stop = Double.NaN;
+		if (status.currentPlayer() == Turn.computer) {
 			// Always roll if no brains have been collected ...
 			if (status.brains_collected == 0) {
 				return (Choice.roll);
 			}
+			if (scheduler != null) {
+				// Search as deep as the scheduler's deadline allows ...
+				long deadline = System.nanoTime() + (move_time_ms * 1000000L);
+				MoveScheduler.Move move = scheduler.request(status, deadline).join();
+				decided_depth = move.depth;
+				decided_eu_roll = move.eu_roll;
+				decided_eu_stop = move.eu_stop;
+				if (journal != null) {
+					journal.decision(status.current_seat, move.choice, move.eu_roll, move.eu_stop);
+				}
+				return (move.choice);
+			}
 			// Make a copy of the current state ...
 			State new_status = new State(status);
-			// Calculate the expected utility value for rolling ...
-			new_status.current_choice = Choice.roll;
-			eu_roll = Eval.value(new_status);
-			// Calculate the expected utility value for stopping ...
-			new_status.current_choice = Choice.stop;
-			eu_stop = Eval.value(new_status);
-			// Make a choice ...
-			if (eu_roll >= eu_stop) {
-				return (Choice.roll);
+			if ((!(Eval.use_maxn)) && (Eval.depth_policy == null) && (Eval.opponent_model == null)
+					&& (TransTable.shared() == null)) {
+				// Reuse the tree searched for the previous decision ...
+				if (tree == null) {
+					tree = new SearchTree();
+				}
+				double[] eu = tree.values(new_status);
+				eu_roll = eu[0];
+				eu_stop = eu[1];
 			} else {
-				return (Choice.stop);
+				// Calculate the expected utility value for rolling ...
+				new_status.current_choice = Choice.roll;
+				eu_roll = (Eval.use_maxn) ? Eval.value_maxn(new_status)[0] : Searcher.local().value(new_status);
+				// Calculate the expected utility value for stopping ...
+				new_status.current_choice = Choice.stop;
+				eu_stop = (Eval.use_maxn) ? Eval.value_maxn(new_status)[0] : Searcher.local().value(new_status);
+			}
+			// Make a choice ...
+			Choice act = (eu_roll >= eu_stop) ? Choice.roll : Choice.stop;
+			decided_depth = Eval.depth_limit;
+			decided_eu_roll = eu_roll;
+			decided_eu_stop = eu_stop;
+			if (journal != null) {
+				journal.decision(status.current_seat, act, eu_roll, eu_stop);
 			}
+			return (act);
 		} else {
 			return (Choice.invalid);
 		}
@@ -85,23 +217,48 @@ public class Game {
 	// takeAction -- Update the current state of play by having the
 	// current player take the specified action.
 	void takeAction(Choice act) {
+		GameEvents.Action event = new GameEvents.Action();
+		event.begin();
+		int seat = status.current_seat;
+		// What the action did, for the event if it is wanted ...
+		int brains = 0;
+		int blasts = 0;
+		boolean shotgunned = false;
+		boolean turn_ended = false;
+		if (journal != null) {
+			journal.action(status.current_seat, act);
+		}
 		status.current_choice = act;
 		switch (act) {
 		case roll:
-			// Draw dice from cup ...
+			// Draw dice from cup, noting how many were held over ...
+			int held = status.numDiceInHand();
+			status.shake(generator);
 			if (status.drawHand()) {
 				// Successfully drew dice from the cup, so roll the dice ...
-				status.rollInPlace();
+				status.rollInPlace(generator);
+				status.turn_rolls++;
+				if (metrics != null) {
+					metrics.rolled();
+				}
+				if (journal != null) {
+					journal.roll(status.current_seat, held, status.hand);
+				}
 				// Collect brains and blasts ...
 				status.collectHand();
+				brains = status.brains_collected;
+				blasts = status.blasts_collected;
+				shotgunned = status.shotgunned();
 				// Check for being shotgunned ...
 				if (status.shotgunned()) {
 					// Forced end of turn, so display result ...
-					System.out.println("");
-					status.write(System.out);
-					System.out.println("");
-					System.out.println("SHOTGUNNED!");
-					System.out.flush();
+					if (verbose) {
+						System.out.println("");
+						status.write(System.out);
+						System.out.println("");
+						System.out.println("SHOTGUNNED!");
+						System.out.flush();
+					}
 					takeAction(Choice.stop);
 				} else {
 					// Next choice for the current player ...
@@ -111,26 +268,84 @@ public class Game {
 				// There was a failure to draw a complete hand. Given
 				// the policy of reusing collected brain dice when the
 				// cup empties, this should never happen ...
-				System.out.println("");
-				System.out.println("CANNOT DRAW COMPLETE HAND FROM CUP.");
+				if (verbose) {
+					System.out.println("");
+					System.out.println("CANNOT DRAW COMPLETE HAND FROM CUP.");
+				}
 				takeAction(Choice.stop);
 			}
 			break;
 		case stop:
+			brains = status.brains_collected;
+			blasts = status.blasts_collected;
+			turn_ended = true;
 			// Record any brains eaten ...
 			status.endTurn();
 			// Check for end of game ...
 			if (!(status.terminal())) {
 				// Game is not over, so hand over the turn ...
 				status.nextPlayer();
+			} else {
+				if (metrics != null) {
+					metrics.gameFinished(status.leader());
+				}
+				ended();
 			}
 			break;
 		default:
-			System.out.println("");
-			System.out.println("ERROR:  ATTEMPTING INVALID ACTION.");
+			if (verbose) {
+				System.out.println("");
+				System.out.println("ERROR:  ATTEMPTING INVALID ACTION.");
+			}
 			status.current_choice = Choice.invalid;
 			break;
 		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.seed = seed;
+			event.seat = seat;
+			event.action = act.name();
+			event.brains = brains;
+			event.blasts = blasts;
+			event.shotgunned = shotgunned;
+			event.turn_ended = turn_ended || shotgunned;
+			event.score = status.brains_eaten[seat];
+			event.commit();
+		}
+	}
+
+	// started -- Note the start of this game in the flight recorder.
+	void started() {
+		GameEvents.GameStart event = new GameEvents.GameStart();
+		if (event.shouldCommit()) {
+			event.seed = seed;
+			event.players = status.num_players;
+			event.commit();
+		}
+	}
+
+	// ended -- Note the end of this game in the flight recorder.
+	void ended() {
+		GameEvents.GameEnd event = new GameEvents.GameEnd();
+		if (event.shouldCommit()) {
+			event.seed = seed;
+			event.winner = status.leader();
+			event.scores = Arrays.toString(status.brains_eaten);
+			event.commit();
+		}
+	}
+
+	// playOut -- Quietly play the rest of this game, with the player in
+	// each seat choosing actions by the given policy. Return
+	// the seat of the winner.
+	public int playOut(Policy[] policies) {
+		verbose = false;
+		started();
+		while (!(status.terminal())) {
+			Choice action = policies[status.current_seat].choose(status);
+			takeAction(action);
+		}
+		return (status.leader());
 	}
 
 	// play -- Play a game of Zombie Dice.
@@ -139,6 +354,7 @@ public class Game {
 
 		System.out.println("");
 		System.out.println("ZOMBIE DICE!");
+		started();
 		// Show initial game state ...
 		System.out.println("");
 		status.write(System.out);
@@ -146,7 +362,7 @@ public class Game {
 		// Loop until the state is terminal ...
 		while (!(status.terminal())) {
 			// Check whose turn it is ...
-			switch (status.current_player) {
+			switch (status.currentPlayer()) {
 			case computer:
 				// Computer player's turn ...
 				action = chooseMove();
@@ -156,12 +372,18 @@ public class Game {
 				}
 				break;
 			case user:
-				// User player's turn ...
+				// User player's turn. Show how risky a roll would be ...
+				System.out.println("");
+				System.out.printf("SHOTGUN RISK = %.0f%%\n", 100.0 * RollTable.get().shotgunRisk(status));
 				action = requestMove();
 				if (action == Choice.invalid) {
 					System.out.println("ERROR:  BAD CHOICE BY USER.");
 					return;
 				}
+				// Learn how the user plays ...
+				if (Eval.opponent_model != null) {
+					Eval.opponent_model.observe(status, action);
+				}
 				break;
 			default:
 				// We should never get here ...
@@ -188,12 +410,16 @@ public class Game {
 			status.write(System.out);
 			System.out.flush();
 		}
+		// Record the end of the game ...
+		if (journal != null) {
+			journal.end(status.brains_eaten);
+		}
 		// Report winner ...
 		System.out.println("");
-		if (status.comp_brains_eaten > status.user_brains_eaten) {
+		if (status.leader() == 0) {
 			System.out.println("COMPUTER WINS!");
 		} else {
-			System.out.println("USER WINS!");
+			System.out.println(status.seatName(status.leader()).toUpperCase() + " WINS!");
 		}
 		System.out.println("");
 	}
@@ -0,0 +1,143 @@
+//
+// GameEvents
+//
+// This class holds the Java Flight Recorder events of the Zombie Dice
+// game, so that a flight recording shows what the games were doing next
+// to its GC and CPU samples, and a latency spike can be traced to the
+// position that caused it.  There are events for each decision made by
+// the computer in "Game.chooseMove", for each action taken in
+// "Game.takeAction", and for the start and end of each game.  All events
+// are in the "Zombie Dice" category, named "zombie.*", and are turned on
+// and off, or given thresholds, through the settings of a recording like
+// any other event, e.g.:
+//
+//   java -XX:StartFlightRecording:filename=games.jfr,zombie.Action#enabled=false Pthree
+//
+// When no recording has an event enabled, the game does no more than
+// check that it is disabled: the fields of an event are only filled in
+// once the event is known to be wanted.
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import jdk.jfr.*;
+
+
+public class GameEvents {
+
+	// A decision made by the computer ...
+	@Name("zombie.Decision")
+	@Label("Decision")
+	@Category("Zombie Dice")
+	@Description("A move selected by the computer, with the search behind it")
+	@StackTrace(false)
+	static final class Decision extends Event {
+		@Label("Seed")
+		@Description("Random seed of the game")
+		long seed;
+
+		@Label("Seat")
+		int seat;
+
+		@Label("Position")
+		@Description("State key of the position decided, as in StateKey.toString")
+		String position;
+
+		@Label("Brains Collected")
+		int brains;
+
+		@Label("Blasts Collected")
+		int blasts;
+
+		@Label("Choice")
+		String choice;
+
+		@Label("Depth")
+		@Description("Depth of the search completed, in plies, or zero if no search was made")
+		int depth;
+
+		@Label("Nodes")
+		@Description("Nodes visited by the search on the deciding thread")
+		long nodes;
+
+		@Label("EU Roll")
+		@Description("Expected utility of rolling, or NaN if not known")
+		double eu_roll;
+
+		@Label("EU Stop")
+		@Description("Expected utility of stopping, or NaN if not known")
+		double eu_stop;
+	}
+
+	// An action taken by a player ...
+	@Name("zombie.Action")
+	@Label("Action")
+	@Category("Zombie Dice")
+	@Description("A roll or stop taken by a player, with its result")
+	@StackTrace(false)
+	static final class Action extends Event {
+		@Label("Seed")
+		@Description("Random seed of the game")
+		long seed;
+
+		@Label("Seat")
+		int seat;
+
+		@Label("Action")
+		String action;
+
+		@Label("Brains Collected")
+		@Description("Brains collected this turn, after the roll or before the stop")
+		int brains;
+
+		@Label("Blasts Collected")
+		@Description("Blasts collected this turn, after the roll or before the stop")
+		int blasts;
+
+		@Label("Shotgunned")
+		boolean shotgunned;
+
+		@Label("Turn Ended")
+		boolean turn_ended;
+
+		@Label("Score")
+		@Description("Brains eaten by the player, after the action")
+		int score;
+	}
+
+	// The start of a game ...
+	@Name("zombie.GameStart")
+	@Label("Game Start")
+	@Category("Zombie Dice")
+	@StackTrace(false)
+	static final class GameStart extends Event {
+		@Label("Seed")
+		@Description("Random seed of the game")
+		long seed;
+
+		@Label("Players")
+		int players;
+	}
+
+	// The end of a game ...
+	@Name("zombie.GameEnd")
+	@Label("Game End")
+	@Category("Zombie Dice")
+	@StackTrace(false)
+	static final class GameEnd extends Event {
+		@Label("Seed")
+		@Description("Random seed of the game")
+		long seed;
+
+		@Label("Winner")
+		@Description("Seat of the winner")
+		int winner;
+
+		@Label("Scores")
+		@Description("Brains eaten, by seat")
+		String scores;
+	}
+
+}
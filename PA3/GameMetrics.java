@@ -0,0 +1,213 @@
+//
+// GameMetrics
+//
+// This class implements statistics gathered from games as they are
+// played, for simulations running many games on many threads at once.
+// It counts games, wins by seat, turns, rolls and shotguns, and keeps
+// histograms of the rolls per turn, the brains eaten per turn and the
+// time taken by the computer's decisions, in microseconds.
+//
+// Recording an event must not slow down the simulation, so nothing is
+// shared between threads while recording.  Counters are "LongAdder"s,
+// which are striped across threads, and each thread records into its
+// own set of histograms (see "LogHistogram").  Counters are summed, and
+// histograms merged, only when a snapshot is taken.  A snapshot may be
+// taken at any time, from any thread, while games are being played.
+//
+// Games record into a "GameMetrics" object once it is attached with
+// "Game.useMetrics".  The turn statistics are recorded by "State.endTurn",
+// in the state of play of the game only, since copies of the state made
+// for search do not carry the metrics along.
+//
+// Usage:  java GameMetrics [games] [threshold] [players]
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+
+
+public class GameMetrics {
+
+	// Histograms, by index ...
+	static final int h_turn_rolls = 0;
+	static final int h_turn_brains = 1;
+	static final int h_decision_us = 2;
+	static final int num_histograms = 3;
+	static final String[] histogram_names = { "rolls/turn", "brains/turn", "decision" };
+	static final String[] histogram_units = { "rolls", "brains", "us" };
+
+	// Counters ...
+	final LongAdder games_started = new LongAdder();
+	final LongAdder games_finished = new LongAdder();
+	final LongAdder[] wins = new LongAdder[State.max_players];
+	final LongAdder turns = new LongAdder();
+	final LongAdder rolls = new LongAdder();
+	final LongAdder shotguns = new LongAdder();
+	final LongAdder decisions = new LongAdder();
+
+	// Histograms of each thread, and of all threads ...
+	final ThreadLocal<LogHistogram[]> local = ThreadLocal.withInitial(this::register);
+	final ConcurrentLinkedQueue<LogHistogram[]> shards = new ConcurrentLinkedQueue<LogHistogram[]>();
+
+	// Default constructor ...
+	public GameMetrics() {
+		for (int seat = 0; seat < wins.length; seat++) {
+			wins[seat] = new LongAdder();
+		}
+	}
+
+	// register -- Create the histograms of the calling thread.
+	LogHistogram[] register() {
+		LogHistogram[] h = new LogHistogram[num_histograms];
+		for (int i = 0; i < num_histograms; i++) {
+			h[i] = new LogHistogram();
+		}
+		shards.add(h);
+		return (h);
+	}
+
+	// gameStarted -- Record the start of a game.
+	public void gameStarted() {
+		games_started.increment();
+	}
+
+	// gameFinished -- Record the end of a game won by the given seat,
+	// or by no one if the seat is negative.
+	public void gameFinished(int winner) {
+		games_finished.increment();
+		if ((winner >= 0) && (winner < wins.length)) {
+			wins[winner].increment();
+		}
+	}
+
+	// rolled -- Record a roll of the dice.
+	public void rolled() {
+		rolls.increment();
+	}
+
+	// turnEnded -- Record the end of a turn of the given number of
+	// rolls, eating the given number of brains, or ending
+	// with a shotgun.
+	public void turnEnded(int turn_rolls, int brains, boolean shotgunned) {
+		turns.increment();
+		if (shotgunned) {
+			shotguns.increment();
+		}
+		LogHistogram[] h = local.get();
+		h[h_turn_rolls].record(turn_rolls);
+		h[h_turn_brains].record(shotgunned ? 0 : brains);
+	}
+
+	// decided -- Record a decision by the computer taking the given
+	// number of nanoseconds.
+	public void decided(long nanos) {
+		decisions.increment();
+		local.get()[h_decision_us].record(nanos / 1000L);
+	}
+
+	// A view of the metrics, which may be taken while games are still
+	// being played ...
+	public static final class Snapshot {
+		public final long games_started;
+		public final long games_finished;
+		public final long[] wins;
+		public final long turns;
+		public final long rolls;
+		public final long shotguns;
+		public final long decisions;
+		public final LogHistogram[] histograms;
+
+		Snapshot(GameMetrics m) {
+			this.games_started = m.games_started.sum();
+			this.games_finished = m.games_finished.sum();
+			this.wins = new long[m.wins.length];
+			for (int seat = 0; seat < wins.length; seat++) {
+				wins[seat] = m.wins[seat].sum();
+			}
+			this.turns = m.turns.sum();
+			this.rolls = m.rolls.sum();
+			this.shotguns = m.shotguns.sum();
+			this.decisions = m.decisions.sum();
+			this.histograms = new LogHistogram[num_histograms];
+			for (int i = 0; i < num_histograms; i++) {
+				histograms[i] = new LogHistogram();
+			}
+			for (LogHistogram[] h : m.shards) {
+				for (int i = 0; i < num_histograms; i++) {
+					histograms[i].merge(h[i]);
+				}
+			}
+		}
+
+		// winRate -- Return the fraction of finished games won by the
+		// given seat.
+		public double winRate(int seat) {
+			return ((games_finished == 0L) ? 0.0 : ((double) wins[seat]) / games_finished);
+		}
+
+		// shotgunRate -- Return the fraction of turns ended by a shotgun.
+		public double shotgunRate() {
+			return ((turns == 0L) ? 0.0 : ((double) shotguns) / turns);
+		}
+
+		// write -- Print a report of the metrics.
+		public void write(PrintStream out) {
+			out.printf("%d games started, %d finished, %d turns, %d rolls, %d decisions\n", games_started,
+					games_finished, turns, rolls, decisions);
+			out.print("win rate by seat:");
+			for (int seat = 0; seat < wins.length; seat++) {
+				if (wins[seat] > 0L) {
+					out.printf(" %d=%.4f", seat, winRate(seat));
+				}
+			}
+			out.printf("\nshotgun rate %.4f\n", shotgunRate());
+			for (int i = 0; i < num_histograms; i++) {
+				if (histograms[i].count() > 0L) {
+					histograms[i].write(out, histogram_names[i], histogram_units[i]);
+				}
+			}
+		}
+	}
+
+	// snapshot -- Return a snapshot of the metrics recorded so far.
+	public Snapshot snapshot() {
+		return (new Snapshot(this));
+	}
+
+	public static void main(String[] args) throws Exception {
+		int count = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+		int threshold = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+		int num_players = (args.length > 2) ? Integer.parseInt(args[2]) : 2;
+		GameMetrics metrics = new GameMetrics();
+		Policy[] policies = new Policy[num_players];
+		Arrays.fill(policies, new ThresholdPolicy(threshold));
+		// Report live snapshots while the games are played ...
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "metrics-reporter");
+			t.setDaemon(true);
+			return (t);
+		});
+		reporter.scheduleAtFixedRate(() -> {
+			GameMetrics.Snapshot s = metrics.snapshot();
+			System.out.printf("... %d of %d games\n", s.games_finished, count);
+		}, 1L, 1L, TimeUnit.SECONDS);
+		long start = System.nanoTime();
+		IntStream.range(0, count).parallel().forEach(i -> {
+			Game g = new Game(num_players, i);
+			g.useMetrics(metrics);
+			g.playOut(policies);
+		});
+		long elapsed = System.nanoTime() - start;
+		reporter.shutdownNow();
+		metrics.snapshot().write(System.out);
+		System.out.printf("%.1f games/s\n", count / (elapsed / 1.0e9));
+	}
+
+}
@@ -0,0 +1,228 @@
+//
+// HeuristicTable
+//
+// This class implements a learned heuristic evaluation function for the
+// Zombie Dice game, in the form of a lookup table of estimated win
+// probabilities.  The table is indexed by the score of the computer, the
+// score of its opponent, the brains and blasts collected so far this
+// turn, and whether the computer or its opponent is the player to move.
+// Entries are estimated offline by playing out a large number of
+// simulated games from each position, in parallel, and are stored as
+// 16-bit fixed-point probabilities, so the whole table fits in well
+// under a megabyte.  Once loaded into "Eval.heuristic_table", the table
+// replaces the hand-written heuristic in "Eval.heuristic".
+//
+// The table is built with the computer in the first seat of a two
+// player game.  With more players, the best opponent score stands in
+// for the opponent score.
+//
+// Usage:  java HeuristicTable <output file> [games per cell] [threshold]
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+
+
+public class HeuristicTable {
+
+	// File format parameters ...
+	static final int magic = 0x5a444854; // "ZDHT"
+	static final double scale = 65535.0;
+
+	// Table dimensions ...
+	int max_score; // scores are clamped to this value
+	int max_turn_brains; // turn brains are clamped to this value
+	int num_blasts; // number of distinct non-terminal blast counts
+
+	// Estimated win probabilities, in fixed point ...
+	char[] win;
+
+	// fingerprint -- Return a hash of the contents of the table, which
+	// stays the same from one run to the next.
+	public int fingerprint() {
+		return (Arrays.hashCode(win));
+	}
+
+	// Constructor -- Allocate an empty table for the current rules.
+	public HeuristicTable() {
+		this.max_score = State.brains_to_win + 6;
+		this.max_turn_brains = State.brains_to_win;
+		this.num_blasts = State.num_terminal_blasts;
+		this.win = new char[size()];
+	}
+
+	// size -- Return the number of cells in the table.
+	int size() {
+		return ((max_score + 1) * (max_score + 1) * (max_turn_brains + 1) * num_blasts * 2);
+	}
+
+	// index -- Return the cell holding the given position. Out of range
+	// values are clamped into the table.
+	int index(int comp_score, int opp_score, int turn_brains, int turn_blasts, boolean comp_to_move) {
+		int i = Math.min(Math.max(comp_score, 0), max_score);
+		i = (i * (max_score + 1)) + Math.min(Math.max(opp_score, 0), max_score);
+		i = (i * (max_turn_brains + 1)) + Math.min(Math.max(turn_brains, 0), max_turn_brains);
+		i = (i * num_blasts) + Math.min(Math.max(turn_blasts, 0), num_blasts - 1);
+		i = (i * 2) + (comp_to_move ? 0 : 1);
+		return (i);
+	}
+
+	// winProb -- Return the estimated probability that the computer
+	// wins from the given position.
+	public double winProb(int comp_score, int opp_score, int turn_brains, int turn_blasts, boolean comp_to_move) {
+		return (win[index(comp_score, opp_score, turn_brains, turn_blasts, comp_to_move)] / scale);
+	}
+
+	// value -- Return the heuristic evaluation value of the given state
+	// for the player in the given seat, between plus and minus
+	// "State.win_payoff".
+	public double value(State s, int seat) {
+		return (value(s.brains_eaten, s.num_players, s.current_seat, s.brains_collected, s.blasts_collected, seat));
+	}
+
+	// value -- Return the heuristic evaluation value of a state given
+	// by its scores, indexed by seat, and its turn status, for
+	// the player in the given seat.
+	public double value(int[] scores, int num_players, int current_seat, int brains_collected, int blasts_collected,
+			int seat) {
+		double p;
+		if (num_players == 2) {
+			// The table is kept from the point of view of seat zero ...
+			p = winProb(scores[0], scores[1], brains_collected, blasts_collected, (current_seat == 0));
+			if (seat != 0) {
+				p = 1.0 - p;
+			}
+		} else {
+			int best_opponent = 0;
+			for (int i = 0; i < num_players; i++) {
+				if ((i != seat) && (scores[i] > best_opponent)) {
+					best_opponent = scores[i];
+				}
+			}
+			p = winProb(scores[seat], best_opponent, brains_collected, blasts_collected, (current_seat == seat));
+		}
+		return (((2.0 * p) - 1.0) * State.win_payoff);
+	}
+
+	// estimate -- Fill the table by playing out the given number of
+	// games from every cell, with both players following
+	// the given rollout policy. Cells are estimated in
+	// parallel, each with its own seeded generator.
+	public void estimate(int games_per_cell, Policy rollout, long seed) {
+		AtomicInteger done = new AtomicInteger(0);
+		int cells = size();
+		IntStream.range(0, cells).parallel().forEach(i -> {
+			Random generator = new Random(seed + (i * 0x9e3779b97f4a7c15L));
+			// Decode the cell ...
+			int c = i;
+			boolean comp_to_move = ((c % 2) == 0);
+			c = c / 2;
+			int turn_blasts = c % num_blasts;
+			c = c / num_blasts;
+			int turn_brains = c % (max_turn_brains + 1);
+			c = c / (max_turn_brains + 1);
+			int opp_score = c % (max_score + 1);
+			int comp_score = c / (max_score + 1);
+			// Play out games from this cell ...
+			int wins = 0;
+			for (int g = 0; g < games_per_cell; g++) {
+				State s = position(comp_score, opp_score, turn_brains, turn_blasts, comp_to_move, generator);
+				Game game = new Game(s, generator.nextLong());
+				if (game.status.terminal()) {
+					wins += (game.status.leader() == 0) ? 1 : 0;
+					continue;
+				}
+				if (game.playOut(new Policy[] { rollout, rollout }) == 0) {
+					wins++;
+				}
+			}
+			win[i] = (char) Math.round(scale * wins / games_per_cell);
+			int n = done.incrementAndGet();
+			if ((n % 10000) == 0) {
+				System.err.printf("%d of %d cells\n", n, cells);
+			}
+		});
+	}
+
+	// position -- Return a two player state with the given scores, in
+	// which the player to move has collected the given brains
+	// and blasts this turn, drawing those dice at random.
+	static State position(int comp_score, int opp_score, int turn_brains, int turn_blasts, boolean comp_to_move,
+			Random generator) {
+		State s = new State(2);
+		s.brains_eaten[0] = comp_score;
+		s.brains_eaten[1] = opp_score;
+		s.current_seat = comp_to_move ? 0 : 1;
+		s.current_choice = Choice.undecided;
+		s.shake(generator);
+		for (int i = 0; i < turn_blasts; i++) {
+			s.draw().setUp(DieFace.blast);
+		}
+		for (int i = 0; i < turn_brains; i++) {
+			if (s.cupIsEmpty()) {
+				// The cup ran out earlier in the turn ...
+				s.reuseBrains();
+				s.shake(generator);
+			}
+			s.draw().setUp(DieFace.brain);
+			s.collectHand();
+		}
+		s.collectHand();
+		return (s);
+	}
+
+	// write -- Write the table to the given file.
+	public void write(File f) throws IOException {
+		ByteBuffer b = ByteBuffer.allocate(24 + (2 * win.length));
+		b.putInt(magic);
+		b.putInt(State.brains_to_win);
+		b.putInt(State.num_terminal_blasts);
+		b.putInt(max_score);
+		b.putInt(max_turn_brains);
+		b.putInt(num_blasts);
+		b.asCharBuffer().put(win);
+		Files.write(f.toPath(), b.array());
+	}
+
+	// read -- Read a table from the given file, rejecting one built
+	// for different rules.
+	public static HeuristicTable read(File f) throws IOException {
+		ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(f.toPath()));
+		if (b.getInt() != magic) {
+			throw new IOException("not a heuristic table: " + f);
+		}
+		if ((b.getInt() != State.brains_to_win) || (b.getInt() != State.num_terminal_blasts)) {
+			throw new IOException("heuristic table was built under different rules: " + f);
+		}
+		HeuristicTable t = new HeuristicTable();
+		if ((b.getInt() != t.max_score) || (b.getInt() != t.max_turn_brains) || (b.getInt() != t.num_blasts)) {
+			throw new IOException("heuristic table has unexpected dimensions: " + f);
+		}
+		b.asCharBuffer().get(t.win);
+		return (t);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: java HeuristicTable <output file> [games per cell] [threshold]");
+			System.exit(1);
+		}
+		int games = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+		int threshold = (args.length > 2) ? Integer.parseInt(args[2]) : 3;
+		HeuristicTable t = new HeuristicTable();
+		long start = System.currentTimeMillis();
+		t.estimate(games, new ThresholdPolicy(threshold), 1L);
+		t.write(new File(args[0]));
+		System.out.printf("%d cells, %d games per cell, %.1f s\n", t.size(), games,
+				(System.currentTimeMillis() - start) / 1000.0);
+	}
+
+}
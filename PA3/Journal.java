@@ -0,0 +1,274 @@
+//
+// Journal
+//
+// This class implements an append-only binary journal of a single Zombie
+// Dice game.  The journal records the random seed of the game, every
+// action taken by a player, the outcome of every roll, and the expected
+// utility values behind each computer decision.  Records are handed to
+// a background writer thread, so the game loop never waits on the disk.
+// The writer appends records in batches and forces each batch to stable
+// storage before taking the next one.  Every record carries a checksum,
+// so a record torn by a crash is detected and discarded when the
+// journal is read back (see "Replay").
+//
+// Record layout:
+//
+//   int   length of type and payload, in bytes
+//   byte  record type
+//   ...   payload
+//   int   CRC-32 of the type and payload bytes
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+
+public class Journal {
+
+	// File format parameters ...
+	static final int magic = 0x5a444a32; // "ZDJ2"
+	// Magic number of journals of two player games, without the number
+	// of players, which cannot be resumed ...
+	static final int old_magic = 0x5a444a31; // "ZDJ1"
+	static final String suffix = ".zdj";
+
+	// Record types ...
+	static final byte rec_start = 1;
+	static final byte rec_action = 2;
+	static final byte rec_roll = 3;
+	static final byte rec_decision = 4;
+	static final byte rec_end = 5;
+
+	// Writer parameters ...
+	static int max_batch_records = 256;
+	static long max_batch_delay_ms = 20;
+
+	// Marker telling the writer thread to finish ...
+	static final byte[] close_marker = new byte[0];
+
+	// Journal file ...
+	File file;
+	FileChannel channel;
+
+	// Records waiting to be written ...
+	BlockingQueue<byte[]> pending = new LinkedBlockingQueue<byte[]>();
+
+	// Background writer ...
+	Thread writer;
+	volatile IOException failure = null;
+
+	// Hook flushing pending records when the JVM exits ...
+	Thread exit_hook;
+	boolean closed = false;
+
+	// Constructor -- Open the given journal file for appending,
+	// discarding any torn record at its tail.
+	Journal(File file, long valid_length) throws IOException {
+		this.file = file;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		this.channel.truncate(valid_length);
+		this.channel.position(valid_length);
+		this.writer = new Thread(this::drain, "journal-" + file.getName());
+		this.writer.setDaemon(true);
+		this.writer.start();
+		this.exit_hook = new Thread(this::closeQuietly);
+		Runtime.getRuntime().addShutdownHook(this.exit_hook);
+	}
+
+	// create -- Start a new journal for a game with the given seed and
+	// number of players in the given directory.
+	public static Journal create(File dir, long seed, int num_players) throws IOException {
+		dir.mkdirs();
+		File f = new File(dir, String.format("game-%d-%016x%s", System.currentTimeMillis(), seed, suffix));
+		Journal j = new Journal(f, 0L);
+		ByteBuffer b = j.record(rec_start, 32);
+		b.putInt(magic);
+		b.putLong(seed);
+		b.putInt(num_players);
+		b.putInt(State.brains_to_win);
+		b.putInt(State.num_terminal_blasts);
+		b.putInt(State.hand_size);
+		b.putInt(Cup.total_num_dice);
+		j.append(b);
+		return (j);
+	}
+
+	// resume -- Reopen the journal that was replayed by the given
+	// Replay object, so that a resumed game keeps appending
+	// to the same file.
+	public static Journal resume(Replay r) throws IOException {
+		return (new Journal(r.file, r.valid_length));
+	}
+
+	// unfinished -- Return the journal files in the given directory that
+	// do not record the end of their game, oldest first.
+	public static List<File> unfinished(File dir) {
+		List<File> found = new ArrayList<File>();
+		File[] files = dir.listFiles((d, name) -> name.endsWith(suffix));
+		if (files == null) {
+			return (found);
+		}
+		Arrays.sort(files);
+		for (File f : files) {
+			try {
+				Replay r = new Replay(f);
+				if (!(r.finished())) {
+					found.add(f);
+				}
+			} catch (IOException e) {
+				// An unreadable journal cannot be resumed ...
+				continue;
+			}
+		}
+		return (found);
+	}
+
+	// action -- Record that the given seat took the given action.
+	public void action(int seat, Choice act) {
+		ByteBuffer b = record(rec_action, 2);
+		b.put((byte) seat);
+		b.put((byte) act.ordinal());
+		append(b);
+	}
+
+	// roll -- Record the outcome of a roll. The hand is recorded after
+	// it has been rolled, but before it has been collected. The
+	// first "held" dice in the hand were kept from the previous
+	// roll, and the rest were freshly drawn from the cup.
+	public void roll(int seat, int held, List<Die> hand) {
+		ByteBuffer b = record(rec_roll, 3 + (2 * hand.size()));
+		b.put((byte) seat);
+		b.put((byte) held);
+		b.put((byte) hand.size());
+		for (Die d : hand) {
+			b.put((byte) d.getColor().ordinal());
+			b.put((byte) d.getUp().ordinal());
+		}
+		append(b);
+	}
+
+	// decision -- Record the expected utility values behind a computer
+	// decision.
+	public void decision(int seat, Choice act, double eu_roll, double eu_stop) {
+		ByteBuffer b = record(rec_decision, 18);
+		b.put((byte) seat);
+		b.put((byte) act.ordinal());
+		b.putDouble(eu_roll);
+		b.putDouble(eu_stop);
+		append(b);
+	}
+
+	// end -- Record the final scores of the game, indexed by seat.
+	public void end(int[] scores) {
+		ByteBuffer b = record(rec_end, 1 + (4 * scores.length));
+		b.put((byte) scores.length);
+		for (int score : scores) {
+			b.putInt(score);
+		}
+		append(b);
+	}
+
+	// close -- Flush all pending records to stable storage and close
+	// the journal file.
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			Runtime.getRuntime().removeShutdownHook(exit_hook);
+		} catch (IllegalStateException e) {
+			// The JVM is already shutting down ...
+		}
+		pending.add(close_marker);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	// closeQuietly -- Close the journal from the exit hook, so that
+	// records queued just before a crash still reach
+	// the disk.
+	void closeQuietly() {
+		try {
+			close();
+		} catch (IOException e) {
+			// Nothing more can be done while exiting ...
+		}
+	}
+
+	// record -- Allocate a buffer for a record of the given type with
+	// the given payload size, leaving room for the framing.
+	ByteBuffer record(byte type, int payload_size) {
+		ByteBuffer b = ByteBuffer.allocate(4 + 1 + payload_size + 4);
+		b.putInt(1 + payload_size);
+		b.put(type);
+		return (b);
+	}
+
+	// append -- Seal the given record with its checksum and queue it
+	// for the writer thread. This never blocks.
+	void append(ByteBuffer b) {
+		CRC32 crc = new CRC32();
+		crc.update(b.array(), 4, b.position() - 4);
+		b.putInt((int) crc.getValue());
+		pending.add(b.array());
+	}
+
+	// drain -- Body of the writer thread. Write queued records in
+	// batches, forcing each batch to disk.
+	void drain() {
+		List<byte[]> batch = new ArrayList<byte[]>();
+		boolean closing = false;
+		try {
+			while (!closing) {
+				// Wait for the first record of the batch ...
+				batch.add(pending.take());
+				// Give the game loop a moment to add more ...
+				long deadline = System.currentTimeMillis() + max_batch_delay_ms;
+				while (batch.size() < max_batch_records) {
+					long wait = deadline - System.currentTimeMillis();
+					byte[] rec = pending.poll(Math.max(wait, 0L), TimeUnit.MILLISECONDS);
+					if (rec == null) {
+						break;
+					}
+					batch.add(rec);
+				}
+				// Write the batch, then force it to disk once ...
+				for (byte[] rec : batch) {
+					if (rec == close_marker) {
+						closing = true;
+						continue;
+					}
+					ByteBuffer b = ByteBuffer.wrap(rec);
+					while (b.hasRemaining()) {
+						channel.write(b);
+					}
+				}
+				channel.force(false);
+				batch.clear();
+			}
+		} catch (IOException e) {
+			failure = e;
+		} catch (InterruptedException e) {
+			// The writer is being shut down ...
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,238 @@
+//
+// LoadGen
+//
+// This class provides a "main" method that drives many concurrent games
+// against the computer, in-process, to measure how the computer's
+// decisions hold up under load.  Each simulated client plays one game
+// after another in the user's seat, choosing by a "ThresholdPolicy"
+// (with a threshold drawn at random for each client, unless one is
+// given), and pausing for a random think time, exponentially
+// distributed about the given mean, before each of its moves.  Clients
+// do not hold a thread while thinking: their moves are scheduled on a
+// small timer pool.  Whenever the computer is to move, the client's game
+// is handed to a fixed pool of service threads, which calls
+// "Game.chooseMove" just as a game server would.
+//
+// The latency of each decision is measured from the moment the request
+// is made until the move is chosen, so it includes the time spent
+// waiting for a service thread.  Every reporting period, and again at
+// the end of the run, the tool prints the decision and game throughput,
+// the latency percentiles for the period (see "LogHistogram"), the
+// collections made by each garbage collector and the time they took,
+// and the heap in use, so that long soak runs show any drift.
+//
+// Usage:  java LoadGen [clients] [seconds] [think ms] [threads] [threshold] [depth]
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+
+public class LoadGen {
+
+	// Seconds between reports ...
+	static long period = 10L;
+
+	// A simulated human client ...
+	final class Client {
+		final Random generator;
+		final Policy policy;
+		Game game;
+
+		Client(long seed, int threshold) {
+			this.generator = new Random(seed);
+			this.policy = new ThresholdPolicy((threshold > 0) ? threshold : 2 + generator.nextInt(4));
+			newGame();
+		}
+
+		// newGame -- Sit down at a fresh table.
+		void newGame() {
+			game = new Game(generator.nextLong());
+			game.verbose = false;
+			game.useMetrics(metrics);
+		}
+	}
+
+	// Settings ...
+	final long think_ms;
+
+	// Threads thinking for the clients, and deciding for the computer ...
+	final ScheduledExecutorService timer;
+	final ExecutorService service;
+	volatile boolean running = true;
+
+	// Measurements, over the whole run and over the current period ...
+	final GameMetrics metrics = new GameMetrics();
+	final LogHistogram latency = new LogHistogram();
+	volatile LogHistogram period_latency = new LogHistogram();
+	final LongAdder client_moves = new LongAdder();
+	final LongAdder errors = new LongAdder();
+
+	// Constructor with the think time and number of service threads
+	// specified ...
+	public LoadGen(long think_ms, int threads) {
+		this.think_ms = think_ms;
+		this.timer = Executors.newScheduledThreadPool(Math.max(1, threads / 4), daemon("loadgen-client-"));
+		this.service = Executors.newFixedThreadPool(threads, daemon("loadgen-service-"));
+	}
+
+	// daemon -- Return a factory of daemon threads with the given prefix.
+	static ThreadFactory daemon(String prefix) {
+		AtomicInteger n = new AtomicInteger(0);
+		return (r -> {
+			Thread t = new Thread(r, prefix + n.getAndIncrement());
+			t.setDaemon(true);
+			return (t);
+		});
+	}
+
+	// start -- Start the given number of clients, with their first moves
+	// spread over one think time.
+	void start(int clients, int threshold) {
+		for (int i = 0; i < clients; i++) {
+			Client c = new Client(i, threshold);
+			timer.schedule(() -> next(c), c.generator.nextInt((int) Math.max(think_ms, 1L)), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	// next -- Make the next request of the given client's game.
+	void next(Client c) {
+		if (!running) {
+			return;
+		}
+		if (c.game.status.terminal()) {
+			c.newGame();
+		}
+		if (c.game.status.currentPlayer() == Turn.computer) {
+			long requested = System.nanoTime();
+			service.execute(() -> decide(c, requested));
+		} else {
+			long think = (long) (-think_ms * Math.log(1.0 - c.generator.nextDouble()));
+			timer.schedule(() -> move(c), think, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	// decide -- Make the computer's move in the given client's game.
+	void decide(Client c, long requested) {
+		try {
+			Choice act = c.game.chooseMove();
+			long micros = (System.nanoTime() - requested) / 1000L;
+			latency.record(micros);
+			period_latency.record(micros);
+			c.game.takeAction(act);
+		} catch (RuntimeException e) {
+			errors.increment();
+			c.newGame();
+		}
+		next(c);
+	}
+
+	// move -- Make the client's own move in its game.
+	void move(Client c) {
+		try {
+			c.game.takeAction(c.policy.choose(c.game.status));
+			client_moves.increment();
+		} catch (RuntimeException e) {
+			errors.increment();
+			c.newGame();
+		}
+		next(c);
+	}
+
+	// A reading of the garbage collectors and the heap ...
+	static final class Gc {
+		final long[] counts;
+		final long[] millis;
+		final long heap_used;
+
+		Gc() {
+			List<GarbageCollectorMXBean> beans = ManagementFactory.getGarbageCollectorMXBeans();
+			this.counts = new long[beans.size()];
+			this.millis = new long[beans.size()];
+			for (int i = 0; i < beans.size(); i++) {
+				counts[i] = Math.max(beans.get(i).getCollectionCount(), 0L);
+				millis[i] = Math.max(beans.get(i).getCollectionTime(), 0L);
+			}
+			this.heap_used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		}
+
+		// write -- Print the collections made since the given reading.
+		void write(PrintStream out, Gc since) {
+			List<GarbageCollectorMXBean> beans = ManagementFactory.getGarbageCollectorMXBeans();
+			for (int i = 0; i < counts.length; i++) {
+				out.printf("  gc %-20s %6d collections %8d ms\n", beans.get(i).getName(), counts[i] - since.counts[i],
+						millis[i] - since.millis[i]);
+			}
+			MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+			out.printf("  heap %.1f MB used, %.1f MB committed, %.1f MB max\n", heap_used / 1.0e6,
+					heap.getCommitted() / 1.0e6, heap.getMax() / 1.0e6);
+		}
+	}
+
+	// report -- Print the measurements of the last period, of the given
+	// length in seconds.
+	void report(PrintStream out, double seconds, GameMetrics.Snapshot last, GameMetrics.Snapshot now, Gc last_gc,
+			Gc now_gc) {
+		LogHistogram h = period_latency;
+		period_latency = new LogHistogram();
+		out.printf("%.0f s: %.1f decisions/s, %.1f client moves/s, %.1f games/s, %d errors\n", seconds,
+				(now.decisions - last.decisions) / (double) period, client_moves.sumThenReset() / (double) period,
+				(now.games_finished - last.games_finished) / (double) period, errors.sum());
+		h.write(out, "  latency", "us");
+		now_gc.write(out, last_gc);
+	}
+
+	// stop -- Stop the clients, waiting for decisions under way.
+	void stop() throws InterruptedException {
+		running = false;
+		timer.shutdownNow();
+		service.shutdown();
+		service.awaitTermination(1L, TimeUnit.MINUTES);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int clients = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+		long seconds = (args.length > 1) ? Long.parseLong(args[1]) : 60L;
+		long think_ms = (args.length > 2) ? Long.parseLong(args[2]) : 2000L;
+		int threads = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		int threshold = (args.length > 4) ? Integer.parseInt(args[4]) : 0;
+		if (args.length > 5) {
+			Eval.depth_limit = Integer.parseInt(args[5]);
+		}
+		period = Math.min(period, seconds);
+		LoadGen load = new LoadGen(think_ms, threads);
+		System.out.printf("%d clients, %d ms think time, %d service threads, depth %d, %d s\n", clients, think_ms,
+				threads, Eval.depth_limit, seconds);
+		Gc first_gc = new Gc();
+		Gc last_gc = first_gc;
+		GameMetrics.Snapshot last = load.metrics.snapshot();
+		long start = System.nanoTime();
+		load.start(clients, threshold);
+		for (long t = period; t <= seconds; t += period) {
+			Thread.sleep(Math.max(start + (t * 1000000000L) - System.nanoTime(), 0L) / 1000000L);
+			GameMetrics.Snapshot now = load.metrics.snapshot();
+			Gc now_gc = new Gc();
+			load.report(System.out, t, last, now, last_gc, now_gc);
+			last = now;
+			last_gc = now_gc;
+		}
+		load.stop();
+
+		// Totals over the whole run ...
+		double elapsed = (System.nanoTime() - start) / 1.0e9;
+		GameMetrics.Snapshot total = load.metrics.snapshot();
+		System.out.printf("total over %.1f s: %d decisions (%.1f/s), %d games\n", elapsed, total.decisions,
+				total.decisions / elapsed, total.games_finished);
+		load.latency.write(System.out, "latency", "us");
+		total.histograms[GameMetrics.h_decision_us].write(System.out, "service", "us");
+		new Gc().write(System.out, first_gc);
+	}
+
+}
@@ -0,0 +1,120 @@
+//
+// LogHistogram
+//
+// This class implements a histogram of non-negative long values, such as
+// latencies in microseconds, with buckets of logarithmic width.  Each
+// power of two is split into four buckets, so any value is counted in
+// a bucket no more than 25% wider than the value itself, and the whole
+// range of a long fits in 256 counters.  Values may be recorded from
+// many threads at once without locking, and histograms recorded
+// separately can be merged exactly by adding their counters.
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.io.*;
+import java.util.concurrent.atomic.*;
+
+
+public class LogHistogram {
+
+	// Buckets per power of two, as a number of bits ...
+	static final int sub_bits = 2;
+	static final int num_buckets = 64 << sub_bits;
+
+	// Bucket counters ...
+	final AtomicLongArray counts = new AtomicLongArray(num_buckets);
+	// Total of all values recorded, and the largest value ...
+	final LongAdder sum = new LongAdder();
+	final AtomicLong max = new AtomicLong(0L);
+
+	// bucket -- Return the bucket counting the given value.
+	static int bucket(long value) {
+		if (value < (1L << sub_bits)) {
+			return ((int) Math.max(value, 0L));
+		}
+		int exp = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exp - sub_bits)) & ((1 << sub_bits) - 1);
+		return (((exp - sub_bits + 1) << sub_bits) + sub);
+	}
+
+	// upper -- Return the largest value counted in the given bucket.
+	static long upper(int bucket) {
+		if (bucket < (1 << sub_bits)) {
+			return (bucket);
+		}
+		int exp = (bucket >>> sub_bits) + sub_bits - 1;
+		long sub = bucket & ((1 << sub_bits) - 1);
+		long low = (1L << exp) + (sub << (exp - sub_bits));
+		return (low + (1L << (exp - sub_bits)) - 1L);
+	}
+
+	// record -- Count one occurrence of the given value.
+	public void record(long value) {
+		value = Math.max(value, 0L);
+		counts.incrementAndGet(bucket(value));
+		sum.add(value);
+		max.accumulateAndGet(value, Math::max);
+	}
+
+	// merge -- Add the counts of the given histogram to this one.
+	public void merge(LogHistogram other) {
+		for (int b = 0; b < num_buckets; b++) {
+			long n = other.counts.get(b);
+			if (n != 0L) {
+				counts.addAndGet(b, n);
+			}
+		}
+		sum.add(other.sum.sum());
+		max.accumulateAndGet(other.max.get(), Math::max);
+	}
+
+	// count -- Return the number of values recorded.
+	public long count() {
+		long n = 0L;
+		for (int b = 0; b < num_buckets; b++) {
+			n += counts.get(b);
+		}
+		return (n);
+	}
+
+	// mean -- Return the mean of the values recorded.
+	public double mean() {
+		long n = count();
+		return ((n == 0L) ? 0.0 : ((double) sum.sum()) / n);
+	}
+
+	// max -- Return the largest value recorded.
+	public long max() {
+		return (max.get());
+	}
+
+	// percentile -- Return an upper bound on the given percentile of the
+	// values recorded, or zero if there are none.
+	public long percentile(double p) {
+		long n = count();
+		if (n == 0L) {
+			return (0L);
+		}
+		long rank = (long) Math.ceil((p / 100.0) * n);
+		rank = Math.min(Math.max(rank, 1L), n);
+		long seen = 0L;
+		for (int b = 0; b < num_buckets; b++) {
+			seen += counts.get(b);
+			if (seen >= rank) {
+				return (Math.min(upper(b), max()));
+			}
+		}
+		return (max());
+	}
+
+	// write -- Print a one line summary of the histogram, with the given
+	// name and unit.
+	public void write(PrintStream out, String name, String unit) {
+		out.printf("%-10s n=%d mean=%.1f p50=%d p90=%d p99=%d max=%d %s\n", name, count(), mean(), percentile(50.0),
+				percentile(90.0), percentile(99.0), max(), unit);
+	}
+
+}
@@ -0,0 +1,225 @@
+//
+// MoveScheduler
+//
+// This class implements a scheduler for the computer's decisions in many
+// concurrent games.  Each game submits its state along with a deadline
+// by which it needs a move.  Requests wait in a single queue ordered by
+// deadline, earliest first, and are taken by a fixed pool of worker
+// threads, so a burst of requests cannot use more than the pool's CPUs.
+// Each search is given a time budget (see "SearchControl") from the
+// slack left before its deadline, less a safety margin.  So that one
+// search cannot make the requests queued behind it miss their own
+// deadlines, the budget is also no more than the slack of the next
+// request, shared with the other requests waiting for the same workers.
+// A node limit may be set as well.  A request whose deadline is too
+// close to allow any search, or whose search does not finish even one
+// ply in time, is answered by a cheap fallback policy instead.
+//
+// The scheduler keeps histograms of the time requests spend waiting in
+// the queue and of the time spent deciding them, in microseconds, along
+// with counts of searched, fallback and late decisions.
+//
+// Usage:  java MoveScheduler [threads] [requests] [deadline in ms]
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+
+public class MoveScheduler {
+
+	// A move decided by the scheduler, with the depth of the search
+	// behind it, in plies, and the values of rolling and stopping it
+	// found, or zero and NaN if the move came from the fallback
+	// policy ...
+	public static final class Move {
+		public final Choice choice;
+		public final int depth;
+		public final double eu_roll;
+		public final double eu_stop;
+
+		Move(Choice choice, int depth, double eu_roll, double eu_stop) {
+			this.choice = choice;
+			this.depth = depth;
+			this.eu_roll = eu_roll;
+			this.eu_stop = eu_stop;
+		}
+	}
+
+	// A request for a move ...
+	static final class Request implements Comparable<Request> {
+		final State state;
+		final long deadline; // in "System.nanoTime" units
+		final long submitted;
+		final long sequence; // breaks ties between equal deadlines
+		final CompletableFuture<Move> result = new CompletableFuture<Move>();
+
+		Request(State state, long deadline, long sequence) {
+			this.state = state;
+			this.deadline = deadline;
+			this.submitted = System.nanoTime();
+			this.sequence = sequence;
+		}
+
+		public int compareTo(Request other) {
+			int c = Long.compare(deadline - other.deadline, 0L);
+			return ((c != 0) ? c : Long.compare(sequence, other.sequence));
+		}
+	}
+
+	// Pending requests, earliest deadline first ...
+	final PriorityBlockingQueue<Request> queue = new PriorityBlockingQueue<Request>();
+	final AtomicLong sequence = new AtomicLong(0L);
+	final Thread[] workers;
+	volatile boolean running = true;
+
+	// Policy used when there is no time to search ...
+	Policy fallback = new ThresholdPolicy(3);
+	// Time held back from each search to hand back its answer ...
+	long margin = TimeUnit.MILLISECONDS.toNanos(1L);
+	// Searches with less time than this are not attempted ...
+	long min_slack = TimeUnit.MILLISECONDS.toNanos(1L);
+	// Largest number of nodes for one search, or zero for no limit ...
+	long max_nodes = 0L;
+
+	// Statistics ...
+	final LogHistogram queueing = new LogHistogram();
+	final LogHistogram service = new LogHistogram();
+	final LongAdder searched = new LongAdder();
+	final LongAdder fallbacks = new LongAdder();
+	final LongAdder late = new LongAdder();
+
+	// Constructor with the number of worker threads specified ...
+	public MoveScheduler(int threads) {
+		this.workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread(this::work, "move-scheduler-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	// submit -- Request a move for the computer in the given state by
+	// the given deadline, in "System.nanoTime" units. The state
+	// is copied.
+	public CompletableFuture<Choice> submit(State s, long deadline) {
+		return (request(s, deadline).thenApply(m -> m.choice));
+	}
+
+	// request -- Request a move for the computer in the given state by
+	// the given deadline, as "submit" does, with the search
+	// behind it.
+	public CompletableFuture<Move> request(State s, long deadline) {
+		Request r = new Request(new State(s), deadline, sequence.getAndIncrement());
+		if (!running) {
+			r.result.completeExceptionally(new RejectedExecutionException("scheduler is shut down"));
+			return (r.result);
+		}
+		queue.add(r);
+		return (r.result);
+	}
+
+	// work -- Decide requests until the scheduler is shut down.
+	void work() {
+		while (running) {
+			Request r;
+			try {
+				r = queue.take();
+			} catch (InterruptedException e) {
+				continue;
+			}
+			try {
+				r.result.complete(decide(r));
+			} catch (RuntimeException e) {
+				r.result.completeExceptionally(e);
+			}
+		}
+	}
+
+	// decide -- Return a move for the given request, searching for as
+	// long as its deadline allows.
+	Move decide(Request r) {
+		long start = System.nanoTime();
+		queueing.record((start - r.submitted) / 1000L);
+		long slack = r.deadline - start - margin;
+		Request next = queue.peek();
+		if (next != null) {
+			// Leave time for the requests waiting behind this one ...
+			long next_slack = next.deadline - start - margin;
+			slack = Math.min(slack, next_slack / (1L + (queue.size() / workers.length)));
+		}
+		Move move = null;
+		if (slack >= min_slack) {
+			SearchControl control = new SearchControl(max_nodes, start + slack);
+			Choice act = Searcher.local().choose(r.state, control);
+			if (act != null) {
+				move = new Move(act, control.depth, control.eu_roll, control.eu_stop);
+			}
+		}
+		if (move == null) {
+			fallbacks.increment();
+			move = new Move(fallback.choose(r.state), 0, Double.NaN, Double.NaN);
+		} else {
+			searched.increment();
+		}
+		long done = System.nanoTime();
+		service.record((done - start) / 1000L);
+		if (done - r.deadline > 0L) {
+			late.increment();
+		}
+		return (move);
+	}
+
+	// shutdown -- Stop the workers, failing any requests still waiting.
+	public void shutdown() {
+		running = false;
+		for (Thread t : workers) {
+			t.interrupt();
+		}
+		Request r;
+		while ((r = queue.poll()) != null) {
+			r.result.completeExceptionally(new CancellationException("scheduler is shut down"));
+		}
+	}
+
+	// write -- Print the statistics of the scheduler.
+	public void write(PrintStream out) {
+		out.printf("%d searched, %d fallback, %d late\n", searched.sum(), fallbacks.sum(), late.sum());
+		queueing.write(out, "queueing", "us");
+		service.write(out, "service", "us");
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int count = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+		long deadline_ms = (args.length > 2) ? Long.parseLong(args[2]) : 100L;
+		List<State> states = EvalBench.positions(count, 1L);
+		// Warm up the search engine and its tables ...
+		for (int i = 0; i < Math.min(count, 20); i++) {
+			Searcher.local().choose(states.get(i));
+		}
+		MoveScheduler scheduler = new MoveScheduler(threads);
+		// Submit a burst of requests, with deadlines spread out ...
+		Random generator = new Random(1L);
+		List<CompletableFuture<Choice>> results = new ArrayList<CompletableFuture<Choice>>();
+		long now = System.nanoTime();
+		for (State s : states) {
+			long deadline = now + TimeUnit.MILLISECONDS.toNanos(deadline_ms / 2 + generator.nextInt((int) deadline_ms));
+			results.add(scheduler.submit(s, deadline));
+		}
+		for (CompletableFuture<Choice> r : results) {
+			r.get();
+		}
+		System.out.printf("%d requests, %d threads, deadlines %d to %d ms\n", count, threads, deadline_ms / 2,
+				deadline_ms / 2 + deadline_ms);
+		scheduler.write(System.out);
+		scheduler.shutdown();
+	}
+
+}
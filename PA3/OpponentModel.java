@@ -0,0 +1,347 @@
+//
+// OpponentModel
+//
+// This class implements a model of how an opponent chooses between
+// rolling and stopping, for search to use in place of assuming that
+// every opponent plays perfectly against the computer.  The opponent is
+// taken to stop once the brains collected this turn reach a threshold,
+// and the model keeps a probability distribution over that threshold,
+// one for each number of blasts collected, since many players stop
+// sooner with more blasts.  Like "ThresholdPolicy", the opponent always
+// rolls with no brains, banks a winning score, and, as the last seat in
+// the final round, rolls until it takes the lead.
+//
+// The distributions start from a configured prior and are updated
+// online, by Bayes' rule, from every choice the opponent is seen to
+// make (see "observe").  A choice against the threshold believed in is
+// taken to be a slip, with a small fixed probability, so that no
+// threshold is ever ruled out by a single choice.
+//
+// Search takes an opponent's whole turn as a single chance node, over
+// the number of brains the opponent banks (see "Eval.value_turn").  The
+// chances of banking each number are exact for each combination of
+// thresholds, calculated once by a "TurnCalculator" and shared, and are
+// mixed by the chance of each combination.  Only the brains the
+// opponent still needs to win, and the final round, change what a turn
+// banks, so the mixtures are kept by those, along with the estimate.
+// Combinations less likely than "rare" are left out.  From a position
+// partway through an opponent's turn, search instead takes each choice
+// as a chance node, stopping with the chance that the threshold has
+// been reached (see "Eval.value_modeled").
+//
+// Search reads the model through an immutable "Estimate", which is
+// replaced, never changed, whenever the model learns something.  A
+// search takes one estimate when it starts, so it is not disturbed by
+// choices observed while it runs.  The fingerprint of an estimate keeps
+// search values found under different estimates apart in the
+// "TransTable".
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+
+public class OpponentModel {
+
+	// Thresholds considered, from 1 up to this many brains ...
+	static final int max_threshold = State.brains_to_win;
+	// Probability of a choice against the threshold ...
+	static double slip = 0.05;
+	// Chance of a choice too small for search to look at ...
+	static double negligible = 0.01;
+	// Chance of a combination of thresholds too small to count in what
+	// a turn banks ...
+	static double rare = 1.0e-3;
+
+	// Chances of banking each number of brains in a turn, by the dice in
+	// the cup and the thresholds or final round target, shared by every
+	// estimate ...
+	static final ConcurrentHashMap<Long, double[]> turns = new ConcurrentHashMap<Long, double[]>();
+
+	// Weight of each threshold, by blasts collected ...
+	final double[][] weights = new double[State.num_terminal_blasts][max_threshold + 1];
+
+	// Choices observed so far ...
+	long observations = 0L;
+
+	// Current estimate of the chance of stopping ...
+	volatile Estimate estimate;
+
+	// Default constructor, expecting thresholds near that of a
+	// "ThresholdPolicy" ...
+	public OpponentModel() {
+		this(3, 0.5);
+	}
+
+	// Constructor with the most likely threshold, and the spread of the
+	// prior around it in brains, specified ...
+	public OpponentModel(int threshold, double spread) {
+		for (int blasts = 0; blasts < weights.length; blasts++) {
+			// Expect a stop at the last blast before a shotgun ...
+			int center = (blasts == State.num_terminal_blasts - 1) ? 1 : threshold;
+			for (int t = 1; t <= max_threshold; t++) {
+				weights[blasts][t] = Math.exp(-Math.abs(t - center) / spread);
+			}
+			normalize(weights[blasts]);
+		}
+		this.estimate = new Estimate(weights);
+	}
+
+	// An immutable estimate of how the opponent chooses ...
+	public static final class Estimate {
+		// Weight of each threshold, by blasts collected ...
+		final double[][] weights;
+		// Chance of stopping, by blasts, then by brains collected ...
+		final double[][] stop;
+		// Chances of banking each number of brains in a turn, by context
+		// (see "turn"), mixed when first needed ...
+		final AtomicReferenceArray<double[]> banked;
+		final int fingerprint;
+
+		Estimate(double[][] weights) {
+			this.weights = new double[weights.length][];
+			this.stop = new double[weights.length][max_threshold + 1];
+			this.banked = new AtomicReferenceArray<double[]>(max_threshold + TurnCalculator.max_brains + 2);
+			int h = Double.hashCode(rare);
+			for (int blasts = 0; blasts < weights.length; blasts++) {
+				this.weights[blasts] = weights[blasts].clone();
+				// The threshold has been reached if it is no more than
+				// the brains collected ...
+				double reached = 0.0;
+				for (int brains = 1; brains <= max_threshold; brains++) {
+					reached += weights[blasts][brains];
+					stop[blasts][brains] = Math.min(reached, 1.0);
+					h = (31 * h) + Double.hashCode(weights[blasts][brains]);
+				}
+			}
+			this.fingerprint = h;
+		}
+
+		// stop -- Return the chance that the player in the given seat
+		// stops, given the scores, indexed by seat, and the turn
+		// status.
+		public double stop(int[] scores, int num_players, int seat, int brains_collected, int blasts_collected) {
+			if (brains_collected == 0) {
+				return (0.0);
+			}
+			int mine = scores[seat] + brains_collected;
+			int best = 0;
+			for (int i = 0; i < num_players; i++) {
+				if ((i != seat) && (scores[i] > best)) {
+					best = scores[i];
+				}
+			}
+			// In the final round, the last seat must take the lead ...
+			if ((seat == num_players - 1) && (best >= State.brains_to_win) && (mine <= best)) {
+				return (0.0);
+			}
+			// Bank a winning score ...
+			if (mine >= State.brains_to_win) {
+				return (1.0);
+			}
+			int blasts = Math.min(blasts_collected, stop.length - 1);
+			return (stop[blasts][Math.min(brains_collected, max_threshold)]);
+		}
+
+		// stop -- Return the chance that the current player stops in the
+		// given state.
+		public double stop(State s) {
+			return (stop(s.brains_eaten, s.num_players, s.current_seat, s.brains_collected, s.blasts_collected));
+		}
+
+		// turn -- Return the chances that the player in the given seat
+		// banks each number of brains in a turn started with the
+		// given scores, indexed by seat, and a full cup. A shotgun
+		// is counted as banking none. The array is shared, and
+		// must not be changed.
+		public double[] turn(int[] scores, int num_players, int seat) {
+			int mine = scores[seat];
+			int best = 0;
+			for (int i = 0; i < num_players; i++) {
+				if ((i != seat) && (scores[i] > best)) {
+					best = scores[i];
+				}
+			}
+			int context;
+			if ((seat == num_players - 1) && (best >= State.brains_to_win)) {
+				// In the final round, the last seat rolls until it takes
+				// the lead, whatever its thresholds ...
+				context = max_threshold + Math.min(Math.max(best - mine + 1, 1), TurnCalculator.max_brains + 1);
+			} else {
+				// Thresholds past a winning score are all the same ...
+				context = Math.min(Math.max(State.brains_to_win - mine, 1), max_threshold);
+			}
+			double[] odds = banked.get(context);
+			if (odds == null) {
+				odds = (context > max_threshold) ? OpponentModel.turn(null, context - max_threshold) : mix(context);
+				banked.set(context, odds);
+			}
+			return (odds);
+		}
+
+		// turn -- Return the chances that the current player banks each
+		// number of brains in the turn starting in the given state.
+		public double[] turn(State s) {
+			return (turn(s.brains_eaten, s.num_players, s.current_seat));
+		}
+
+		// mix -- Return the chances of banking each number of brains in a
+		// turn, needing the given number to win, mixed over the
+		// combinations of thresholds.
+		double[] mix(int need) {
+			double[] odds = new double[TurnCalculator.max_brains + 1];
+			double total = mix(need, 0, 1.0, new int[weights.length], odds);
+			int n = odds.length;
+			while ((n > 1) && (odds[n - 1] == 0.0)) {
+				n--;
+			}
+			for (int b = 0; b < n; b++) {
+				odds[b] /= total;
+			}
+			return (Arrays.copyOf(odds, n));
+		}
+
+		// mix -- Add to the given chances those of every combination of
+		// thresholds from the given number of blasts on, with the
+		// thresholds below it given, and the chance of those
+		// given. Return the total chance of the combinations
+		// added. Thresholds at or past the brains needed to win
+		// are taken together.
+		double mix(int need, int blasts, double chance, int[] stops, double[] odds) {
+			if (chance < rare) {
+				return (0.0);
+			}
+			if (blasts == stops.length) {
+				double[] d = OpponentModel.turn(stops, 0);
+				for (int b = 0; b < d.length; b++) {
+					odds[b] += chance * d[b];
+				}
+				return (chance);
+			}
+			double total = 0.0;
+			double beyond = 0.0;
+			for (int t = 1; t <= max_threshold; t++) {
+				if (t >= need) {
+					beyond += weights[blasts][t];
+				} else {
+					stops[blasts] = t;
+					total += mix(need, blasts + 1, chance * weights[blasts][t], stops, odds);
+				}
+			}
+			stops[blasts] = need;
+			total += mix(need, blasts + 1, chance * beyond, stops, odds);
+			return (total);
+		}
+
+		// fingerprint -- Return a hash of this estimate, which stays the
+		// same from one run to the next.
+		public int fingerprint() {
+			return (fingerprint);
+		}
+	}
+
+	// A policy stopping at given thresholds, by blasts collected, or in
+	// the final round at a given target, for calculating turns ...
+	static final class Thresholds implements Policy {
+		final int[] stops;
+		final int target;
+
+		Thresholds(int[] stops, int target) {
+			this.stops = stops;
+			this.target = target;
+		}
+
+		// choose -- Return the action taken by this policy.
+		public Choice choose(State s) {
+			if (s.brains_collected == 0) {
+				return (Choice.roll);
+			}
+			int t = (stops == null) ? target : stops[Math.min(s.blasts_collected, stops.length - 1)];
+			return ((s.brains_collected >= t) ? Choice.stop : Choice.roll);
+		}
+	}
+
+	// turn -- Return the chances of banking each number of brains in a
+	// turn started with a full cup, stopping at the given
+	// thresholds, by blasts collected, or, if they are null, at
+	// the given target. A shotgun is counted as banking none.
+	static double[] turn(int[] stops, int target) {
+		long k = (Cup.total_num_green << 8) | (Cup.total_num_yellow << 4) | Cup.total_num_red;
+		k = (k << 8) | target;
+		if (stops != null) {
+			for (int t : stops) {
+				k = (k << 8) | t;
+			}
+		}
+		double[] odds = turns.get(k);
+		if (odds == null) {
+			Policy p = new Thresholds((stops == null) ? null : stops.clone(), target);
+			TurnCalculator.Distribution d = new TurnCalculator(p).turn();
+			int n = d.banked.length;
+			while ((n > 1) && (d.banked[n - 1] == 0.0)) {
+				n--;
+			}
+			odds = Arrays.copyOf(d.banked, n);
+			odds[0] += d.shotgun;
+			turns.putIfAbsent(k, odds);
+		}
+		return (odds);
+	}
+
+	// estimate -- Return the current estimate of how the opponent
+	// chooses.
+	public Estimate estimate() {
+		return (estimate);
+	}
+
+	// observe -- Update the model with the given choice, made by the
+	// current player in the given state. Choices fixed by the
+	// rules the model always follows tell nothing about the
+	// threshold, and are ignored.
+	public synchronized void observe(State s, Choice act) {
+		if ((act != Choice.roll) && (act != Choice.stop)) {
+			return;
+		}
+		double p = estimate.stop(s);
+		if ((p == 0.0) || (p == 1.0)) {
+			return;
+		}
+		double[] w = weights[Math.min(s.blasts_collected, weights.length - 1)];
+		int brains = Math.min(s.brains_collected, max_threshold);
+		for (int t = 1; t <= max_threshold; t++) {
+			boolean reached = (t <= brains);
+			boolean stops = (act == Choice.stop);
+			w[t] *= (reached == stops) ? (1.0 - slip) : slip;
+		}
+		normalize(w);
+		observations++;
+		estimate = new Estimate(weights);
+	}
+
+	// normalize -- Scale the given weights to sum to one.
+	static void normalize(double[] w) {
+		double sum = Arrays.stream(w).sum();
+		for (int t = 0; t < w.length; t++) {
+			w[t] /= sum;
+		}
+	}
+
+	// mostLikely -- Return the most likely threshold with the given
+	// number of blasts collected.
+	public synchronized int mostLikely(int blasts) {
+		double[] w = weights[Math.min(blasts, weights.length - 1)];
+		int best = 1;
+		for (int t = 2; t <= max_threshold; t++) {
+			if (w[t] > w[best]) {
+				best = t;
+			}
+		}
+		return (best);
+	}
+
+}
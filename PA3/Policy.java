@@ -0,0 +1,21 @@
+//
+// Policy
+//
+// This interface is implemented by any fast rule for deciding whether
+// the current player should roll or stop, without look-ahead search.
+// Policies are used to play out simulated games, and as cheap stand-ins
+// for full search.  A policy is only consulted when the current choice
+// is undecided.
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+public interface Policy {
+
+	// choose -- Return the action that the current player should take
+	// in the given state, either "roll" or "stop".
+	Choice choose(State s);
+
+}
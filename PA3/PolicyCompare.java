@@ -0,0 +1,171 @@
+//
+// PolicyCompare
+//
+// This class provides a "main" method that estimates how much more often
+// one roll/stop policy wins than another, playing each in the first seat
+// against the same opponent.  The two policies play in pairs of games
+// with common random numbers: both games of a pair start from the same
+// seed, and before every roll the dice generator is reseeded from that
+// seed, the turn number and the roll number within the turn.  So the
+// k-th roll of a given turn comes out the same in both games whenever
+// the same dice are in hand and in the cup, and the two results of a
+// pair differ only where the policies lead to different play.  The
+// difference in win rates is estimated from the paired differences,
+// whose variance is far smaller than that of two independent samples.
+//
+// Pairs of games are played in parallel, in rounds, until the confidence
+// interval on the difference is narrower than the given half width, or
+// until the given number of pairs has been played.  The report includes
+// the number of independent games that would have been needed for the
+// same interval.
+//
+// A policy is given as a brain threshold for a "ThresholdPolicy", as
+// "search" for the "Searcher", or as "distilled" for the "DistilledPolicy"
+// written by "PolicyDistiller".
+//
+// Usage:  java PolicyCompare <policy A> <policy B> [half width] [max pairs] [opponent]
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.util.*;
+import java.util.stream.*;
+
+
+public class PolicyCompare {
+
+	// Normal quantile for a 95% confidence interval ...
+	static final double z = 1.96;
+	// Pairs of games played in each round, and before stopping ...
+	static final int round = 1000;
+
+	// Sums over the pairs played so far ...
+	long pairs = 0L;
+	long wins_a = 0L;
+	long wins_b = 0L;
+	long sum_sq_diff = 0L; // the difference in a pair is -1, 0 or 1
+
+	// policy -- Return the policy named by the given argument.
+	static Policy policy(String name) {
+		if (name.equals("search")) {
+			return (s -> Searcher.local().choose(s));
+		}
+		if (name.equals("distilled")) {
+			return (new DistilledPolicy());
+		}
+		return (new ThresholdPolicy(Integer.parseInt(name)));
+	}
+
+	// seed -- Return the seed for the given roll of the given turn of
+	// the game with the given seed.
+	static long seed(long game_seed, int turn, int roll) {
+		long h = game_seed ^ (turn * 0x9e3779b97f4a7c15L) ^ (roll * 0xc2b2ae3d27d4eb4fL);
+		h ^= (h >>> 29);
+		h *= 0xbf58476d1ce4e5b9L;
+		return (h ^ (h >>> 32));
+	}
+
+	// play -- Play a game from the given seed, with the given policy in
+	// the first seat against the given opponent, reseeding the
+	// dice before every roll. Return 1 if the first seat wins
+	// and 0 otherwise.
+	static int play(long game_seed, Policy policy, Policy opponent) {
+		Game g = new Game(game_seed);
+		g.verbose = false;
+		Policy[] policies = { policy, opponent };
+		int turn = 0;
+		int roll = 0;
+		while (!(g.status.terminal())) {
+			int seat = g.status.current_seat;
+			Choice act = policies[seat].choose(g.status);
+			if (act == Choice.roll) {
+				g.generator.setSeed(seed(game_seed, turn, roll));
+				roll++;
+			}
+			g.takeAction(act);
+			if (g.status.current_seat != seat) {
+				turn++;
+				roll = 0;
+			}
+		}
+		return ((g.status.leader() == 0) ? 1 : 0);
+	}
+
+	// run -- Play pairs of games until the confidence interval on the
+	// difference in win rates is no wider than the given half
+	// width, or the given number of pairs has been played.
+	void run(Policy a, Policy b, Policy opponent, double half_width, long max_pairs, long seed) {
+		while (pairs < max_pairs) {
+			long first = pairs;
+			int n = (int) Math.min(round, max_pairs - pairs);
+			long[] sums = IntStream.range(0, n).parallel().mapToObj(i -> {
+				long game_seed = seed(seed, -1, (int) (first + i));
+				int win_a = play(game_seed, a, opponent);
+				int win_b = play(game_seed, b, opponent);
+				return (new long[] { win_a, win_b, (win_a - win_b) * (win_a - win_b) });
+			}).reduce(new long[3], (x, y) -> new long[] { x[0] + y[0], x[1] + y[1], x[2] + y[2] });
+			pairs += n;
+			wins_a += sums[0];
+			wins_b += sums[1];
+			sum_sq_diff += sums[2];
+			if (halfWidth() <= half_width) {
+				break;
+			}
+		}
+	}
+
+	// difference -- Return the estimated difference in win rates.
+	double difference() {
+		return (((double) (wins_a - wins_b)) / pairs);
+	}
+
+	// pairedVariance -- Return the variance of the paired differences.
+	double pairedVariance() {
+		double mean = difference();
+		return (Math.max(((double) sum_sq_diff) / pairs - (mean * mean), 0.0));
+	}
+
+	// independentVariance -- Return the variance of the difference of
+	// one game of each policy, were they independent.
+	double independentVariance() {
+		double p = ((double) wins_a) / pairs;
+		double q = ((double) wins_b) / pairs;
+		return ((p * (1.0 - p)) + (q * (1.0 - q)));
+	}
+
+	// halfWidth -- Return the half width of the confidence interval on
+	// the difference in win rates.
+	double halfWidth() {
+		return (z * Math.sqrt(pairedVariance() / pairs));
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println(
+					"usage: java PolicyCompare <policy A> <policy B> [half width] [max pairs] [opponent]");
+			System.exit(1);
+		}
+		Policy a = policy(args[0]);
+		Policy b = policy(args[1]);
+		double half_width = (args.length > 2) ? Double.parseDouble(args[2]) : 0.01;
+		long max_pairs = (args.length > 3) ? Long.parseLong(args[3]) : 1000000L;
+		Policy opponent = policy((args.length > 4) ? args[4] : "3");
+		PolicyCompare c = new PolicyCompare();
+		long start = System.currentTimeMillis();
+		c.run(a, b, opponent, half_width, max_pairs, 1L);
+		System.out.printf("%d pairs of games, %.1f s\n", c.pairs, (System.currentTimeMillis() - start) / 1000.0);
+		System.out.printf("win rate %s %.4f, %s %.4f\n", args[0], ((double) c.wins_a) / c.pairs, args[1],
+				((double) c.wins_b) / c.pairs);
+		System.out.printf("difference %.4f +/- %.4f (95%%)\n", c.difference(), c.halfWidth());
+		if (c.pairedVariance() == 0.0) {
+			System.out.println("both policies had the same result in every pair");
+		} else {
+			double independent = c.independentVariance() / c.pairedVariance();
+			System.out.printf("independent games would need %.1f times as many games (%.0f)\n", independent,
+					2.0 * c.pairs * independent);
+		}
+	}
+
+}
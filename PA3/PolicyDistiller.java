@@ -0,0 +1,321 @@
+//
+// PolicyDistiller
+//
+// This class provides a "main" method that distills the computer's full
+// search into a table of brain thresholds, for use where no search can
+// be afforded.  Positions at which the computer must decide are sampled
+// from simulated games in which the first seat plays the moves of the
+// "Searcher", as "Game.chooseMove" would, against a threshold opponent,
+// and each is labeled with the move the search made there.  Sampling
+// games played by the search, rather than by a threshold policy, reaches
+// the brain counts at which the search itself stops.
+//
+// The distilled policy keeps the exact rules of "ThresholdPolicy" (roll
+// with no brains, take the lead in the final round, bank a winning
+// score), and otherwise stops once the brains collected this turn reach
+// a threshold looked up by the blasts collected, the dice left in the
+// cup, and the gap between the player's score, counting the brains
+// collected, and the best opponent's score.  Each threshold is the one
+// agreeing with the most labeled positions in its cell, or the largest
+// threshold, meaning never stop, if the search never stopped there.
+// Cells with too few positions take the threshold fitted over all gaps,
+// and failing that, over all positions with the same blasts.
+//
+// The table is written out as the Java source of a "Policy" class that
+// allocates nothing and makes a single table lookup.  The tool reports
+// how often the distilled policy agrees with the search on positions
+// not used for fitting, and the difference in win rates between the two
+// against a threshold opponent (see "PolicyCompare").
+//
+// The search uses the learned "HeuristicTable" named by the
+// "zombie.heuristic" property, if any, as "Pthree" does.
+//
+// Usage:  java PolicyDistiller [positions] [depth] [pairs] [class name]
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.io.*;
+import java.util.*;
+import java.util.stream.*;
+
+
+public class PolicyDistiller {
+
+	// Table dimensions ...
+	static final int num_blasts = State.num_terminal_blasts;
+	static final int num_dice = Cup.total_num_dice + 1;
+	static final int max_gap = 6;
+	static final int num_gaps = (2 * max_gap) + 1;
+	static final int num_cells = num_blasts * num_dice * num_gaps;
+	// Largest threshold, meaning never stop ...
+	static final int max_threshold = State.brains_to_win + 1;
+	// Positions needed in a cell to fit its own threshold ...
+	static int min_samples = 20;
+
+	// A fitted threshold table, used as a policy ...
+	static final class Model implements Policy {
+		final byte[] thresholds = new byte[num_cells];
+
+		// choose -- Return the action taken by this policy.
+		public Choice choose(State s) {
+			Choice act = rule(s);
+			if (act != null) {
+				return (act);
+			}
+			return ((s.brains_collected >= thresholds[cell(s)]) ? Choice.stop : Choice.roll);
+		}
+
+		// source -- Write the Java source of a policy class with the given
+		// name, using this table.
+		void source(PrintStream out, String name, int samples, int depth) {
+			out.printf("//\n// %s\n//\n", name);
+			out.println("// This class implements a roll/stop policy distilled from the computer's");
+			out.printf("// search, by \"PolicyDistiller\" from %d positions labeled by a search\n", samples);
+			out.printf("// of depth %d.  It follows the exact rules of \"ThresholdPolicy\", and\n", depth);
+			out.println("// otherwise stops once the brains collected reach a threshold looked up");
+			out.println("// by the blasts collected, the dice left in the cup, and the gap to the");
+			out.println("// best opponent's score.  It allocates nothing.  Do not edit this file;");
+			out.println("// run \"PolicyDistiller\" again instead.");
+			if (Eval.heuristic_table != null) {
+				out.println("// The search used a learned \"HeuristicTable\".");
+			}
+			out.println("//");
+			out.println("// Zombie Dice is a trademark of Steve Jackson Games.  For more information");
+			out.println("// about this game, see \"zombiedice.sjgames.com\".");
+			out.println("//");
+			out.println("\n");
+			out.printf("public class %s implements Policy {\n\n", name);
+			out.println("\t// Table dimensions ...");
+			out.printf("\tstatic final int num_blasts = %d;\n", num_blasts);
+			out.printf("\tstatic final int num_dice = %d;\n", num_dice);
+			out.printf("\tstatic final int max_gap = %d;\n", max_gap);
+			out.printf("\tstatic final int num_gaps = %d;\n\n", num_gaps);
+			out.println("\t// Brain thresholds, by blasts, then dice in the cup, then gap ...");
+			out.println("\tstatic final byte[] thresholds = {");
+			for (int blasts = 0; blasts < num_blasts; blasts++) {
+				for (int dice = 0; dice < num_dice; dice++) {
+					out.print("\t\t\t");
+					for (int gap = 0; gap < num_gaps; gap++) {
+						out.printf("%d,%s", thresholds[(((blasts * num_dice) + dice) * num_gaps) + gap],
+								(gap < num_gaps - 1) ? " " : "");
+					}
+					out.printf(" // %d blasts, %d dice\n", blasts, dice);
+				}
+			}
+			out.println("\t};\n");
+			out.println("\t// choose -- Return the action taken by this policy.");
+			out.println("\tpublic Choice choose(State s) {");
+			out.println("\t\t// Always roll if no brains have been collected ...");
+			out.println("\t\tif (s.brains_collected == 0) {");
+			out.println("\t\t\treturn (Choice.roll);");
+			out.println("\t\t}");
+			out.println("\t\tint mine = s.brains_eaten[s.current_seat] + s.brains_collected;");
+			out.println("\t\tint best = s.bestOpponentScore(s.current_seat);");
+			out.println("\t\t// In the final round, the last seat must take the lead ...");
+			out.println("\t\tif ((s.current_seat == s.num_players - 1) && (best >= State.brains_to_win) && (mine <= best)) {");
+			out.println("\t\t\treturn (Choice.roll);");
+			out.println("\t\t}");
+			out.println("\t\t// Bank a winning score ...");
+			out.println("\t\tif (mine >= State.brains_to_win) {");
+			out.println("\t\t\treturn (Choice.stop);");
+			out.println("\t\t}");
+			out.println("\t\tint blasts = Math.min(s.blasts_collected, num_blasts - 1);");
+			out.println("\t\tint dice = Math.min(s.cup.num_dice, num_dice - 1);");
+			out.println("\t\tint gap = Math.max(-max_gap, Math.min(max_gap, mine - best)) + max_gap;");
+			out.println("\t\tint threshold = thresholds[(((blasts * num_dice) + dice) * num_gaps) + gap];");
+			out.println("\t\treturn ((s.brains_collected >= threshold) ? Choice.stop : Choice.roll);");
+			out.println("\t}");
+			out.println("\n}");
+		}
+	}
+
+	// rule -- Return the move fixed by the rules of "ThresholdPolicy" in
+	// the given state, or null if the table decides.
+	static Choice rule(State s) {
+		if (s.brains_collected == 0) {
+			return (Choice.roll);
+		}
+		int mine = s.brains_eaten[s.current_seat] + s.brains_collected;
+		int best = s.bestOpponentScore(s.current_seat);
+		if ((s.current_seat == s.num_players - 1) && (best >= State.brains_to_win) && (mine <= best)) {
+			return (Choice.roll);
+		}
+		if (mine >= State.brains_to_win) {
+			return (Choice.stop);
+		}
+		return (null);
+	}
+
+	// cell -- Return the index of the table cell of the given state.
+	static int cell(State s) {
+		int mine = s.brains_eaten[s.current_seat] + s.brains_collected;
+		int best = s.bestOpponentScore(s.current_seat);
+		int blasts = Math.min(s.blasts_collected, num_blasts - 1);
+		int dice = Math.min(s.cup.num_dice, num_dice - 1);
+		int gap = Math.max(-max_gap, Math.min(max_gap, mine - best)) + max_gap;
+		return ((((blasts * num_dice) + dice) * num_gaps) + gap);
+	}
+
+	// positions -- Collect the given number of positions at which the
+	// first seat must decide, from seeded simulated games in
+	// which it plays the moves of the search, adding the move
+	// made at each position to the given labels.
+	static List<State> positions(int count, long seed, List<Choice> labels) {
+		List<State> found = new ArrayList<State>();
+		Random generator = new Random(seed);
+		Policy opponent = new ThresholdPolicy(3);
+		while (found.size() < count) {
+			Game g = new Game(generator.nextLong());
+			g.verbose = false;
+			while ((!(g.status.terminal())) && (found.size() < count)) {
+				Choice act;
+				if (g.status.current_seat != 0) {
+					act = opponent.choose(g.status);
+				} else if (g.status.brains_collected == 0) {
+					act = Choice.roll;
+				} else {
+					act = Searcher.local().choose(g.status);
+					found.add(new State(g.status));
+					labels.add(act);
+				}
+				g.takeAction(act);
+			}
+		}
+		return (found);
+	}
+
+	// fit -- Return the threshold table agreeing best with the given
+	// labeled states.
+	static Model fit(List<State> states, Choice[] labels) {
+		// Positions stopped at and rolled at, by cell and by brains ...
+		int[][] stops = new int[num_cells][max_threshold + 1];
+		int[][] rolls = new int[num_cells][max_threshold + 1];
+		for (int i = 0; i < labels.length; i++) {
+			State s = states.get(i);
+			if (rule(s) != null) {
+				continue;
+			}
+			int b = Math.min(s.brains_collected, max_threshold);
+			if (labels[i] == Choice.stop) {
+				stops[cell(s)][b]++;
+			} else {
+				rolls[cell(s)][b]++;
+			}
+		}
+		Model m = new Model();
+		for (int blasts = 0; blasts < num_blasts; blasts++) {
+			int[] blast_stops = new int[max_threshold + 1];
+			int[] blast_rolls = new int[max_threshold + 1];
+			for (int c = blasts * num_dice * num_gaps; c < (blasts + 1) * num_dice * num_gaps; c++) {
+				add(blast_stops, stops[c]);
+				add(blast_rolls, rolls[c]);
+			}
+			int blast_threshold = threshold(blast_stops, blast_rolls, State.brains_to_win);
+			for (int dice = 0; dice < num_dice; dice++) {
+				int first = ((blasts * num_dice) + dice) * num_gaps;
+				int[] dice_stops = new int[max_threshold + 1];
+				int[] dice_rolls = new int[max_threshold + 1];
+				for (int c = first; c < first + num_gaps; c++) {
+					add(dice_stops, stops[c]);
+					add(dice_rolls, rolls[c]);
+				}
+				int dice_threshold = threshold(dice_stops, dice_rolls, blast_threshold);
+				for (int c = first; c < first + num_gaps; c++) {
+					m.thresholds[c] = (byte) threshold(stops[c], rolls[c], dice_threshold);
+				}
+			}
+		}
+		return (m);
+	}
+
+	// add -- Add the second array of counts into the first.
+	static void add(int[] sum, int[] counts) {
+		for (int b = 0; b < sum.length; b++) {
+			sum[b] += counts[b];
+		}
+	}
+
+	// threshold -- Return the threshold agreeing with the most of the
+	// given counts of stops and rolls by brains, or the given
+	// default if there are too few counts.
+	static int threshold(int[] stops, int[] rolls, int otherwise) {
+		int total = IntStream.of(stops).sum() + IntStream.of(rolls).sum();
+		if (total < min_samples) {
+			return (otherwise);
+		}
+		if (IntStream.of(stops).sum() == 0) {
+			// The search rolled at every count seen, so never stop ...
+			return (max_threshold);
+		}
+		// Stopping at every threshold or more agrees with all of the
+		// stops at or above it, and all of the rolls below it ...
+		int agree = IntStream.of(stops).sum();
+		int best_agree = -1;
+		int best = otherwise;
+		for (int t = 1; t <= max_threshold; t++) {
+			agree += rolls[t - 1] - stops[t - 1];
+			if (agree > best_agree) {
+				best_agree = agree;
+				best = t;
+			}
+		}
+		return (best);
+	}
+
+	// agreement -- Return the fraction of the given labeled states on
+	// which the given policy makes the labeled move.
+	static double agreement(Policy p, List<State> states, Choice[] labels) {
+		int agree = 0;
+		for (int i = 0; i < labels.length; i++) {
+			agree += (p.choose(states.get(i)) == labels[i]) ? 1 : 0;
+		}
+		return (((double) agree) / labels.length);
+	}
+
+	public static void main(String[] args) throws IOException {
+		int count = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+		if (args.length > 1) {
+			Eval.depth_limit = Integer.parseInt(args[1]);
+		}
+		long pairs = (args.length > 2) ? Long.parseLong(args[2]) : 2000L;
+		String name = (args.length > 3) ? args[3] : "DistilledPolicy";
+		// Use a learned heuristic table, if one has been built ...
+		String table = System.getProperty("zombie.heuristic");
+		if (table != null) {
+			Eval.heuristic_table = HeuristicTable.read(new File(table));
+		}
+
+		// Label positions for fitting, and others for testing ...
+		long start = System.currentTimeMillis();
+		List<Choice> labels = new ArrayList<Choice>();
+		List<State> train = positions(count, 1L, labels);
+		Choice[] train_labels = labels.toArray(new Choice[0]);
+		labels.clear();
+		List<State> test = positions(Math.max(count / 4, 1), 2L, labels);
+		Choice[] test_labels = labels.toArray(new Choice[0]);
+		System.out.printf("%d positions labeled at depth %d, %.1f s\n", train.size() + test.size(), Eval.depth_limit,
+				(System.currentTimeMillis() - start) / 1000.0);
+
+		Model m = fit(train, train_labels);
+		try (PrintStream out = new PrintStream(new FileOutputStream(name + ".java"))) {
+			m.source(out, name, train.size(), Eval.depth_limit);
+		}
+		System.out.printf("wrote %s.java\n", name);
+		System.out.printf("agreement with search: distilled %.4f (fitted %.4f), threshold 3 %.4f\n",
+				agreement(m, test, test_labels), agreement(m, train, train_labels),
+				agreement(new ThresholdPolicy(3), test, test_labels));
+
+		// Win rates against a threshold opponent ...
+		if (pairs > 0L) {
+			PolicyCompare c = new PolicyCompare();
+			c.run(m, PolicyCompare.policy("search"), new ThresholdPolicy(3), 0.0, pairs, 1L);
+			System.out.printf("win rate distilled %.4f, search %.4f, over %d pairs of games\n",
+					((double) c.wins_a) / c.pairs, ((double) c.wins_b) / c.pairs, c.pairs);
+			System.out.printf("win rate loss %.4f +/- %.4f (95%%)\n", -c.difference(), c.halfWidth());
+		}
+	}
+
+}
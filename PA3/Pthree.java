@@ -2,7 +2,21 @@
 // Pthree
 //
 // This class provides a "main" method that acts as a driver program for
-// a Zombie Dice game player.
+// a Zombie Dice game player.  The number of players at the table is
+// given by the "zombie.players" system property (default 2), with the
+// computer in the first seat.  A learned heuristic table built by
+// "HeuristicTable" may be named by the "zombie.heuristic" property.
+// Setting "zombie.opponent.model" makes the computer learn how the user
+// chooses to roll or stop, rather than expect the worst of the user.
+// Search results are saved across runs to the file named by the
+// "zombie.cache" property, if given.  Search trees kept on the heap are
+// held to the fraction of the heap given by "zombie.cache.budget" (see
+// "CacheBudget").  Every node searched by the computer is traced to the
+// file named by "zombie.trace", if given (see "SearchTrace").  Games are
+// journaled in the directory named
+// by the "zombie.journal" system property (default "journal").  If an
+// unfinished game is found there on startup, it is resumed from its
+// journal rather than starting a new game.
 // 
 // Zombie Dice is a trademark of Steve Jackson Games.  For more information
 // about this game, see "zombiedice.sjgames.com".
@@ -11,11 +25,59 @@
 //
 
 
+import java.io.*;
+import java.util.*;
+
+
 public class Pthree {
 
-	public static void main(String[] args) {
-		Game session = new Game();
+	public static void main(String[] args) throws IOException {
+		File dir = new File(System.getProperty("zombie.journal", "journal"));
+		// Use a learned heuristic table, if one has been built ...
+		String table = System.getProperty("zombie.heuristic");
+		if (table != null) {
+			Eval.heuristic_table = HeuristicTable.read(new File(table));
+		}
+		// Search critical positions deeper than quiet ones ...
+		if (Boolean.getBoolean("zombie.depth.adjust")) {
+			Eval.depth_policy = new DepthPolicy();
+		}
+		// Model the user's choices, rather than expecting the worst ...
+		if (Boolean.getBoolean("zombie.opponent.model")) {
+			Eval.opponent_model = new OpponentModel();
+		}
+		// Warm the search cache from the last run, and keep saving it ...
+		String cache = System.getProperty("zombie.cache");
+		if ((cache != null) && (TransTable.shared() != null)) {
+			CacheSnapshot.install(TransTable.shared(), new File(cache), Long.getLong("zombie.cache.period", 300L));
+		}
+		// Trace the computer's searches, for debugging ...
+		SearchTrace trace = null;
+		String trace_file = System.getProperty("zombie.trace");
+		if (trace_file != null) {
+			trace = new SearchTrace(new File(trace_file));
+			Searcher.local().useTrace(trace);
+		}
+		Game session = null;
+		// Resume the most recent unfinished game, if any ...
+		List<File> unfinished = Journal.unfinished(dir);
+		if (!(unfinished.isEmpty())) {
+			Replay r = new Replay(unfinished.get(unfinished.size() - 1));
+			System.out.println("RESUMING GAME FROM " + r.file.getName());
+			// Continue with fresh dice, rather than repeating those
+			// rolled since the start of the game ...
+			session = new Game(r.finalState(), r.seed() + r.numSteps());
+			session.journal = Journal.resume(r);
+		} else {
+			int num_players = Integer.getInteger("zombie.players", 2);
+			session = new Game(num_players, new Random().nextLong());
+			session.journal = Journal.create(dir, session.seed, num_players);
+		}
 		session.play();
+		session.journal.close();
+		if (trace != null) {
+			trace.close();
+		}
 		session = null;
 	}
 
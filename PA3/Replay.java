@@ -0,0 +1,220 @@
+//
+// Replay
+//
+// This class reads back a game journal written by "Journal" and rebuilds
+// the state of play at any step of the game.  A step is one action taken
+// by a player, so step zero is the start of the game and step
+// "numSteps()" is the latest state recorded in the journal.  Rolls are
+// replayed from their recorded outcomes, by drawing dice of the recorded
+// colors and setting the recorded faces, so replay does not depend on
+// the order of dice in the cup.  Reading stops at the first record with
+// a bad length or checksum, which is how a record torn by a crash is
+// discarded.
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+
+public class Replay {
+
+	// A single journal record ...
+	static class Record {
+		byte type;
+		ByteBuffer payload;
+
+		Record(byte type, ByteBuffer payload) {
+			this.type = type;
+			this.payload = payload;
+		}
+	}
+
+	// Journal file ...
+	File file;
+	// Length of the intact prefix of the file ...
+	long valid_length = 0L;
+
+	// Game parameters ...
+	long seed = 0L;
+	int num_players = 2;
+
+	// Intact records, in order ...
+	List<Record> records = new ArrayList<Record>();
+	// Index of the record for each action (step) ...
+	List<Integer> steps = new ArrayList<Integer>();
+	// Whether the end of the game was recorded ...
+	boolean ended = false;
+
+	// Constructor -- Read the given journal file.
+	public Replay(File file) throws IOException {
+		this.file = file;
+		ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		// Read records until the end of the file or a torn record ...
+		while (data.remaining() >= 4) {
+			int start = data.position();
+			int length = data.getInt();
+			if ((length < 1) || (data.remaining() < length + 4)) {
+				break;
+			}
+			CRC32 crc = new CRC32();
+			crc.update(data.array(), start + 4, length);
+			ByteBuffer body = ByteBuffer.wrap(data.array(), start + 4, length).slice();
+			data.position(start + 4 + length);
+			if (data.getInt() != (int) crc.getValue()) {
+				break;
+			}
+			Record rec = new Record(body.get(), body.slice());
+			if (rec.type == Journal.rec_action) {
+				steps.add(records.size());
+			}
+			if (rec.type == Journal.rec_end) {
+				ended = true;
+			}
+			records.add(rec);
+			valid_length = data.position();
+		}
+		// Check the header ...
+		if (records.isEmpty() || (records.get(0).type != Journal.rec_start)) {
+			throw new IOException("not a game journal: " + file);
+		}
+		ByteBuffer header = records.get(0).payload.duplicate();
+		int magic = header.getInt();
+		if (magic == Journal.old_magic) {
+			throw new IOException("game journal of an older format: " + file);
+		}
+		if (magic != Journal.magic) {
+			throw new IOException("not a game journal: " + file);
+		}
+		seed = header.getLong();
+		num_players = header.getInt();
+		if ((header.getInt() != State.brains_to_win) || (header.getInt() != State.num_terminal_blasts)
+				|| (header.getInt() != State.hand_size) || (header.getInt() != Cup.total_num_dice)) {
+			throw new IOException("journal was written under different rules: " + file);
+		}
+	}
+
+	// seed -- Return the random seed recorded for the game.
+	public long seed() {
+		return (seed);
+	}
+
+	// numPlayers -- Return the number of players in the game.
+	public int numPlayers() {
+		return (num_players);
+	}
+
+	// finished -- Return true iff the end of the game was recorded.
+	public boolean finished() {
+		return (ended);
+	}
+
+	// numSteps -- Return the number of actions recorded.
+	public int numSteps() {
+		return (steps.size());
+	}
+
+	// finalState -- Return the latest state recorded in the journal.
+	public State finalState() {
+		return (stateAt(numSteps()));
+	}
+
+	// stateAt -- Return a newly allocated State object reflecting the
+	// game after the given number of actions.
+	public State stateAt(int step) {
+		State s = new State(num_players);
+		int last = (step < steps.size()) ? steps.get(step) : records.size();
+		for (int i = 1; i < last; i++) {
+			Record rec = records.get(i);
+			ByteBuffer b = rec.payload.duplicate();
+			switch (rec.type) {
+			case Journal.rec_action:
+				applyAction(s, b);
+				break;
+			case Journal.rec_roll:
+				applyRoll(s, b);
+				break;
+			default:
+				// Decisions and the end of the game do not change
+				// the state of play ...
+				break;
+			}
+		}
+		return (s);
+	}
+
+	// decisions -- Return the recorded computer decisions, as the
+	// step at which each was made followed by the chosen
+	// action and its expected utility values for rolling
+	// and stopping.
+	public List<double[]> decisions() {
+		List<double[]> found = new ArrayList<double[]>();
+		int step = 0;
+		for (Record rec : records) {
+			if (rec.type == Journal.rec_action) {
+				step++;
+			}
+			if (rec.type == Journal.rec_decision) {
+				ByteBuffer b = rec.payload.duplicate();
+				b.get(); // seat
+				double act = b.get();
+				double eu_roll = b.getDouble();
+				double eu_stop = b.getDouble();
+				found.add(new double[] { step, act, eu_roll, eu_stop });
+			}
+		}
+		return (found);
+	}
+
+	// applyAction -- Apply an action record to the given state,
+	// mirroring "Game.takeAction". The outcome of a
+	// roll is applied by the roll record that follows.
+	static void applyAction(State s, ByteBuffer b) {
+		b.get(); // seat
+		Choice act = Choice.values()[b.get()];
+		s.current_choice = act;
+		if (act == Choice.stop) {
+			s.endTurn();
+			if (!(s.terminal())) {
+				s.nextPlayer();
+			}
+		}
+	}
+
+	// applyRoll -- Apply a roll record to the given state, drawing the
+	// recorded dice and collecting the recorded faces.
+	static void applyRoll(State s, ByteBuffer b) {
+		b.get(); // seat
+		int held = b.get();
+		int n = b.get();
+		DieColor[] colors = new DieColor[n];
+		DieFace[] faces = new DieFace[n];
+		for (int i = 0; i < n; i++) {
+			colors[i] = DieColor.values()[b.get()];
+			faces[i] = DieFace.values()[b.get()];
+		}
+		// Draw the fresh dice of the recorded colors ...
+		for (int i = held; i < n; i++) {
+			s.draw(colors[i]);
+		}
+		// The cup ran out, so collected brain dice were reused ...
+		if (s.numDiceInHand() < State.hand_size) {
+			s.reuseBrains();
+		}
+		// Set the recorded faces and collect the hand ...
+		for (int i = 0; i < n; i++) {
+			s.setUp(i, faces[i]);
+		}
+		s.collectHand();
+		if (!(s.shotgunned())) {
+			s.current_choice = Choice.undecided;
+		}
+	}
+
+}
@@ -0,0 +1,229 @@
+//
+// RollTable
+//
+// This class implements a precomputed, immutable table of roll outcome
+// probabilities, keyed by the color composition of the hand (how many
+// green, yellow and red dice are rolled) and by the number of blasts
+// already collected this turn.  For each key the table holds the
+// distribution over the resulting numbers of brains and blasts, and the
+// chance that the roll ends the turn by being shotgunned.  It also holds
+// the distinct outcomes of the roll by color, which is what a search
+// needs in order to expand the roll: outcomes that only differ in which
+// die of a color showed which face are merged, so a hand of three green
+// dice has 10 distinct outcomes rather than 27.
+//
+// The table is built once, from the "Die" face probabilities, and is
+// shared by "Eval", by threshold policies, and by the shotgun risk shown
+// to the user in "Game".
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.util.*;
+
+
+public final class RollTable {
+
+	// A distinct outcome of rolling a hand. For each color, the number
+	// of dice of that color showing brains and showing blasts. The rest
+	// show feet.
+	public static final class Outcome {
+		public final int[] brains; // indexed by DieColor ordinal
+		public final int[] blasts; // indexed by DieColor ordinal
+		public final int num_brains;
+		public final int num_blasts;
+		public final double prob;
+
+		Outcome(int[] brains, int[] blasts, double prob) {
+			this.brains = brains;
+			this.blasts = blasts;
+			this.num_brains = brains[1] + brains[2] + brains[3];
+			this.num_blasts = blasts[1] + blasts[2] + blasts[3];
+			this.prob = prob;
+		}
+	}
+
+	// The table for the current dice parameters, built when first
+	// needed ...
+	static final class Holder {
+		static final RollTable shared = new RollTable(State.hand_size);
+	}
+
+	// Entries, indexed by hand composition ...
+	final int max_hand;
+	final Outcome[][] outcomes;
+	// Probability of each (brains, blasts) total, by composition ...
+	final double[][][] totals;
+
+	// Constructor -- Build the table for hands of up to "max_hand" dice.
+	RollTable(int max_hand) {
+		this.max_hand = max_hand;
+		int n = (max_hand + 1) * (max_hand + 1) * (max_hand + 1);
+		this.outcomes = new Outcome[n][];
+		this.totals = new double[n][][];
+		for (int green = 0; green <= max_hand; green++) {
+			for (int yellow = 0; yellow + green <= max_hand; yellow++) {
+				for (int red = 0; red + yellow + green <= max_hand; red++) {
+					build(green, yellow, red);
+				}
+			}
+		}
+	}
+
+	// get -- Return the shared table for the current dice parameters.
+	// The table is built by the first caller, and read by every
+	// thread without locking.
+	public static RollTable get() {
+		return (Holder.shared);
+	}
+
+	// index -- Return the entry for the given hand composition.
+	int index(int green, int yellow, int red) {
+		return ((((green * (max_hand + 1)) + yellow) * (max_hand + 1)) + red);
+	}
+
+	// build -- Fill in the entry for the given hand composition.
+	void build(int green, int yellow, int red) {
+		List<Outcome> found = new ArrayList<Outcome>();
+		double[][] dist = new double[max_hand + 1][max_hand + 1];
+		Die[] dice = { new Die(DieColor.green), new Die(DieColor.yellow), new Die(DieColor.red) };
+		int[] counts = { green, yellow, red };
+		// Enumerate (brains, blasts) splits for each color in turn ...
+		for (int gb = 0; gb <= green; gb++) {
+			for (int gx = 0; gb + gx <= green; gx++) {
+				for (int yb = 0; yb <= yellow; yb++) {
+					for (int yx = 0; yb + yx <= yellow; yx++) {
+						for (int rb = 0; rb <= red; rb++) {
+							for (int rx = 0; rb + rx <= red; rx++) {
+								int[] brains = { 0, gb, yb, rb };
+								int[] blasts = { 0, gx, yx, rx };
+								double p = 1.0;
+								for (int c = 0; c < 3; c++) {
+									p = p * split(dice[c], counts[c], brains[c + 1], blasts[c + 1]);
+								}
+								Outcome o = new Outcome(brains, blasts, p);
+								found.add(o);
+								dist[o.num_brains][o.num_blasts] += p;
+							}
+						}
+					}
+				}
+			}
+		}
+		int i = index(green, yellow, red);
+		outcomes[i] = found.toArray(new Outcome[found.size()]);
+		totals[i] = dist;
+	}
+
+	// split -- Return the probability that, of "n" dice like the given
+	// one, exactly "b" show brains and "x" show blasts.
+	static double split(Die d, int n, int b, int x) {
+		double ways = choose(n, b) * choose(n - b, x);
+		return (ways * Math.pow(d.prob(DieFace.brain), b) * Math.pow(d.prob(DieFace.blast), x)
+				* Math.pow(d.prob(DieFace.feet), n - b - x));
+	}
+
+	// choose -- Return the binomial coefficient "n choose k".
+	static double choose(int n, int k) {
+		double c = 1.0;
+		for (int i = 1; i <= k; i++) {
+			c = c * (n - k + i) / i;
+		}
+		return (c);
+	}
+
+	// outcomes -- Return the distinct outcomes of rolling a hand of the
+	// given composition. The returned array must not be
+	// modified.
+	public Outcome[] outcomes(int green, int yellow, int red) {
+		return (outcomes[index(green, yellow, red)]);
+	}
+
+	// prob -- Return the probability that rolling a hand of the given
+	// composition shows exactly the given numbers of brains and
+	// blasts.
+	public double prob(int green, int yellow, int red, int brains, int blasts) {
+		if ((brains < 0) || (blasts < 0) || (brains > max_hand) || (blasts > max_hand)) {
+			return (0.0);
+		}
+		return (totals[index(green, yellow, red)][brains][blasts]);
+	}
+
+	// brainsDist -- Return the distribution of the number of brains
+	// rolled by a hand of the given composition.
+	public double[] brainsDist(int green, int yellow, int red) {
+		double[][] dist = totals[index(green, yellow, red)];
+		double[] brains = new double[max_hand + 1];
+		for (int b = 0; b <= max_hand; b++) {
+			for (int x = 0; x <= max_hand; x++) {
+				brains[b] += dist[b][x];
+			}
+		}
+		return (brains);
+	}
+
+	// shotgunProb -- Return the probability that rolling a hand of the
+	// given composition, with the given number of blasts
+	// already collected, ends the turn by shotgun.
+	public double shotgunProb(int green, int yellow, int red, int blasts_collected) {
+		double[][] dist = totals[index(green, yellow, red)];
+		double p = 0.0;
+		for (int b = 0; b <= max_hand; b++) {
+			for (int x = Math.max(State.num_terminal_blasts - blasts_collected, 0); x <= max_hand; x++) {
+				p += dist[b][x];
+			}
+		}
+		return (p);
+	}
+
+	// shotgunRisk -- Return the probability that the current player in
+	// the given state would be shotgunned by rolling now,
+	// accounting for the dice still to be drawn from the
+	// cup to fill the hand.
+	public double shotgunRisk(State s) {
+		int[] hand = handColors(s);
+		int need = State.hand_size - s.numDiceInHand();
+		return (risk(hand[1], hand[2], hand[3], s.cup.num_green, s.cup.num_yellow, s.cup.num_red, need,
+				s.blasts_collected));
+	}
+
+	// risk -- Return the shotgun probability after drawing "need" more
+	// dice from a cup of the given composition into a hand of
+	// the given composition.
+	double risk(int green, int yellow, int red, int cup_green, int cup_yellow, int cup_red, int need,
+			int blasts_collected) {
+		int in_cup = cup_green + cup_yellow + cup_red;
+		if ((need == 0) || (in_cup == 0)) {
+			// Nothing left to draw. An empty cup would be refilled
+			// with brain dice, which this estimate ignores ...
+			return (shotgunProb(green, yellow, red, blasts_collected));
+		}
+		double p = 0.0;
+		if (cup_green > 0) {
+			p += ((double) cup_green / in_cup)
+					* risk(green + 1, yellow, red, cup_green - 1, cup_yellow, cup_red, need - 1, blasts_collected);
+		}
+		if (cup_yellow > 0) {
+			p += ((double) cup_yellow / in_cup)
+					* risk(green, yellow + 1, red, cup_green, cup_yellow - 1, cup_red, need - 1, blasts_collected);
+		}
+		if (cup_red > 0) {
+			p += ((double) cup_red / in_cup)
+					* risk(green, yellow, red + 1, cup_green, cup_yellow, cup_red - 1, need - 1, blasts_collected);
+		}
+		return (p);
+	}
+
+	// handColors -- Return the number of dice of each color in the hand
+	// of the given state, indexed by DieColor ordinal.
+	static int[] handColors(State s) {
+		int[] counts = new int[4];
+		for (Die d : s.hand) {
+			counts[d.getColor().ordinal()]++;
+		}
+		return (counts);
+	}
+
+}
@@ -0,0 +1,93 @@
+//
+// SearchControl
+//
+// This class implements the budget of a single bounded search by the
+// "Searcher": a limit on the nodes it may visit, a deadline, or both.
+// The searcher polls the control as it visits nodes, and abandons the
+// search as soon as the budget is spent.  The deadline is only checked
+// every "check_interval" nodes, since reading the clock costs far more
+// than visiting a node.  Another thread may also cancel the search at
+// any time, and the search stops at the next node it visits.
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+public class SearchControl {
+
+	// Nodes visited between checks of the clock ...
+	static final long check_interval = 1024L;
+
+	// Largest number of nodes to visit, or zero for no limit ...
+	long max_nodes = 0L;
+	// Deadline, in "System.nanoTime" units, or zero for none ...
+	long deadline = 0L;
+
+	// Deepest search completed, in plies, and the values of rolling and
+	// stopping it found ...
+	int depth = 0;
+	double eu_roll = Double.NaN;
+	double eu_stop = Double.NaN;
+	// Nodes visited so far ...
+	long nodes = 0L;
+	// Whether the budget has been spent ...
+	boolean spent = false;
+	// Whether the search has been cancelled, from any thread ...
+	volatile boolean cancelled = false;
+
+	// Constructor with the node limit and the deadline specified ...
+	public SearchControl(long max_nodes, long deadline) {
+		this.max_nodes = max_nodes;
+		this.deadline = deadline;
+	}
+
+	// withTime -- Return a control allowing the given number of
+	// nanoseconds from now.
+	public static SearchControl withTime(long nanos) {
+		return (new SearchControl(0L, System.nanoTime() + Math.max(nanos, 1L)));
+	}
+
+	// withNodes -- Return a control allowing the given number of nodes.
+	public static SearchControl withNodes(long max_nodes) {
+		return (new SearchControl(Math.max(max_nodes, 1L), 0L));
+	}
+
+	// depth -- Return the deepest search completed, in plies.
+	public int depth() {
+		return (depth);
+	}
+
+	// spent -- Return true iff the budget has run out.
+	public boolean spent() {
+		return (spent);
+	}
+
+	// cancel -- Stop the search at the next node it visits.
+	public void cancel() {
+		cancelled = true;
+	}
+
+	// cancelled -- Return true iff the search has been cancelled.
+	public boolean cancelled() {
+		return (cancelled);
+	}
+
+	// visit -- Count one node visited, returning true iff the search
+	// should now be abandoned.
+	boolean visit() {
+		nodes++;
+		if (spent) {
+			return (true);
+		}
+		if (cancelled) {
+			spent = true;
+		} else if ((max_nodes > 0L) && (nodes > max_nodes)) {
+			spent = true;
+		} else if ((deadline != 0L) && ((nodes % check_interval) == 0L) && (System.nanoTime() - deadline >= 0L)) {
+			spent = true;
+		}
+		return (spent);
+	}
+
+}
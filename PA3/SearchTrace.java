@@ -0,0 +1,182 @@
+//
+// SearchTrace
+//
+// This class implements an opt-in trace of the nodes visited by a
+// "Searcher", for finding out why a decision was slow or looks wrong.
+// Once a trace is given to "Searcher.useTrace", every node the search
+// visits is streamed to a binary file as a fixed-width record, written
+// when the node's value is known.  Only the path from the root to the
+// current node is held in memory, so tracing takes constant memory
+// however large the tree.  Records are written children first, and a
+// node's id is its position in the order in which the nodes were
+// entered, so the nodes of a subtree have the ids from the root of the
+// subtree up to, but not including, its id plus its size.
+//
+// Each record tells whether the node was a leaf (terminal or at the
+// horizon), was answered by the "TransTable" without being searched, was
+// expanded, or was abandoned when the search ran out of budget.  The
+// probability of a node is the weight its value has in the value of its
+// parent: the chance of the draws and roll outcomes between them, or,
+// for an opponent following an "OpponentModel", the chance of its
+// choice, or of the brains it banks in a turn taken as a whole.
+// The probability is 1 for the choices at a MIN or MAX node.  See
+// "TraceReader" to read a trace.
+//
+// File layout:
+//
+//   int   magic number
+//   int   record size, in bytes
+//   int   depth limit, in plies
+//   int   depth units per ply
+//   ...   records, each of:
+//           long    node id
+//           long    parent id, or -1 for the root of a search
+//           long    turn and scores words of the "StateKey"
+//           double  probability within the parent
+//           double  value
+//           long    nanoseconds spent in the subtree
+//           int     nodes in the subtree
+//           short   depth, in depth units
+//           byte    choice (as a "Choice" ordinal)
+//           byte    outcome
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.io.*;
+import java.util.*;
+
+
+public class SearchTrace implements Closeable {
+
+	// File format parameters ...
+	static final int magic = 0x5a445431; // "ZDT1"
+	static final int record_bytes = 64;
+
+	// Outcomes ...
+	static final byte leaf = 0;
+	static final byte table_hit = 1;
+	static final byte expanded = 2;
+	static final byte abandoned = 3;
+	static final String[] outcome_names = { "leaf", "table", "expanded", "abandoned" };
+
+	// Trace file ...
+	final DataOutputStream out;
+	final long max_records;
+	long records = 0L;
+	long dropped = 0L;
+
+	// Nodes on the path from the root to the current node ...
+	int top = 0;
+	long[] ids = new long[64];
+	long[] turns = new long[64];
+	long[] scores = new long[64];
+	double[] probs = new double[64];
+	long[] starts = new long[64];
+	int[] depths = new int[64];
+	int[] choices = new int[64];
+	long next_id = 0L;
+
+	// Weight of each search frame within the last node entered above
+	// it, by frame level ...
+	double[] weight = new double[64];
+
+	// Constructor with the trace file and the depth settings specified,
+	// writing no more than the given number of records ...
+	public SearchTrace(File f, int depth_limit, int unit, long max_records) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16));
+		this.max_records = max_records;
+		out.writeInt(magic);
+		out.writeInt(record_bytes);
+		out.writeInt(depth_limit);
+		out.writeInt(unit);
+	}
+
+	// Constructor with the trace file specified, writing every record ...
+	public SearchTrace(File f) throws IOException {
+		this(f, Eval.depth_limit, (Eval.depth_policy == null) ? 1 : DepthPolicy.ply, Long.MAX_VALUE);
+	}
+
+	// edge -- Note that search frame "j" is reached from frame "i" with
+	// the given probability.
+	void edge(int i, int j, double p) {
+		if (j >= weight.length) {
+			weight = Arrays.copyOf(weight, 2 * (j + 1));
+		}
+		weight[j] = weight[i] * p;
+	}
+
+	// enter -- Note the start of the search of the node in search frame
+	// "i", at the given depth.
+	void enter(int i, int[] f, int depth) {
+		if (top == ids.length) {
+			grow();
+		}
+		if (i >= weight.length) {
+			weight = Arrays.copyOf(weight, 2 * (i + 1));
+		}
+		ids[top] = next_id++;
+		turns[top] = Searcher.keyTurn(f);
+		scores[top] = Searcher.keyScores(f);
+		// A root is reached with certainty ...
+		probs[top] = (top == 0) ? 1.0 : weight[i];
+		depths[top] = depth;
+		choices[top] = f[Searcher.f_choice];
+		starts[top] = System.nanoTime();
+		top++;
+		// Weights below this node are within it ...
+		weight[i] = 1.0;
+	}
+
+	// exit -- Note the end of the search of the current node, with the
+	// given value and outcome, writing its record.
+	void exit(double value, byte outcome) {
+		top--;
+		long nanos = System.nanoTime() - starts[top];
+		if (records >= max_records) {
+			dropped++;
+			return;
+		}
+		try {
+			out.writeLong(ids[top]);
+			out.writeLong((top == 0) ? -1L : ids[top - 1]);
+			out.writeLong(turns[top]);
+			out.writeLong(scores[top]);
+			out.writeDouble(probs[top]);
+			out.writeDouble(value);
+			out.writeLong(nanos);
+			out.writeInt((int) (next_id - ids[top]));
+			out.writeShort(depths[top]);
+			out.writeByte(choices[top]);
+			out.writeByte(outcome);
+			records++;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// grow -- Make room for a deeper path.
+	void grow() {
+		int n = 2 * ids.length;
+		ids = Arrays.copyOf(ids, n);
+		turns = Arrays.copyOf(turns, n);
+		scores = Arrays.copyOf(scores, n);
+		probs = Arrays.copyOf(probs, n);
+		starts = Arrays.copyOf(starts, n);
+		depths = Arrays.copyOf(depths, n);
+		choices = Arrays.copyOf(choices, n);
+	}
+
+	// records -- Return the number of records written.
+	public long records() {
+		return (records);
+	}
+
+	// close -- Finish the trace file.
+	public void close() throws IOException {
+		out.close();
+	}
+
+}
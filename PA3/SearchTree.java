@@ -0,0 +1,471 @@
+//
+// SearchTree
+//
+// This class implements a search that keeps its game tree from one
+// decision to the next.  During a computer turn, "Game.chooseMove" is
+// asked for a decision after every roll, and the position reached by
+// the roll was already expanded as a child of the previous search.  The
+// tree is held as nodes keyed by "StateKey", each remembering its state
+// frame (as in "Searcher"), its children and their probabilities.  At
+// the next decision the tree is re-rooted on the position actually
+// reached: nodes that cannot be reached from it are dropped, and the
+// rest are searched again without being expanded again.  Since the new
+// search looks one ply further than the old one did from the same node,
+// only the nodes at the old search horizon need new children.
+//
+// Values are recomputed on every search, because the horizon moves, but
+// within one search each node caches its value for the remaining depth
+// at which it was last evaluated, so transpositions are searched once.
+// The values returned are the same as those of "Eval.value".
+//
+// The tree is a cache under the shared "CacheBudget".  Each node is
+// worth more the deeper the value it holds and the more often it has
+// been reused, and when the tree is asked to shed bytes, it drops the
+// children of its least valuable nodes at the next re-rooting, along
+// with everything no longer reachable without them.  Dropped subtrees
+// are simply expanded again if they are needed, so values do not change.
+//
+// When the shared "TransTable" is enabled, "Searcher" already carries
+// results from one decision to the next, and it is faster than this
+// tree, so "Game" uses the tree only when the table is disabled.
+//
+// A SearchTree is not thread safe.  Use one per game.
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+
+public class SearchTree implements CacheBudget.Cache {
+
+	// A position in the tree ...
+	static final class Node {
+		final StateKey key;
+		final int[] frame;
+		final double payoff; // payoff if terminal or at the horizon
+		final boolean terminal;
+		Node[] kids = null; // null until expanded
+		double[] probs = null;
+		boolean[] deeper = null; // child is one ply deeper
+		double value = 0.0;
+		int remaining = -1; // remaining depth of the cached value
+		int search = -1; // search in which the value was cached
+		int hits = 0; // times the value or the children were reused
+
+		Node(StateKey key, int[] frame) {
+			this.key = key;
+			this.frame = frame;
+			this.terminal = Searcher.terminal(frame);
+			this.payoff = Searcher.payoff(frame);
+		}
+	}
+
+	// Nodes kept between searches ...
+	HashMap<StateKey, Node> nodes = new HashMap<StateKey, Node>();
+	// Drop the whole tree once it grows beyond this many nodes ...
+	static int max_nodes = 1000000;
+
+	// Approximate sizes, in bytes, of a node with its frame, key and
+	// map entry, and of the arrays of an expanded node ...
+	static final long node_bytes = 320L;
+	static final long kids_bytes = 48L;
+	static final long kid_bytes = 13L;
+
+	// Memory budget, and the size and value of this tree as last seen
+	// by it, and the bytes it has been asked to shed ...
+	final CacheBudget budget = CacheBudget.shared();
+	final CacheBudget.Stats stats;
+	long bytes = 0L;
+	volatile long reported_bytes = 0L;
+	volatile double value_per_byte = 0.0;
+	final AtomicLong pending_shed = new AtomicLong(0L);
+
+	// Frame and roll outcome helpers ...
+	final Searcher helper = new Searcher();
+
+	// Shared table of search results, or null ...
+	TransTable table = TransTable.shared();
+	int context = 0;
+	int search = 0;
+
+	// Search statistics ...
+	long visited = 0L;
+	long expanded = 0L;
+
+	// Default constructor ...
+	public SearchTree() {
+		this.stats = budget.register("SearchTree", this);
+	}
+
+	// useTable -- Share search results through the given table, or
+	// through none if it is null.
+	public void useTable(TransTable t) {
+		table = t;
+	}
+
+	// size -- Return the number of nodes held.
+	public int size() {
+		return (nodes.size());
+	}
+
+	// expanded -- Return the number of nodes expanded since the tree
+	// was created.
+	public long expanded() {
+		return (expanded);
+	}
+
+	// visited -- Return the number of nodes visited since the tree was
+	// created.
+	public long visited() {
+		return (visited);
+	}
+
+	// value -- Return the expected utility value of the given state, as
+	// computed by "Eval.value", re-rooting the tree on it.
+	public double value(State s) {
+		int[] f = new int[Searcher.frame_size];
+		Searcher.load(s, f);
+		Node root = root(f);
+		return (value(root, 0));
+	}
+
+	// values -- Return the expected utility values of rolling and of
+	// stopping in the given state, as computed by "Eval.value",
+	// re-rooting the tree on the state before either is chosen
+	// so that both subtrees are kept for the next decision.
+	public double[] values(State s) {
+		int[] f = new int[Searcher.frame_size];
+		Searcher.load(s, f);
+		f[Searcher.f_choice] = Searcher.undecided;
+		Node root = root(f);
+		if (root.kids == null) {
+			expand(root);
+		}
+		double eu_roll = value(root.kids[0], 0);
+		double eu_stop = (root.kids.length > 1) ? value(root.kids[1], 0) : eu_roll;
+		return (new double[] { eu_roll, eu_stop });
+	}
+
+	// choose -- Return the move that "Game.chooseMove" would select for
+	// the computer in the given state.
+	public Choice choose(State s) {
+		if (s.brains_collected == 0) {
+			return (Choice.roll);
+		}
+		double[] eu = values(s);
+		return ((eu[0] >= eu[1]) ? Choice.roll : Choice.stop);
+	}
+
+	// root -- Start a new search from the given frame, re-rooting the
+	// tree on it: only the nodes that can be reached from the
+	// root are kept, and none are kept if the rules or the
+	// heuristic have changed or the tree has grown too large.
+	// This is the tree's safe point for keeping to its budget.
+	Node root(int[] f) {
+		int ctx = TransTable.context();
+		if ((ctx != context) || (nodes.size() > max_nodes)) {
+			context = ctx;
+			nodes.clear();
+		}
+		search++;
+		Node root = node(f);
+		nodes = reachable(root);
+		publish();
+		budget.check();
+		long want = pending_shed.getAndSet(0L);
+		if (want > 0L) {
+			evict(root, want);
+			publish();
+		}
+		return (root);
+	}
+
+	// reachable -- Return the nodes that can be reached from the given
+	// root, counting their size.
+	HashMap<StateKey, Node> reachable(Node root) {
+		HashMap<StateKey, Node> kept = new HashMap<StateKey, Node>();
+		kept.put(root.key, root);
+		bytes = size(root);
+		// Copy everything reachable from the root ...
+		ArrayDeque<Node> pending = new ArrayDeque<Node>();
+		pending.push(root);
+		while (!(pending.isEmpty())) {
+			Node n = pending.pop();
+			if (n.kids != null) {
+				for (Node k : n.kids) {
+					if (kept.putIfAbsent(k.key, k) == null) {
+						bytes += size(k);
+						pending.push(k);
+					}
+				}
+			}
+		}
+		return (kept);
+	}
+
+	// size -- Return the approximate size of the given node, in bytes.
+	static long size(Node n) {
+		return (node_bytes + ((n.kids == null) ? 0L : (kids_bytes + (kid_bytes * n.kids.length))));
+	}
+
+	// worth -- Return the value of keeping the given node.
+	static double worth(Node n) {
+		return ((1.0 + Math.max(n.remaining, 0)) * (1.0 + n.hits));
+	}
+
+	// publish -- Make the size and value of the tree visible to the
+	// budget. The value per byte of the least valuable nodes
+	// is taken to be that of the tree as a whole.
+	void publish() {
+		double total = 0.0;
+		for (Node n : nodes.values()) {
+			total += worth(n);
+		}
+		reported_bytes = bytes;
+		value_per_byte = (bytes == 0L) ? 0.0 : (total / bytes);
+	}
+
+	// evict -- Free about the given number of bytes, by dropping the
+	// children of the least valuable nodes other than the given
+	// root, and then everything that is no longer reachable.
+	void evict(Node root, long want) {
+		List<Node> expanded_nodes = new ArrayList<Node>();
+		for (Node n : nodes.values()) {
+			if ((n.kids != null) && (n != root)) {
+				expanded_nodes.add(n);
+			}
+		}
+		expanded_nodes.sort(Comparator.comparingDouble(SearchTree::worth));
+		long freed = 0L;
+		for (Node n : expanded_nodes) {
+			if (freed >= want) {
+				break;
+			}
+			// Count the children as freed, although some of them may
+			// still be reachable another way ...
+			freed += kids_bytes + ((kid_bytes + node_bytes) * n.kids.length);
+			n.kids = null;
+			n.probs = null;
+			n.deeper = null;
+		}
+		long before_bytes = bytes;
+		int before_nodes = nodes.size();
+		nodes = reachable(root);
+		stats.evicted(before_nodes - nodes.size(), before_bytes - bytes);
+	}
+
+	// bytes -- Return the approximate size of the tree, in bytes.
+	public long bytes() {
+		return (reported_bytes);
+	}
+
+	// valuePerByte -- Return the value per byte of the tree.
+	public double valuePerByte() {
+		return (value_per_byte);
+	}
+
+	// shed -- Free about the given number of bytes at the next
+	// re-rooting.
+	public void shed(long bytes) {
+		pending_shed.addAndGet(bytes);
+	}
+
+	// node -- Return the node for the given frame, creating it if it is
+	// not yet in the tree. The frame is copied.
+	Node node(int[] f) {
+		StateKey k = new StateKey(Searcher.keyTurn(f), Searcher.keyScores(f));
+		Node n = nodes.get(k);
+		if (n == null) {
+			n = new Node(k, f.clone());
+			nodes.put(k, n);
+			bytes += node_bytes;
+		}
+		return (n);
+	}
+
+	// value -- Return the expected utility value of the given node at
+	// the given depth.
+	double value(Node n, int depth) {
+		visited++;
+		if ((n.terminal) || (depth >= Eval.depth_limit)) {
+			return (n.payoff);
+		}
+		int remaining = Eval.depth_limit - depth;
+		if ((n.search == search) && (n.remaining == remaining)) {
+			n.hits++;
+			stats.hit();
+			return (n.value);
+		}
+		// Look for a value found by this or any other search ...
+		if (table != null) {
+			double val = table.get(n.key.turn, n.key.scores, remaining, context);
+			if (!(Double.isNaN(val))) {
+				n.value = val;
+				n.remaining = remaining;
+				n.search = search;
+				return (val);
+			}
+		}
+		if (n.kids == null) {
+			stats.miss();
+			expand(n);
+		} else {
+			n.hits++;
+			stats.hit();
+		}
+		double val = 0.0;
+		int choice = n.frame[Searcher.f_choice];
+		if ((choice == Searcher.undecided) && (n.kids.length == 2)) {
+			// Choose between rolling and stopping ...
+			double eu_roll = value(n.kids[0], depth);
+			double eu_stop = value(n.kids[1], depth);
+			if (n.frame[Searcher.f_seat] == 0) {
+				val = (eu_roll >= eu_stop) ? eu_roll : eu_stop;
+			} else {
+				val = (eu_roll <= eu_stop) ? eu_roll : eu_stop;
+			}
+		} else if (n.probs.length == 0) {
+			// A single certain child ...
+			val = value(n.kids[0], depth + (n.deeper[0] ? 1 : 0));
+		} else {
+			// Expected value over draws or roll outcomes ...
+			for (int i = 0; i < n.kids.length; i++) {
+				val += (n.probs[i] * value(n.kids[i], depth + (n.deeper[i] ? 1 : 0)));
+			}
+		}
+		if (table != null) {
+			table.put(n.key.turn, n.key.scores, remaining, TransTable.exact, context, val);
+		}
+		n.value = val;
+		n.remaining = remaining;
+		n.search = search;
+		return (val);
+	}
+
+	// expand -- Create the children of the given node, mirroring the
+	// expansion done by "Searcher".
+	void expand(Node n) {
+		expanded++;
+		int[] f = n.frame;
+		int[] g = new int[Searcher.frame_size];
+		List<Node> kids = new ArrayList<Node>();
+		List<Double> probs = new ArrayList<Double>();
+		List<Boolean> deeper = new ArrayList<Boolean>();
+		switch (f[Searcher.f_choice]) {
+		case Searcher.undecided:
+			System.arraycopy(f, 0, g, 0, Searcher.frame_size);
+			g[Searcher.f_choice] = Searcher.roll;
+			kids.add(node(g));
+			deeper.add(false);
+			if (f[Searcher.f_brains] != 0) {
+				g[Searcher.f_choice] = Searcher.stop;
+				kids.add(node(g));
+				deeper.add(false);
+			}
+			break;
+		case Searcher.roll:
+			expandRoll(f, g, kids, probs, deeper);
+			break;
+		case Searcher.stop:
+			System.arraycopy(f, 0, g, 0, Searcher.frame_size);
+			endTurn(g);
+			if (Searcher.terminal(g)) {
+				kids.add(node(g));
+				deeper.add(false);
+			} else {
+				g[Searcher.f_seat] = (g[Searcher.f_seat] + 1) % g[Searcher.f_players];
+				g[Searcher.f_choice] = Searcher.undecided;
+				kids.add(node(g));
+				deeper.add(true);
+			}
+			break;
+		default:
+			break;
+		}
+		n.kids = kids.toArray(new Node[kids.size()]);
+		n.deeper = new boolean[deeper.size()];
+		for (int i = 0; i < n.deeper.length; i++) {
+			n.deeper[i] = deeper.get(i);
+		}
+		n.probs = new double[probs.size()];
+		for (int i = 0; i < n.probs.length; i++) {
+			n.probs[i] = probs.get(i);
+		}
+		bytes += kids_bytes + (kid_bytes * n.kids.length);
+	}
+
+	// expandRoll -- Create the children of a node at which the current
+	// player rolls: the colors that may be drawn next, the
+	// cup refilled with brain dice, or the outcomes of
+	// rolling a full hand.
+	void expandRoll(int[] f, int[] g, List<Node> kids, List<Double> probs, List<Boolean> deeper) {
+		int in_hand = f[Searcher.f_hand] + f[Searcher.f_hand + 1] + f[Searcher.f_hand + 2];
+		if (in_hand == State.hand_size) {
+			int k = helper.composition(f[Searcher.f_hand], f[Searcher.f_hand + 1], f[Searcher.f_hand + 2]);
+			double[] p = helper.out_prob[k];
+			int[] brains = helper.out_brains[k];
+			int[] blasts = helper.out_blasts[k];
+			for (int o = 0; o < p.length; o++) {
+				System.arraycopy(f, 0, g, 0, Searcher.frame_size);
+				for (int c = 0; c < Searcher.num_colors; c++) {
+					int b = brains[(Searcher.num_colors * o) + c];
+					int x = blasts[(Searcher.num_colors * o) + c];
+					g[Searcher.f_hand + c] -= (b + x);
+					g[Searcher.f_brain_dice + c] += b;
+					g[Searcher.f_blast_dice + c] += x;
+					g[Searcher.f_brains] += b;
+					g[Searcher.f_blasts] += x;
+				}
+				boolean shotgunned = (g[Searcher.f_blasts] >= State.num_terminal_blasts);
+				g[Searcher.f_choice] = shotgunned ? Searcher.stop : Searcher.undecided;
+				kids.add(node(g));
+				probs.add(p[o]);
+				deeper.add(!shotgunned);
+			}
+			return;
+		}
+		int in_cup = f[Searcher.f_cup] + f[Searcher.f_cup + 1] + f[Searcher.f_cup + 2];
+		System.arraycopy(f, 0, g, 0, Searcher.frame_size);
+		if (in_cup == 0) {
+			// Reuse collected brain dice ...
+			for (int c = 0; c < Searcher.num_colors; c++) {
+				g[Searcher.f_cup + c] += g[Searcher.f_brain_dice + c];
+				g[Searcher.f_brain_dice + c] = 0;
+			}
+			kids.add(node(g));
+			deeper.add(false);
+			return;
+		}
+		for (int c = 0; c < Searcher.num_colors; c++) {
+			if (f[Searcher.f_cup + c] > 0) {
+				System.arraycopy(f, 0, g, 0, Searcher.frame_size);
+				g[Searcher.f_cup + c]--;
+				g[Searcher.f_hand + c]++;
+				kids.add(node(g));
+				probs.add(((double) f[Searcher.f_cup + c]) / ((double) in_cup));
+				deeper.add(false);
+			}
+		}
+	}
+
+	// endTurn -- End the turn in the given frame, as in "State.endTurn".
+	void endTurn(int[] g) {
+		if (g[Searcher.f_blasts] < State.num_terminal_blasts) {
+			g[Searcher.f_scores + g[Searcher.f_seat]] += g[Searcher.f_brains];
+		}
+		g[Searcher.f_brains] = 0;
+		g[Searcher.f_blasts] = 0;
+		for (int c = 0; c < Searcher.num_colors; c++) {
+			g[Searcher.f_cup + c] = helper.total_dice[c];
+			g[Searcher.f_hand + c] = 0;
+			g[Searcher.f_blast_dice + c] = 0;
+			g[Searcher.f_brain_dice + c] = 0;
+		}
+		g[Searcher.f_choice] = Searcher.stop;
+	}
+
+}
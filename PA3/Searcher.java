@@ -0,0 +1,712 @@
+//
+// Searcher
+//
+// This class implements a fast search engine that computes the same
+// expected utility values as "Eval.value", without allocating objects
+// while it searches.  A state of play is held as a frame of primitive
+// ints: the scores, the turn status, and the number of dice of each
+// color in the cup, the hand, the collected blasts and the collected
+// brains.  Colors are the ints 0 (green), 1 (yellow) and 2 (red).  Each
+// level of the search works in its own frame, taken from storage that
+// is allocated once and reused by every search this object performs.
+// Roll outcomes come from the "RollTable", flattened into primitive
+// arrays when the searcher is built.
+//
+// Values of decision nodes and of partly drawn hands are shared with
+// every other search through the off-heap "TransTable", keyed by the
+// "StateKey" of the frame and the remaining search depth.  Since the
+// search is exhaustive, every stored value is exact, and a hit returns
+// the same value that the search would have computed.
+//
+// If "Eval.depth_policy" is set, depth is counted in fractions of a ply,
+// and the policy decides how much depth each step to a new decision uses
+// up (see "DepthPolicy").  The values then differ from "Eval.value".
+//
+// If "Eval.opponent_model" is set, each opponent's turn is a chance node
+// over the brains it banks, as in "Eval.value_turn", with the model's
+// estimate taken when the search starts.
+//
+// A search may also be given a budget of nodes or time (see
+// "SearchControl"), in which case it deepens one ply at a time and
+// answers from the deepest search it completed.  Values of an abandoned
+// search are never stored in the table.
+//
+// Every node visited may be streamed to a "SearchTrace", for debugging.
+// States may be searched straight from their binary encoding, through a
+// "StateView".
+//
+// A Searcher is not thread safe.  Use one per thread, such as the one
+// returned by "Searcher.local()".
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+public class Searcher {
+
+	// Frame layout ...
+	static final int f_scores = 0; // one per seat, up to State.max_players
+	static final int f_players = 8;
+	static final int f_seat = 9;
+	static final int f_choice = 10;
+	static final int f_brains = 11; // brains collected this turn
+	static final int f_blasts = 12; // blasts collected this turn
+	static final int f_cup = 13; // three colors
+	static final int f_hand = 16; // three colors
+	static final int f_blast_dice = 19; // three colors
+	static final int f_brain_dice = 22; // three colors
+	static final int frame_size = 25;
+
+	// Choices, as Choice ordinals ...
+	static final int undecided = 1;
+	static final int roll = 2;
+	static final int stop = 3;
+
+	// Colors, in the order in which "Eval" expands draws ...
+	static final int num_colors = 3;
+	static final DieColor[] colors = { DieColor.green, DieColor.yellow, DieColor.red };
+
+	// Search frames, one per level of recursion ...
+	int[][] frames;
+
+	// Roll outcomes, flattened by hand composition. For composition
+	// "i" and outcome "j", out_prob[i][j] is its probability, and
+	// out_brains[i][3*j+c] and out_blasts[i][3*j+c] its brains and
+	// blasts of color "c" ...
+	final int max_hand;
+	final double[][] out_prob;
+	final int[][] out_brains;
+	final int[][] out_blasts;
+
+	// Total dice of each color ...
+	final int[] total_dice;
+
+	// Shared table of search results, or null ...
+	TransTable table = TransTable.shared();
+	int context = 0;
+
+	// Depth adjustment in use, or null, and the depth limit in the
+	// units it counts in ...
+	DepthPolicy depth_policy = null;
+	int limit = 0;
+
+	// Estimate of how opponents choose in use, or null for MIN
+	// nodes ...
+	OpponentModel.Estimate opponent = null;
+
+	// Budget of the search in progress, or null if it is unbounded ...
+	SearchControl control = null;
+
+	// Trace of the nodes visited, or null, and the outcome of the node
+	// last visited ...
+	SearchTrace trace = null;
+	byte outcome = SearchTrace.leaf;
+
+	// Search statistics ...
+	long nodes = 0L;
+
+	// One searcher per thread ...
+	static final ThreadLocal<Searcher> local = ThreadLocal.withInitial(Searcher::new);
+
+	// Default constructor ...
+	public Searcher() {
+		this.frames = new int[64][frame_size];
+		this.total_dice = new int[] { Cup.total_num_green, Cup.total_num_yellow, Cup.total_num_red };
+		// Flatten the roll outcome table ...
+		RollTable table = RollTable.get();
+		this.max_hand = State.hand_size;
+		int n = (max_hand + 1) * (max_hand + 1) * (max_hand + 1);
+		this.out_prob = new double[n][];
+		this.out_brains = new int[n][];
+		this.out_blasts = new int[n][];
+		for (int green = 0; green <= max_hand; green++) {
+			for (int yellow = 0; yellow + green <= max_hand; yellow++) {
+				for (int red = 0; red + yellow + green <= max_hand; red++) {
+					RollTable.Outcome[] outs = table.outcomes(green, yellow, red);
+					int i = composition(green, yellow, red);
+					out_prob[i] = new double[outs.length];
+					out_brains[i] = new int[num_colors * outs.length];
+					out_blasts[i] = new int[num_colors * outs.length];
+					for (int j = 0; j < outs.length; j++) {
+						out_prob[i][j] = outs[j].prob;
+						for (int c = 0; c < num_colors; c++) {
+							out_brains[i][(num_colors * j) + c] = outs[j].brains[c + 1];
+							out_blasts[i][(num_colors * j) + c] = outs[j].blasts[c + 1];
+						}
+					}
+				}
+			}
+		}
+	}
+
+	// local -- Return the searcher belonging to the calling thread.
+	public static Searcher local() {
+		return (local.get());
+	}
+
+	// useTable -- Share search results through the given table, or
+	// through none if it is null.
+	public void useTable(TransTable t) {
+		table = t;
+	}
+
+	// useTrace -- Stream every node visited to the given trace, or stop
+	// tracing if it is null.
+	public void useTrace(SearchTrace t) {
+		trace = t;
+	}
+
+	// nodes -- Return the number of nodes visited since the last reset.
+	public long nodes() {
+		return (nodes);
+	}
+
+	// resetNodes -- Reset the count of nodes visited.
+	public void resetNodes() {
+		nodes = 0L;
+	}
+
+	// value -- Return the expected utility value of the given state, as
+	// computed by "Eval.value".
+	public double value(State s) {
+		return (value(s, 0));
+	}
+
+	// value -- Return the expected utility value of the given state at
+	// the given depth, as computed by "Eval.value".
+	public double value(State s, int depth) {
+		load(s, frames[0]);
+		start();
+		return (value(0, depth * unit()));
+	}
+
+	// value -- Return the expected utility value of the state encoded
+	// under the given view, as computed by "Eval.value", without
+	// decoding the state.
+	public double value(StateView v) {
+		load(v, frames[0]);
+		start();
+		return (value(0, 0));
+	}
+
+	// choose -- Return the move that "Game.chooseMove" would select for
+	// the computer in the given state.
+	public Choice choose(State s) {
+		if (s.brains_collected == 0) {
+			return (Choice.roll);
+		}
+		load(s, frames[0]);
+		return (chooseLoaded());
+	}
+
+	// choose -- Return the move that "Game.chooseMove" would select for
+	// the computer in the state encoded under the given view,
+	// without decoding the state.
+	public Choice choose(StateView v) {
+		if (v.brainsCollected() == 0) {
+			return (Choice.roll);
+		}
+		load(v, frames[0]);
+		return (chooseLoaded());
+	}
+
+	// chooseLoaded -- Return the move for the computer in the state
+	// loaded into the root frame.
+	Choice chooseLoaded() {
+		start();
+		frames[0][f_choice] = roll;
+		double eu_roll = value(0, 0);
+		frames[0][f_choice] = stop;
+		double eu_stop = value(0, 0);
+		return ((eu_roll >= eu_stop) ? Choice.roll : Choice.stop);
+	}
+
+	// choose -- Return the move that "Game.chooseMove" would select for
+	// the computer in the given state, searching one ply deeper
+	// at a time, up to "Eval.depth_limit", until the given
+	// budget is spent. The move comes from the deepest search
+	// completed, or is null if not even a one ply search could
+	// be completed.
+	public Choice choose(State s, SearchControl control) {
+		if (s.brains_collected == 0) {
+			return (Choice.roll);
+		}
+		Choice best = null;
+		this.control = control;
+		try {
+			for (int plies = 1; plies <= Eval.depth_limit; plies++) {
+				load(s, frames[0]);
+				start(plies);
+				frames[0][f_choice] = roll;
+				double eu_roll = value(0, 0);
+				frames[0][f_choice] = stop;
+				double eu_stop = value(0, 0);
+				if (control.spent) {
+					break;
+				}
+				best = (eu_roll >= eu_stop) ? Choice.roll : Choice.stop;
+				control.depth = plies;
+				control.eu_roll = eu_roll;
+				control.eu_stop = eu_stop;
+			}
+		} finally {
+			this.control = null;
+		}
+		return (best);
+	}
+
+	// start -- Take up the settings in "Eval" for a new search.
+	void start() {
+		start(Eval.depth_limit);
+	}
+
+	// start -- Take up the settings in "Eval" for a new search to the
+	// given number of plies.
+	void start(int plies) {
+		depth_policy = Eval.depth_policy;
+		context = TransTable.context();
+		limit = plies * unit();
+		if (depth_policy != null) {
+			// Keep adjusted values apart from unadjusted ones ...
+			context ^= (depth_policy.fingerprint() << 16);
+		}
+		opponent = (Eval.opponent_model == null) ? null : Eval.opponent_model.estimate();
+		if (opponent != null) {
+			context ^= Integer.reverse(opponent.fingerprint());
+		}
+	}
+
+	// unit -- Return the number of depth units in one ply.
+	int unit() {
+		return ((depth_policy == null) ? 1 : DepthPolicy.ply);
+	}
+
+	// step -- Return the depth used up by the step to the decision in
+	// the given frame, taken at the given depth.
+	int step(int[] f, int depth) {
+		return ((depth_policy == null) ? 1 : depth_policy.step(f, depth));
+	}
+
+	// load -- Fill the given frame from the given state.
+	static void load(State s, int[] f) {
+		java.util.Arrays.fill(f, 0);
+		for (int seat = 0; seat < s.num_players; seat++) {
+			f[f_scores + seat] = s.brains_eaten[seat];
+		}
+		f[f_players] = s.num_players;
+		f[f_seat] = s.current_seat;
+		f[f_choice] = s.current_choice.ordinal();
+		f[f_brains] = s.brains_collected;
+		f[f_blasts] = s.blasts_collected;
+		f[f_cup + 0] = s.cup.num_green;
+		f[f_cup + 1] = s.cup.num_yellow;
+		f[f_cup + 2] = s.cup.num_red;
+		count(s.hand, f, f_hand);
+		count(s.blasts, f, f_blast_dice);
+		count(s.brains, f, f_brain_dice);
+	}
+
+	// load -- Fill the given frame from the state encoded under the
+	// given view.
+	static void load(StateView v, int[] f) {
+		java.util.Arrays.fill(f, 0);
+		int n = v.numPlayers();
+		for (int seat = 0; seat < n; seat++) {
+			f[f_scores + seat] = v.brainsEaten(seat);
+		}
+		f[f_players] = n;
+		f[f_seat] = v.currentSeat();
+		f[f_choice] = v.currentChoice().ordinal();
+		f[f_brains] = v.brainsCollected();
+		f[f_blasts] = v.blastsCollected();
+		for (int c = 0; c < num_colors; c++) {
+			f[f_cup + c] = v.count(StateCodec.cup, c);
+			f[f_hand + c] = v.count(StateCodec.hand, c);
+			f[f_blast_dice + c] = v.count(StateCodec.blasts, c);
+			f[f_brain_dice + c] = v.count(StateCodec.brains, c);
+		}
+	}
+
+	// count -- Count the dice of each color in the given list into the
+	// given frame, at the given offset.
+	static void count(java.util.List<Die> dice, int[] f, int offset) {
+		for (Die d : dice) {
+			int c = d.getColor().ordinal() - 1;
+			if ((c >= 0) && (c < num_colors)) {
+				f[offset + c]++;
+			}
+		}
+	}
+
+	// keyTurn -- Return the turn word of the "StateKey" of the state in
+	// the given frame.
+	static long keyTurn(int[] f) {
+		long t = 0L;
+		t |= StateKey.colors(f[f_cup], f[f_cup + 1], f[f_cup + 2]) << StateKey.cup_shift;
+		t |= StateKey.colors(f[f_hand], f[f_hand + 1], f[f_hand + 2]) << StateKey.hand_shift;
+		t |= StateKey.colors(f[f_blast_dice], f[f_blast_dice + 1], f[f_blast_dice + 2]) << StateKey.blasts_shift;
+		t |= StateKey.packBrains(f[f_brains]) << StateKey.brains_shift;
+		t |= ((long) f[f_choice]) << StateKey.choice_shift;
+		t |= ((long) f[f_seat]) << StateKey.seat_shift;
+		t |= ((long) (f[f_players] - 1)) << StateKey.players_shift;
+		return (t);
+	}
+
+	// keyScores -- Return the scores word of the "StateKey" of the state
+	// in the given frame.
+	static long keyScores(int[] f) {
+		long p = 0L;
+		for (int seat = 0; seat < f[f_players]; seat++) {
+			p |= StateKey.packScore(f[f_scores + seat]) << (seat * StateKey.score_bits);
+		}
+		return (p);
+	}
+
+	// composition -- Return the index of a hand composition.
+	int composition(int green, int yellow, int red) {
+		return ((((green * (max_hand + 1)) + yellow) * (max_hand + 1)) + red);
+	}
+
+	// child -- Copy frame "i" into frame "i+1", growing the frame
+	// storage if needed, and return the index of the child.
+	int child(int i) {
+		if (i + 1 >= frames.length) {
+			int[][] grown = new int[2 * frames.length][];
+			System.arraycopy(frames, 0, grown, 0, frames.length);
+			for (int k = frames.length; k < grown.length; k++) {
+				grown[k] = new int[frame_size];
+			}
+			frames = grown;
+		}
+		System.arraycopy(frames[i], 0, frames[i + 1], 0, frame_size);
+		return (i + 1);
+	}
+
+	// terminal -- Return true iff the state in the given frame is a
+	// terminal state, as in "State.terminal".
+	static boolean terminal(int[] f) {
+		int n = f[f_players];
+		if ((f[f_seat] != n - 1) || (f[f_choice] != stop)) {
+			return (false);
+		}
+		int winner = leader(f);
+		return ((winner >= 0) && (f[f_scores + winner] >= State.brains_to_win));
+	}
+
+	// leader -- Return the seat with the strictly highest score in the
+	// given frame, or -1 if the highest score is shared.
+	static int leader(int[] f) {
+		int n = f[f_players];
+		int best = 0;
+		for (int i = 1; i < n; i++) {
+			if (f[f_scores + i] > f[f_scores + best]) {
+				best = i;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			if ((i != best) && (f[f_scores + i] == f[f_scores + best])) {
+				return (-1);
+			}
+		}
+		return (best);
+	}
+
+	// payoff -- Return the payoff for seat zero of the state in the
+	// given frame, as in "State.payoff".
+	static double payoff(int[] f) {
+		if (terminal(f)) {
+			return ((leader(f) == 0) ? State.win_payoff : -State.win_payoff);
+		}
+		return (Eval.heuristic(f, f[f_players], f[f_seat], f[f_brains], f[f_blasts], 0));
+	}
+
+	// value -- Compute the expected utility value of the state in frame
+	// "i" at the given depth, as in "Eval.value".
+	double value(int i, int depth) {
+		if (trace == null) {
+			return (visit(i, depth));
+		}
+		trace.enter(i, frames[i], depth);
+		double val = visit(i, depth);
+		trace.exit(val, outcome);
+		return (val);
+	}
+
+	// visit -- Compute the expected utility value of the state in frame
+	// "i" at the given depth, noting how it was found.
+	double visit(int i, int depth) {
+		int[] f = frames[i];
+		nodes++;
+		if ((control != null) && (control.visit())) {
+			// Out of budget, so the value no longer matters ...
+			outcome = SearchTrace.abandoned;
+			return (0.0);
+		}
+		if ((terminal(f)) || (depth >= limit)) {
+			outcome = SearchTrace.leaf;
+			return (payoff(f));
+		}
+		// Look for a value found by this or any other search ...
+		if (table != null) {
+			long turn = keyTurn(f);
+			long scores = keyScores(f);
+			int remaining = limit - depth;
+			double val = table.get(turn, scores, remaining, context);
+			if (Double.isNaN(val)) {
+				val = expand(i, depth);
+				if (complete()) {
+					table.put(turn, scores, remaining, TransTable.exact, context, val);
+				}
+				outcome = complete() ? SearchTrace.expanded : SearchTrace.abandoned;
+			} else {
+				outcome = SearchTrace.table_hit;
+			}
+			return (val);
+		}
+		double val = expand(i, depth);
+		outcome = complete() ? SearchTrace.expanded : SearchTrace.abandoned;
+		return (val);
+	}
+
+	// complete -- Return true unless the search was abandoned, leaving
+	// the values computed since then meaningless.
+	boolean complete() {
+		return ((control == null) || (!(control.spent)));
+	}
+
+	// expand -- Compute the expected utility value of the non-terminal
+	// state in frame "i" by expanding its children.
+	double expand(int i, int depth) {
+		int[] f = frames[i];
+		switch (f[f_choice]) {
+		case roll:
+			return (valueRoll(i, depth));
+		case stop:
+			return (valueStop(i, depth));
+		case undecided:
+			return (valueChoose(i, depth));
+		default:
+			// We should never get here ...
+			return (0.0);
+		}
+	}
+
+	// valueRoll -- Compute the expected utility value of drawing dice
+	// into the hand and rolling, as in "Eval.value_roll".
+	double valueRoll(int i, int depth) {
+		int[] f = frames[i];
+		int in_hand = f[f_hand] + f[f_hand + 1] + f[f_hand + 2];
+		if (in_hand == State.hand_size) {
+			return (valueRollHand(i, depth));
+		}
+		int in_cup = f[f_cup] + f[f_cup + 1] + f[f_cup + 2];
+		int j = child(i);
+		int[] g = frames[j];
+		if (in_cup == 0) {
+			// Reuse collected brain dice ...
+			for (int c = 0; c < num_colors; c++) {
+				g[f_cup + c] += g[f_brain_dice + c];
+				g[f_brain_dice + c] = 0;
+			}
+			if (trace != null) {
+				trace.edge(i, j, 1.0);
+			}
+			return (valueRoll(j, depth));
+		}
+		double val = 0.0;
+		for (int c = 0; c < num_colors; c++) {
+			if (f[f_cup + c] > 0) {
+				double p = ((double) f[f_cup + c]) / ((double) in_cup);
+				System.arraycopy(f, 0, g, 0, frame_size);
+				g[f_cup + c]--;
+				g[f_hand + c]++;
+				if (trace != null) {
+					trace.edge(i, j, p);
+				}
+				val = val + (valueDrawn(j, depth) * p);
+			}
+		}
+		return (val);
+	}
+
+	// valueDrawn -- Compute the expected utility value of rolling after
+	// a die has been drawn, sharing the result through
+	// the table. Different orders of drawing the same
+	// colors lead to the same frame.
+	double valueDrawn(int j, int depth) {
+		if (table == null) {
+			return (valueRoll(j, depth));
+		}
+		int[] g = frames[j];
+		long turn = keyTurn(g);
+		long scores = keyScores(g);
+		int remaining = limit - depth;
+		double val = table.get(turn, scores, remaining, context);
+		if (Double.isNaN(val)) {
+			val = valueRoll(j, depth);
+			if (complete()) {
+				table.put(turn, scores, remaining, TransTable.exact, context, val);
+			}
+		}
+		return (val);
+	}
+
+	// valueRollHand -- Compute the expected utility value of rolling a
+	// full hand, as in "Eval.value_roll_hand" and
+	// "Eval.value_rolled_hand".
+	double valueRollHand(int i, int depth) {
+		int[] f = frames[i];
+		int k = composition(f[f_hand], f[f_hand + 1], f[f_hand + 2]);
+		double[] probs = out_prob[k];
+		int[] brains = out_brains[k];
+		int[] blasts = out_blasts[k];
+		int j = child(i);
+		int[] g = frames[j];
+		double val = 0.0;
+		for (int o = 0; o < probs.length; o++) {
+			System.arraycopy(f, 0, g, 0, frame_size);
+			// Collect brains and blasts from the hand ...
+			for (int c = 0; c < num_colors; c++) {
+				int b = brains[(num_colors * o) + c];
+				int x = blasts[(num_colors * o) + c];
+				g[f_hand + c] -= (b + x);
+				g[f_brain_dice + c] += b;
+				g[f_blast_dice + c] += x;
+				g[f_brains] += b;
+				g[f_blasts] += x;
+			}
+			if (trace != null) {
+				trace.edge(i, j, probs[o]);
+			}
+			if (g[f_blasts] >= State.num_terminal_blasts) {
+				// Shotgunned, so the turn is over ...
+				g[f_choice] = stop;
+				val += (probs[o] * value(j, depth));
+			} else {
+				g[f_choice] = undecided;
+				val += (probs[o] * value(j, (depth + step(g, depth))));
+			}
+		}
+		return (val);
+	}
+
+	// valueStop -- Compute the expected utility value of ending the turn,
+	// as in "Eval.value_stop".
+	double valueStop(int i, int depth) {
+		int[] f = frames[i];
+		int banked = (f[f_blasts] < State.num_terminal_blasts) ? f[f_brains] : 0;
+		return (valueEnd(i, depth, banked, 1.0));
+	}
+
+	// valueEnd -- Compute the expected utility value of ending the turn
+	// having banked the given number of brains, reached with the
+	// given probability.
+	double valueEnd(int i, int depth, int banked, double p) {
+		int j = child(i);
+		int[] g = frames[j];
+		// Update scores ...
+		g[f_scores + g[f_seat]] += banked;
+		// Return all dice to the cup ...
+		g[f_brains] = 0;
+		g[f_blasts] = 0;
+		for (int c = 0; c < num_colors; c++) {
+			g[f_cup + c] = total_dice[c];
+			g[f_hand + c] = 0;
+			g[f_blast_dice + c] = 0;
+			g[f_brain_dice + c] = 0;
+		}
+		g[f_choice] = stop;
+		if (terminal(g)) {
+			return (payoff(g));
+		}
+		// Move to next player ...
+		g[f_seat] = (g[f_seat] + 1) % g[f_players];
+		g[f_choice] = undecided;
+		if (trace != null) {
+			trace.edge(i, j, p);
+		}
+		return (value(j, (depth + step(g, depth))));
+	}
+
+	// valueChoose -- Compute the expected utility value of the better of
+	// rolling and stopping for the current player, as in
+	// "Eval.value_choose".
+	double valueChoose(int i, int depth) {
+		int[] f = frames[i];
+		if ((f[f_seat] != 0) && (opponent != null) && (turnStart(f))) {
+			return (valueTurn(i, depth, opponent.turn(f, f[f_players], f[f_seat])));
+		}
+		if (f[f_brains] == 0) {
+			f[f_choice] = roll;
+			double eu_roll = value(i, depth);
+			f[f_choice] = undecided;
+			return (eu_roll);
+		}
+		if ((f[f_seat] != 0) && (opponent != null)) {
+			return (valueModeled(i, depth, opponent.stop(f, f[f_players], f[f_seat], f[f_brains], f[f_blasts])));
+		}
+		f[f_choice] = roll;
+		double eu_roll = value(i, depth);
+		f[f_choice] = stop;
+		double eu_stop = value(i, depth);
+		f[f_choice] = undecided;
+		if (f[f_seat] == 0) {
+			// MAX node ...
+			return ((eu_roll >= eu_stop) ? eu_roll : eu_stop);
+		} else {
+			// MIN node ...
+			return ((eu_roll <= eu_stop) ? eu_roll : eu_stop);
+		}
+	}
+
+	// turnStart -- Return true iff the given frame is at the start of a
+	// turn, with every die in the cup.
+	boolean turnStart(int[] f) {
+		return ((f[f_brains] == 0) && (f[f_blasts] == 0) && (f[f_cup] == total_dice[0])
+				&& (f[f_cup + 1] == total_dice[1]) && (f[f_cup + 2] == total_dice[2]));
+	}
+
+	// valueTurn -- Compute the expected utility value of an opponent's
+	// whole turn, given the chance that it banks each number
+	// of brains, as in "Eval.value_turn".
+	double valueTurn(int i, int depth, double[] odds) {
+		double val = 0.0;
+		for (int b = 0; b < odds.length; b++) {
+			if (odds[b] > 0.0) {
+				val = val + (odds[b] * valueEnd(i, depth, b, odds[b]));
+			}
+		}
+		return (val);
+	}
+
+	// valueModeled -- Compute the expected utility value of an opponent's
+	// choice partway through its turn, given the chance that
+	// the opponent stops, as in "Eval.value_modeled".
+	double valueModeled(int i, int depth, double p_stop) {
+		int[] f = frames[i];
+		double val = 0.0;
+		if (p_stop > OpponentModel.negligible) {
+			f[f_choice] = stop;
+			if ((trace != null) && (p_stop < 1.0 - OpponentModel.negligible)) {
+				trace.edge(i, i, p_stop);
+			}
+			val = value(i, depth);
+			if (p_stop >= 1.0 - OpponentModel.negligible) {
+				f[f_choice] = undecided;
+				return (val);
+			}
+			val = val * p_stop;
+		} else {
+			p_stop = 0.0;
+		}
+		f[f_choice] = roll;
+		if (trace != null) {
+			trace.edge(i, i, 1.0 - p_stop);
+		}
+		val = val + (value(i, depth) * (1.0 - p_stop));
+		f[f_choice] = undecided;
+		return (val);
+	}
+
+}
@@ -0,0 +1,306 @@
+//
+// SimCoordinator
+//
+// This class provides a "main" method that runs a large simulation job as
+// many shards, each played by a worker JVM of its own (see "SimWorker"),
+// so that no single heap has to hold the whole job.  A job plays every
+// given policy against the same opponent, under every given number of
+// brains needed to win, over the same seeds, so that the results for
+// different policies are paired game by game.  The games are cut into
+// shards of a given size, and up to a given number of workers run at
+// once.
+//
+// Each worker writes the counts of its shard to a file in the job's
+// directory, and its output to a log file beside it.  A worker that
+// exits with an error, leaves no result, or runs past the time allowed
+// is killed if need be and its shard is run again, up to a few times.
+// Shard results already in the directory are kept, so a job that was
+// stopped is resumed by running it again with the same arguments.  Each
+// result names the settings of its shard, and a result left by a job
+// with other settings is refused rather than resumed or merged.  All
+// counts are integers, so merging the shards is exact: the totals are
+// the same however the job was split and however often a worker failed.
+//
+// Workers are started with the same Java and class path as the
+// coordinator.  The "zombie.worker.launcher" system property may give a
+// command to prefix to the worker's command line (e.g., "ssh host" to
+// run workers elsewhere, given a shared directory), "zombie.worker.heap"
+// sets the workers' heap size, and the optional fail rate makes workers
+// die partway through their shards, to test recovery on one machine.
+//
+// Usage:  java SimCoordinator <dir> [policies, e.g. 2,3,search] [brains to win, e.g. 13,10] [games] [games per shard] [workers] [opponent] [fail rate]
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+public class SimCoordinator {
+
+	// Runs of a shard allowed before the job fails ...
+	static int max_attempts = 4;
+	// Time allowed for a shard, in seconds ...
+	static long shard_timeout = 600L;
+
+	// A shard of the job ...
+	static final class Shard {
+		final int id;
+		final String policy;
+		final int brains_to_win;
+		final long first_seed;
+		final int games;
+		int attempts = 0;
+		Process process = null;
+		long started = 0L;
+
+		Shard(int id, String policy, int brains_to_win, long first_seed, int games) {
+			this.id = id;
+			this.policy = policy;
+			this.brains_to_win = brains_to_win;
+			this.first_seed = first_seed;
+			this.games = games;
+		}
+	}
+
+	// Job settings ...
+	final File dir;
+	final String opponent;
+	final int workers;
+	final double fail;
+
+	// Shards of the job ...
+	final List<Shard> shards = new ArrayList<Shard>();
+
+	// Statistics ...
+	int launched = 0;
+	int retried = 0;
+	int resumed = 0;
+
+	// Constructor with the job's directory, the opponent, the number of
+	// workers and the fail rate specified ...
+	public SimCoordinator(File dir, String opponent, int workers, double fail) {
+		this.dir = dir;
+		this.opponent = opponent;
+		this.workers = workers;
+		this.fail = fail;
+	}
+
+	// split -- Cut the job into shards.
+	void split(String[] policies, int[] rules, long games, int shard_games) {
+		for (String policy : policies) {
+			for (int brains_to_win : rules) {
+				for (long first = 0L; first < games; first += shard_games) {
+					int n = (int) Math.min(shard_games, games - first);
+					shards.add(new Shard(shards.size(), policy, brains_to_win, first, n));
+				}
+			}
+		}
+	}
+
+	// result -- Return the result file of the given shard.
+	File result(Shard s) {
+		return (new File(dir, String.format("shard-%05d.properties", s.id)));
+	}
+
+	// load -- Return the contents of the result file of the given shard.
+	Properties load(Shard s) throws IOException {
+		Properties p = new Properties();
+		try (InputStream in = new FileInputStream(result(s))) {
+			p.load(in);
+		}
+		return (p);
+	}
+
+	// mismatch -- Return a description of how the given result differs
+	// from the settings of the given shard, or null if it is the
+	// result of that shard.
+	String mismatch(Shard s, Properties p) {
+		String[][] expected = { { "policy", s.policy }, { "opponent", opponent },
+				{ "brains_to_win", Integer.toString(s.brains_to_win) }, { "first_seed", Long.toString(s.first_seed) },
+				{ "games", Integer.toString(s.games) } };
+		for (String[] e : expected) {
+			String found = p.getProperty(e[0]);
+			if (!(e[1].equals(found))) {
+				return (String.format("%s is %s, not %s", e[0], found, e[1]));
+			}
+		}
+		return (null);
+	}
+
+	// check -- Throw an exception if the result file of the given shard
+	// is not the result of that shard, and return its contents.
+	Properties check(Shard s) throws IOException {
+		Properties p = load(s);
+		String why = mismatch(s, p);
+		if (why != null) {
+			throw new IOException(result(s) + " is the result of another job (" + why
+					+ "); remove it or use another directory");
+		}
+		return (p);
+	}
+
+	// launch -- Start a worker for the given shard.
+	void launch(Shard s) throws IOException {
+		List<String> command = new ArrayList<String>();
+		String launcher = System.getProperty("zombie.worker.launcher");
+		if (launcher != null) {
+			command.addAll(Arrays.asList(launcher.trim().split("\\s+")));
+		}
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.add("-Xmx" + System.getProperty("zombie.worker.heap", "256m"));
+		command.add("-Dzombie.fail=" + fail);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add("SimWorker");
+		command.add(result(s).getPath());
+		command.add(s.policy);
+		command.add(opponent);
+		command.add(Integer.toString(s.brains_to_win));
+		command.add(Long.toString(s.first_seed));
+		command.add(Integer.toString(s.games));
+		command.add(Integer.toString(s.attempts));
+		ProcessBuilder pb = new ProcessBuilder(command);
+		pb.redirectErrorStream(true);
+		pb.redirectOutput(new File(dir, String.format("shard-%05d.log", s.id)));
+		s.process = pb.start();
+		s.started = System.nanoTime();
+		s.attempts++;
+		launched++;
+	}
+
+	// run -- Run every shard without a result, keeping the given number
+	// of workers busy, and rerunning the shards of failed
+	// workers. Return true iff every shard has a result. A result
+	// already in the directory for other settings is refused.
+	boolean run() throws IOException, InterruptedException {
+		Deque<Shard> pending = new ArrayDeque<Shard>();
+		for (Shard s : shards) {
+			if (result(s).exists()) {
+				check(s);
+				resumed++;
+			} else {
+				pending.add(s);
+			}
+		}
+		List<Shard> running = new ArrayList<Shard>();
+		while ((!(pending.isEmpty())) || (!(running.isEmpty()))) {
+			while ((running.size() < workers) && (!(pending.isEmpty()))) {
+				Shard s = pending.poll();
+				launch(s);
+				running.add(s);
+			}
+			Thread.sleep(20L);
+			for (Iterator<Shard> it = running.iterator(); it.hasNext();) {
+				Shard s = it.next();
+				boolean late = (System.nanoTime() - s.started) > TimeUnit.SECONDS.toNanos(shard_timeout);
+				if ((s.process.isAlive()) && (!late)) {
+					continue;
+				}
+				if (late) {
+					s.process.destroyForcibly().waitFor();
+				}
+				it.remove();
+				int code = s.process.exitValue();
+				String why = late ? "timed out" : ("exit code " + code);
+				if ((!late) && (code == 0)) {
+					why = "no result";
+					if (result(s).exists()) {
+						why = mismatch(s, load(s));
+						if (why == null) {
+							continue;
+						}
+						result(s).delete();
+					}
+				}
+				System.out.printf("shard %d (%s, %d brains, seeds %d+%d) failed on attempt %d: %s\n", s.id,
+						s.policy, s.brains_to_win, s.first_seed, s.games, s.attempts, why);
+				if (s.attempts >= max_attempts) {
+					for (Shard r : running) {
+						r.process.destroyForcibly();
+					}
+					return (false);
+				}
+				retried++;
+				pending.addFirst(s);
+			}
+		}
+		return (true);
+	}
+
+	// Totals of the shards of one policy and number of brains to win ...
+	static final class Totals {
+		long games = 0L;
+		long wins = 0L;
+		long turns = 0L;
+		long rolls = 0L;
+		long shotguns = 0L;
+	}
+
+	// merge -- Return the totals of the shard results, by policy and
+	// number of brains to win, in the order of the job. Every
+	// result must be that of its shard.
+	Map<String, Totals> merge() throws IOException {
+		Map<String, Totals> totals = new LinkedHashMap<String, Totals>();
+		for (Shard s : shards) {
+			Properties p = check(s);
+			Totals t = totals.computeIfAbsent(s.policy + " " + s.brains_to_win, k -> new Totals());
+			t.games += Long.parseLong(p.getProperty("games"));
+			t.wins += Long.parseLong(p.getProperty("wins"));
+			t.turns += Long.parseLong(p.getProperty("turns"));
+			t.rolls += Long.parseLong(p.getProperty("rolls"));
+			t.shotguns += Long.parseLong(p.getProperty("shotguns"));
+		}
+		return (totals);
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("usage: java SimCoordinator <dir> [policies] [brains to win] [games] [games per shard]"
+					+ " [workers] [opponent] [fail rate]");
+			System.exit(1);
+		}
+		File dir = new File(args[0]);
+		String[] policies = ((args.length > 1) ? args[1] : "2,3,4,5").split(",");
+		int[] rules = Arrays.stream(((args.length > 2) ? args[2] : "13").split(",")).mapToInt(Integer::parseInt)
+				.toArray();
+		long games = (args.length > 3) ? Long.parseLong(args[3]) : 100000L;
+		int shard_games = (args.length > 4) ? Integer.parseInt(args[4]) : 10000;
+		int workers = (args.length > 5) ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+		String opponent = (args.length > 6) ? args[6] : "3";
+		double fail = (args.length > 7) ? Double.parseDouble(args[7]) : 0.0;
+		dir.mkdirs();
+		SimCoordinator c = new SimCoordinator(dir, opponent, workers, fail);
+		c.split(policies, rules, games, shard_games);
+		long start = System.currentTimeMillis();
+		boolean done = false;
+		try {
+			done = c.run();
+		} catch (IOException e) {
+			System.out.println("JOB FAILED:  " + e.getMessage());
+			System.exit(1);
+		}
+		System.out.printf("%d shards, %d already done, %d workers launched, %d reruns, %.1f s\n", c.shards.size(),
+				c.resumed, c.launched, c.retried, (System.currentTimeMillis() - start) / 1000.0);
+		if (!done) {
+			System.out.println("JOB FAILED:  A SHARD FAILED TOO OFTEN.");
+			System.exit(1);
+		}
+		System.out.printf("%-10s %6s %10s %8s %16s %12s %10s\n", "policy", "brains", "games", "wins", "win rate",
+				"rolls/turn", "shotguns");
+		for (Map.Entry<String, Totals> e : c.merge().entrySet()) {
+			Totals t = e.getValue();
+			double p = ((double) t.wins) / t.games;
+			String[] key = e.getKey().split(" ");
+			System.out.printf("%-10s %6s %10d %8d %.4f +/- %.4f %12.3f %10.4f\n", key[0], key[1], t.games, t.wins, p,
+					1.96 * Math.sqrt(p * (1.0 - p) / t.games), ((double) t.rolls) / t.turns,
+					((double) t.shotguns) / t.turns);
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+//
+// SimWorker
+//
+// This class provides a "main" method that plays one shard of a
+// simulation job for the "SimCoordinator", in a JVM of its own.  A shard
+// is a run of games with consecutive seeds, played by a given policy in
+// the first seat against a given opponent, under a given number of
+// brains needed to win.  The shard's counts are written to a file only
+// once every game has been played, first under a temporary name and
+// then renamed, so the coordinator never sees a partly written result,
+// and a worker that dies leaves no result at all.  The file also names
+// the shard's policy, opponent, brains to win and seeds, so that the
+// coordinator can tell the result of another job from this one.
+//
+// For testing recovery, the "zombie.fail" system property gives the
+// probability that the worker kills itself halfway through the shard.
+//
+// Usage:  java SimWorker <result file> <policy> <opponent> <brains to win> <first seed> <games> [attempt]
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+
+public class SimWorker {
+
+	// play -- Play the given games, recording them in the given metrics.
+	static void play(GameMetrics metrics, Policy policy, Policy opponent, long first_seed, int games, double fail,
+			Random failures) {
+		Policy[] policies = { policy, opponent };
+		for (int i = 0; i < games; i++) {
+			if ((i == games / 2) && (failures.nextDouble() < fail)) {
+				// Die as abruptly as a crashed or killed JVM would ...
+				Runtime.getRuntime().halt(137);
+			}
+			Game g = new Game(first_seed + i);
+			g.useMetrics(metrics);
+			g.playOut(policies);
+		}
+	}
+
+	// write -- Write the given counts of the shard with the given
+	// settings to the given file, atomically.
+	static void write(File f, String policy, String opponent, int brains_to_win, long first_seed,
+			GameMetrics.Snapshot s) throws IOException {
+		Properties p = new Properties();
+		p.setProperty("policy", policy);
+		p.setProperty("opponent", opponent);
+		p.setProperty("brains_to_win", Integer.toString(brains_to_win));
+		p.setProperty("first_seed", Long.toString(first_seed));
+		p.setProperty("games", Long.toString(s.games_finished));
+		p.setProperty("wins", Long.toString(s.wins[0]));
+		p.setProperty("turns", Long.toString(s.turns));
+		p.setProperty("rolls", Long.toString(s.rolls));
+		p.setProperty("shotguns", Long.toString(s.shotguns));
+		File tmp = new File(f.getPath() + ".tmp");
+		try (OutputStream out = new FileOutputStream(tmp)) {
+			p.store(out, null);
+		}
+		Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 6) {
+			System.err.println(
+					"usage: java SimWorker <result file> <policy> <opponent> <brains to win> <first seed> <games> [attempt]");
+			System.exit(1);
+		}
+		File result = new File(args[0]);
+		Policy policy = PolicyCompare.policy(args[1]);
+		Policy opponent = PolicyCompare.policy(args[2]);
+		State.brains_to_win = Integer.parseInt(args[3]);
+		long first_seed = Long.parseLong(args[4]);
+		int games = Integer.parseInt(args[5]);
+		int attempt = (args.length > 6) ? Integer.parseInt(args[6]) : 0;
+		double fail = Double.parseDouble(System.getProperty("zombie.fail", "0"));
+		GameMetrics metrics = new GameMetrics();
+		Random failures = new Random(PolicyCompare.seed(first_seed, attempt, games));
+		play(metrics, policy, opponent, first_seed, games, fail, failures);
+		write(result, args[1], args[2], State.brains_to_win, first_seed, metrics.snapshot());
+	}
+
+}
@@ -7,7 +7,18 @@
 // actual state of play and for considering hypothetical future states of
 // play.  Note that when multiple hypothetical states are being considered,
 // state objects will typically need to be copied and modified, rather than
-// modified in place.
+// modified in place.  Players are identified by seat number, taking turns
+// in seat order.  Seat zero is always the computer, and the remaining
+// seats are its opponents.
+//
+// Copying a state is cheap.  The copy shares its lists of dice (the
+// hand, the collected brains and blasts, and the cup) with the original,
+// and a list is only copied by whichever state first changes it.  The
+// dice themselves are shared too, and a die is only copied when a state
+// that does not own it changes its face, so a die drawn from the cup
+// remains the same object until it is rolled.  The dice and lists of a
+// state must therefore only be changed through its methods, and a state
+// must not be copied by one thread while another thread uses it.
 //
 // Zombie Dice is a trademark of Steve Jackson Games.  For more information
 // about this game, see "zombiedice.sjgames.com".
@@ -31,13 +42,14 @@ public class State {
 	static int num_terminal_blasts = 3;
 	static int hand_size = 3;
 	static double win_payoff = 100.0;
+	static int max_players = 8;
 
-	// Current scores ...
-	public int comp_brains_eaten = 0;
-	public int user_brains_eaten = 0;
+	// Current scores, indexed by seat ...
+	public int num_players = 2;
+	public int[] brains_eaten;
 
 	// Turn status ...
-	public Turn current_player = Turn.invalid;
+	public int current_seat = 0;
 	public Choice current_choice = Choice.invalid;
 
 	// Current dice counts ...
@@ -52,12 +64,32 @@ public class State {
 	// Dice cup ...
 	Cup cup;
 
+	// Lists of dice shared with another state, as a set of zones ...
+	static final int zone_brains = 1;
+	static final int zone_blasts = 2;
+	static final int zone_hand = 4;
+	int shared = 0;
+
+	// Statistics of the game this is the state of play of, and the
+	// rolls made this turn, or null for a hypothetical state. Copies
+	// of a state do not record statistics ...
+	GameMetrics metrics = null;
+	int turn_rolls = 0;
+
 	// Default constructor ...
 	public State() {
+		this(2);
+	}
+
+	// Constructor with the number of players specified ...
+	public State(int num_players) {
+		if ((num_players < 2) || (num_players > max_players)) {
+			throw new IllegalArgumentException("unsupported number of players: " + num_players);
+		}
 		// Initialize to start of game ...
-		this.comp_brains_eaten = 0;
-		this.user_brains_eaten = 0;
-		this.current_player = Turn.computer;
+		this.num_players = num_players;
+		this.brains_eaten = new int[num_players];
+		this.current_seat = 0;
 		this.current_choice = Choice.undecided;
 		this.brains_collected = 0;
 		this.blasts_collected = 0;
@@ -71,31 +103,112 @@ public class State {
 
 	// Copy constructor ...
 	public State(State s) {
-		this.comp_brains_eaten = s.comp_brains_eaten;
-		this.user_brains_eaten = s.user_brains_eaten;
-		this.current_player = s.current_player;
+		this.num_players = s.num_players;
+		this.brains_eaten = s.brains_eaten.clone();
+		this.current_seat = s.current_seat;
 		this.current_choice = s.current_choice;
 		this.brains_collected = s.brains_collected;
 		this.blasts_collected = s.blasts_collected;
-		// Be sure to copy each individual die ...
-		Die this_die;
-		this.brains = new ArrayList<Die>();
-		for (Die d_brains : s.brains) {
-			this_die = new Die(d_brains);
-			this.brains.add(this_die);
+		// Share the lists of dice until either state changes them ...
+		this.brains = s.brains;
+		this.blasts = s.blasts;
+		this.hand = s.hand;
+		this.shared = zone_brains | zone_blasts | zone_hand;
+		s.shared = this.shared;
+		// The copy constructor for Cup shares the contained dice, and
+		// takes away both cups' ownership of them ...
+		this.cup = new Cup(s.cup);
+	}
+
+	// ownHand -- Take a copy of the hand, if it is shared, so that it
+	// may be changed.
+	void ownHand() {
+		if ((shared & zone_hand) != 0) {
+			hand = new ArrayList<Die>(hand);
+			shared &= ~zone_hand;
 		}
-		this.blasts = new ArrayList<Die>();
-		for (Die d_blasts : s.blasts) {
-			this_die = new Die(d_blasts);
-			this.blasts.add(this_die);
+	}
+
+	// ownBrains -- Take a copy of the collected brain dice, if they are
+	// shared, so that they may be changed.
+	void ownBrains() {
+		if ((shared & zone_brains) != 0) {
+			brains = new ArrayList<Die>(brains);
+			shared &= ~zone_brains;
 		}
-		this.hand = new ArrayList<Die>();
-		for (Die d_hand : s.hand) {
-			this_die = new Die(d_hand);
-			this.hand.add(this_die);
+	}
+
+	// ownBlasts -- Take a copy of the collected blast dice, if they are
+	// shared, so that they may be changed.
+	void ownBlasts() {
+		if ((shared & zone_blasts) != 0) {
+			blasts = new ArrayList<Die>(blasts);
+			shared &= ~zone_blasts;
 		}
-		// The copy constructor for Cup copies the contained dice ...
-		this.cup = new Cup(s.cup);
+	}
+
+	// emptied -- Return the given list of dice of the given zone,
+	// emptied, or a new empty list in its place if it is shared.
+	List<Die> emptied(List<Die> dice, int zone) {
+		if ((shared & zone) != 0) {
+			shared &= ~zone;
+			return (new ArrayList<Die>());
+		}
+		dice.clear();
+		return (dice);
+	}
+
+	// mutable -- Return the die at the given index of the given list,
+	// which this state must own, first replacing it with a copy
+	// if this state does not own the die.
+	Die mutable(List<Die> dice, int i) {
+		Die d = dice.get(i);
+		Die m = cup.mutable(d);
+		if (m != d) {
+			dice.set(i, m);
+		}
+		return (m);
+	}
+
+	// currentPlayer -- Return whether the computer or one of its
+	// opponents is the current player.
+	public Turn currentPlayer() {
+		return ((current_seat == 0) ? Turn.computer : Turn.user);
+	}
+
+	// bestOpponentScore -- Return the highest score among the players
+	// other than the one in the given seat.
+	public int bestOpponentScore(int seat) {
+		int best = 0;
+		for (int i = 0; i < num_players; i++) {
+			if ((i != seat) && (brains_eaten[i] > best)) {
+				best = brains_eaten[i];
+			}
+		}
+		return (best);
+	}
+
+	// leader -- Return the seat of the player with the strictly highest
+	// score, or -1 if the highest score is shared.
+	public int leader() {
+		int best = 0;
+		for (int i = 1; i < num_players; i++) {
+			if (brains_eaten[i] > brains_eaten[best]) {
+				best = i;
+			}
+		}
+		for (int i = 0; i < num_players; i++) {
+			if ((i != best) && (brains_eaten[i] == brains_eaten[best])) {
+				return (-1);
+			}
+		}
+		return (best);
+	}
+
+	// key -- Return a compact key identifying this state of play for
+	// the purposes of caching evaluation results.
+	public StateKey key() {
+		return (new StateKey(this));
 	}
 
 	// numDiceInHand -- Return the number of dice in the current hand.
@@ -109,6 +222,9 @@ public class State {
 	// function returns, all dice remaining in the hand
 	// should have feet up.
 	public void collectHand() {
+		ownHand();
+		ownBrains();
+		ownBlasts();
 		// Iterate over the Die objects in hand ...
 		Iterator<Die> i = hand.iterator();
 		// Using an iterator in this way is the only safe way to remove
@@ -141,24 +257,25 @@ public class State {
 	// the State object in place. This function assumes that
 	// the latest hand has been collected.
 	public void endTurn() {
+		boolean shotgun = shotgunned();
+		if (metrics != null) {
+			metrics.turnEnded(turn_rolls, brains_collected, shotgun);
+		}
+		turn_rolls = 0;
 		// Only eat brains if the player has not been shotgunned ...
-		if (shotgunned() == false) {
-			if (current_player == Turn.computer) {
-				comp_brains_eaten = comp_brains_eaten + brains_collected;
-			} else {
-				user_brains_eaten = user_brains_eaten + brains_collected;
-			}
+		if (shotgun == false) {
+			brains_eaten[current_seat] = brains_eaten[current_seat] + brains_collected;
 		}
 		// Clear out collection counts ...
 		brains_collected = 0;
 		blasts_collected = 0;
-		// Return dice to the cup ...
+		// Return dice to the cup, leaving any shared lists alone ...
 		cup.replace(brains);
-		brains.clear();
 		cup.replace(blasts);
-		blasts.clear();
 		cup.replace(hand);
-		hand.clear();
+		brains = emptied(brains, zone_brains);
+		blasts = emptied(blasts, zone_blasts);
+		hand = emptied(hand, zone_hand);
 		// Shake the cup ...
 		cup.shake();
 		// Force choice to stop rolling ...
@@ -171,15 +288,17 @@ public class State {
 	// been returned to the cup, as done in the "endTurn"
 	// function. The State object is modified in place.
 	public void nextPlayer() {
-		// Update turn status
-		if (current_player == Turn.computer) {
-			current_player = Turn.user;
-		} else {
-			current_player = Turn.computer;
-		}
+		// Update turn status, passing the turn to the next seat ...
+		current_seat = (current_seat + 1) % num_players;
 		current_choice = Choice.undecided;
 	}
 
+	// shake -- Shake the cup, drawing from the given random number
+	//          generator. The State object is modified in place.
+	public void shake(Random generator) {
+		cup.shake(generator);
+	}
+
 	// cupIsEmpty -- Returns true iff the cup is empty.
 	public boolean cupIsEmpty() {
 		return (cup.isEmpty());
@@ -190,7 +309,7 @@ public class State {
 	// function replaces collected brain dice into the cup.
 	public void reuseBrains() {
 		cup.replace(brains);
-		brains.clear();
+		brains = emptied(brains, zone_brains);
 	}
 
 	// draw -- Draw a random die from the cup into the hand. Return null
@@ -208,9 +327,11 @@ public class State {
 			// No dice left ...
 			return (null);
 		}
-		// To be safe, initialize die to feet up ...
+		// To be safe, initialize die to feet up, on a die of our own ...
+		drawn_die = cup.mutable(drawn_die);
 		drawn_die.setUp(DieFace.feet);
 		// Add die to the hand ...
+		ownHand();
 		hand.add(drawn_die);
 		// Success ...
 		return (drawn_die);
@@ -232,9 +353,11 @@ public class State {
 			// No dice of this color left ...
 			return (null);
 		}
-		// To be safe, initialize die to feet up ...
+		// To be safe, initialize die to feet up, on a die of our own ...
+		drawn_die = cup.mutable(drawn_die);
 		drawn_die.setUp(DieFace.feet);
 		// Add die to the hand ...
+		ownHand();
 		hand.add(drawn_die);
 		// Success ...
 		return (drawn_die);
@@ -268,6 +391,7 @@ public class State {
 	// Return false if the specified die is not found in the
 	// hand. The State object is modified in place.
 	public boolean replace(Die d) {
+		ownHand();
 		if (hand.remove(d)) {
 			// The hand did contain the specified die ...
 			cup.replace(d);
@@ -301,8 +425,9 @@ public class State {
 	// allocated State.
 	public State roll() {
 		State newstate = new State(this);
-		for (Die d : newstate.hand) {
-			d.roll();
+		newstate.ownHand();
+		for (int i = 0; i < newstate.hand.size(); i++) {
+			newstate.mutable(newstate.hand, i).roll();
 		}
 		// Force choice to undecided ...
 		newstate.current_choice = Choice.undecided;
@@ -316,9 +441,36 @@ public class State {
 	public State roll(DieFace up1, DieFace up2, DieFace up3) {
 		State newstate = new State(this);
 		if (newstate.hand.size() >= 3) {
-			(newstate.hand.get(0)).setUp(up1);
-			(newstate.hand.get(1)).setUp(up2);
-			(newstate.hand.get(2)).setUp(up3);
+			newstate.ownHand();
+			newstate.mutable(newstate.hand, 0).setUp(up1);
+			newstate.mutable(newstate.hand, 1).setUp(up2);
+			newstate.mutable(newstate.hand, 2).setUp(up3);
+		}
+		return (newstate);
+	}
+
+	// roll -- Set the outcome of the roll to the given outcome from the
+	// "RollTable", returning a newly allocated State object.
+	// Within each color, the first dice in the hand show the
+	// outcome's brains, the next ones its blasts, and the rest
+	// show feet.
+	public State roll(RollTable.Outcome o) {
+		State newstate = new State(this);
+		int[] brains = o.brains.clone();
+		int[] blasts = o.blasts.clone();
+		newstate.ownHand();
+		for (int i = 0; i < newstate.hand.size(); i++) {
+			Die d = newstate.mutable(newstate.hand, i);
+			int c = d.getColor().ordinal();
+			if (brains[c] > 0) {
+				d.setUp(DieFace.brain);
+				brains[c]--;
+			} else if (blasts[c] > 0) {
+				d.setUp(DieFace.blast);
+				blasts[c]--;
+			} else {
+				d.setUp(DieFace.feet);
+			}
 		}
 		return (newstate);
 	}
@@ -327,8 +479,22 @@ public class State {
 	// random values for the face up symbols, modifying
 	// the State in place.
 	public State rollInPlace() {
-		for (Die d : hand) {
-			d.roll();
+		ownHand();
+		for (int i = 0; i < hand.size(); i++) {
+			mutable(hand, i).roll();
+		}
+		// Force choice to undecided ...
+		current_choice = Choice.undecided;
+		return (this);
+	}
+
+	// rollInPlace -- Roll the dice that are in the hand, drawing face
+	//                up symbols from the given random number
+	//                generator, modifying the State in place.
+	public State rollInPlace(Random generator) {
+		ownHand();
+		for (int i = 0; i < hand.size(); i++) {
+			mutable(hand, i).roll(generator);
 		}
 		// Force choice to undecided ...
 		current_choice = Choice.undecided;
@@ -342,34 +508,67 @@ public class State {
 	// value of "hand_size" is three).
 	public State rollInPlace(DieFace up1, DieFace up2, DieFace up3) {
 		if (hand.size() >= 3) {
-			(hand.get(0)).setUp(up1);
-			(hand.get(1)).setUp(up2);
-			(hand.get(2)).setUp(up3);
+			ownHand();
+			mutable(hand, 0).setUp(up1);
+			mutable(hand, 1).setUp(up2);
+			mutable(hand, 2).setUp(up3);
 		}
 		return (this);
 	}
 
+	// setUp -- Set the face of the die at the given index of the hand
+	// to the given symbol, modifying the State in place.
+	public DieFace setUp(int i, DieFace sym) {
+		ownHand();
+		return (mutable(hand, i).setUp(sym));
+	}
+
 	// terminal -- Return true iff this is a terminal state (i.e., the
 	// game is over). This function assumes that the current
 	// turn has been ended, as done in the "endTurn" function.
+	// The game ends once the last seat has ended its turn, some
+	// player has reached the winning score, and no one is tied
+	// for the lead.
 	public boolean terminal() {
-		return ((current_player == Turn.user) && (current_choice == Choice.stop)
-				&& (comp_brains_eaten != user_brains_eaten)
-				&& ((comp_brains_eaten >= brains_to_win) || (user_brains_eaten >= brains_to_win)));
+		if ((current_seat != (num_players - 1)) || (current_choice != Choice.stop)) {
+			return (false);
+		}
+		int winner = leader();
+		return ((winner >= 0) && (brains_eaten[winner] >= brains_to_win));
 	}
 
 	// payoff -- Return the utility of the current state, if it is a
 	// terminal state, or the value of a heuristic evaluation
 	// function if it is not a terminal state.
 	public double payoff() {
+		return (payoff(0));
+	}
+
+	// payoff -- Return the utility of the current state for the player
+	// in the given seat, if it is a terminal state, or the value
+	// of a heuristic evaluation function for that player if it
+	// is not a terminal state.
+	public double payoff(int seat) {
 		if (terminal()) {
-			if (comp_brains_eaten > user_brains_eaten) {
+			if (leader() == seat) {
 				return (win_payoff);
 			} else {
 				return (-win_payoff);
 			}
 		} else {
-			return (Eval.heuristic(this));
+			return (Eval.heuristic(this, seat));
+		}
+	}
+
+	// seatName -- Return the name of the player in the given seat, as
+	// used when writing the game state.
+	public String seatName(int seat) {
+		if (seat == 0) {
+			return ("comp");
+		} else if (num_players == 2) {
+			return ("user");
+		} else {
+			return ("user " + seat);
 		}
 	}
 
@@ -379,14 +578,11 @@ public class State {
 		String playerName = "BLANK";
 
 		out.printf("GAME STATE:\n");
-		out.printf("  COMP BRAINS EATEN = %2d\n", comp_brains_eaten);
-		out.printf("  USER BRAINS EATEN = %2d\n", user_brains_eaten);
-		out.printf("\n");
-		if (current_player == Turn.computer) {
-			playerName = "comp";
-		} else {
-			playerName = "user";
+		for (int seat = 0; seat < num_players; seat++) {
+			out.printf("  %s BRAINS EATEN = %2d\n", seatName(seat).toUpperCase(), brains_eaten[seat]);
 		}
+		out.printf("\n");
+		playerName = seatName(current_seat);
 		out.printf("  CURRENT PLAYER = %s\n", playerName);
 		out.printf("\n");
 		out.printf("  BLASTS COLLECTED =");
@@ -0,0 +1,178 @@
+//
+// StateCodec
+//
+// This class implements a compact, fixed-width binary encoding of a
+// state of play, for moving positions between processes, caches and the
+// network without building objects or text.  Every state is encoded in
+// the same number of bytes, so encoded states may be packed into a
+// buffer as an array of records and found by index.  The encoding holds
+// everything in a "State" other than the order of the dice: the scores,
+// the turn status, and, for each zone (the cup, the hand, the collected
+// blasts and the collected brains), the number of dice of each color
+// showing each face.  Decoding a state gives back an equal state, with
+// the dice of each zone in order of color and face.  Use a "StateView"
+// to query an encoded state in place, without decoding it.
+//
+// Encoded states are written and read with absolute indices, so the
+// position of the buffer is left alone by the forms taking an index,
+// and moved past the state by the others.  Byte order does not matter,
+// except for the scores, which follow the order of the buffer.
+//
+// Record layout:
+//
+//   byte       number of players
+//   byte       current seat
+//   byte       current choice (as a "Choice" ordinal)
+//   byte       brains collected this turn
+//   byte       blasts collected this turn
+//   byte[3]    unused, zero
+//   short[8]   scores, indexed by seat, unused seats zero
+//   byte[36]   dice counts, indexed by zone, then color, then face
+//   byte[4]    unused, zero
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.nio.*;
+import java.util.*;
+
+
+public class StateCodec {
+
+	// Size of an encoded state, in bytes ...
+	static final int bytes = 64;
+
+	// Record layout ...
+	static final int o_players = 0;
+	static final int o_seat = 1;
+	static final int o_choice = 2;
+	static final int o_brains = 3;
+	static final int o_blasts = 4;
+	static final int o_scores = 8; // two bytes per seat, up to State.max_players
+	static final int o_dice = 24; // one byte per zone, color and face
+	static final int o_end = 60;
+
+	// Zones ...
+	static final int cup = 0;
+	static final int hand = 1;
+	static final int blasts = 2;
+	static final int brains = 3;
+	static final int num_zones = 4;
+
+	// Colors (as in "Searcher") and faces ...
+	static final int num_colors = 3;
+	static final DieColor[] colors = { DieColor.green, DieColor.yellow, DieColor.red };
+	static final int num_faces = 3;
+	static final DieFace[] faces = { DieFace.brain, DieFace.feet, DieFace.blast };
+
+	// dice -- Return the offset of the count of dice of the given color
+	// showing the given face, in the given zone.
+	static int dice(int zone, int color, int face) {
+		return (o_dice + (((zone * num_colors) + color) * num_faces) + face);
+	}
+
+	// write -- Encode the given state into the given buffer at the given
+	// index. The position of the buffer is not changed.
+	public static void write(State s, ByteBuffer b, int at) {
+		for (int k = 0; k < bytes; k++) {
+			b.put(at + k, (byte) 0);
+		}
+		b.put(at + o_players, (byte) s.num_players);
+		b.put(at + o_seat, (byte) s.current_seat);
+		b.put(at + o_choice, (byte) s.current_choice.ordinal());
+		b.put(at + o_brains, (byte) s.brains_collected);
+		b.put(at + o_blasts, (byte) s.blasts_collected);
+		for (int seat = 0; seat < s.num_players; seat++) {
+			b.putShort(at + o_scores + (2 * seat), (short) s.brains_eaten[seat]);
+		}
+		count(s.cup.dice, b, at, cup);
+		count(s.hand, b, at, hand);
+		count(s.blasts, b, at, blasts);
+		count(s.brains, b, at, brains);
+	}
+
+	// write -- Encode the given state into the given buffer at its
+	// position, moving the position past the state.
+	public static void write(State s, ByteBuffer b) {
+		write(s, b, b.position());
+		b.position(b.position() + bytes);
+	}
+
+	// count -- Count the dice in the given list into the given zone of
+	// the state encoded at the given index. A die showing no
+	// face is counted as showing feet, as "State.draw" would
+	// set it.
+	static void count(List<Die> dice, ByteBuffer b, int at, int zone) {
+		for (int k = 0; k < dice.size(); k++) {
+			Die d = dice.get(k);
+			int c = d.getColor().ordinal() - 1;
+			if ((c < 0) || (c >= num_colors)) {
+				continue;
+			}
+			int f = d.getUp().ordinal() - 1;
+			if ((f < 0) || (f >= num_faces)) {
+				f = DieFace.feet.ordinal() - 1;
+			}
+			int i = at + dice(zone, c, f);
+			b.put(i, (byte) (b.get(i) + 1));
+		}
+	}
+
+	// read -- Decode the state encoded in the given buffer at the given
+	// index. The position of the buffer is not changed.
+	public static State read(ByteBuffer b, int at) {
+		int num_players = b.get(at + o_players);
+		if ((num_players < 2) || (num_players > State.max_players)) {
+			throw new IllegalArgumentException("not an encoded state: " + num_players + " players");
+		}
+		State s = new State(num_players);
+		s.current_seat = b.get(at + o_seat);
+		s.current_choice = Choice.values()[b.get(at + o_choice)];
+		s.brains_collected = b.get(at + o_brains);
+		s.blasts_collected = b.get(at + o_blasts);
+		for (int seat = 0; seat < num_players; seat++) {
+			s.brains_eaten[seat] = b.getShort(at + o_scores + (2 * seat));
+		}
+		// Rebuild the cup from its counts, as the other zones are ...
+		s.cup = new Cup();
+		s.cup.dice.clear();
+		s.cup.num_dice = 0;
+		s.cup.num_green = 0;
+		s.cup.num_yellow = 0;
+		s.cup.num_red = 0;
+		for (int c = 0; c < num_colors; c++) {
+			for (int f = 0; f < num_faces; f++) {
+				for (int n = b.get(at + dice(cup, c, f)); n > 0; n--) {
+					Die d = new Die(colors[c]);
+					d.setUp(faces[f]);
+					s.cup.replace(d);
+				}
+				fill(s.hand, b.get(at + dice(hand, c, f)), c, f);
+				fill(s.blasts, b.get(at + dice(blasts, c, f)), c, f);
+				fill(s.brains, b.get(at + dice(brains, c, f)), c, f);
+			}
+		}
+		return (s);
+	}
+
+	// read -- Decode the state encoded in the given buffer at its
+	// position, moving the position past the state.
+	public static State read(ByteBuffer b) {
+		State s = read(b, b.position());
+		b.position(b.position() + bytes);
+		return (s);
+	}
+
+	// fill -- Add the given number of dice of the given color, showing
+	// the given face, to the given list.
+	static void fill(List<Die> dice, int n, int color, int face) {
+		for (; n > 0; n--) {
+			Die d = new Die(colors[color]);
+			d.setUp(faces[face]);
+			dice.add(d);
+		}
+	}
+
+}
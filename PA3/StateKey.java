@@ -0,0 +1,154 @@
+//
+// StateKey
+//
+// This class implements a compact, exact key for a state of play, for
+// use in caching evaluation results.  The key captures everything that
+// the value of a state depends upon: the scores of every seat, the
+// current seat and choice, the brains collected this turn, and the
+// colors of the dice in the cup, in the hand, and among the collected
+// blasts.  The colors of the collected brain dice are implied, since
+// every die not in the cup, the hand, or the blasts must be a brain.
+// The order of dice and the faces showing are not part of the key, as
+// keys are only taken of states whose hands have been collected.  The
+// key has room for at most "max_brains" brains collected and scores of
+// at most "max_score", and rather than clamp a state past those limits,
+// which would let it share the key of another, it refuses to take a key
+// of the state at all.
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+public final class StateKey {
+
+	// Bit layout of the "turn" word ...
+	static final int color_bits = 4;
+	static final int cup_shift = 0;
+	static final int hand_shift = 12;
+	static final int blasts_shift = 24;
+	static final int brains_shift = 36;
+	static final int brains_bits = 6;
+	static final int choice_shift = 42;
+	static final int seat_shift = 44;
+	static final int players_shift = 47;
+
+	// Bit layout of the "scores" word ...
+	static final int score_bits = 8;
+
+	// Largest brains collected and score that a key can hold ...
+	static final int max_brains = (1 << brains_bits) - 1;
+	static final int max_score = (1 << score_bits) - 1;
+
+	// Packed turn status and dice colors ...
+	final long turn;
+	// Packed scores, one byte per seat ...
+	final long scores;
+
+	// Constructor -- Build the key of the given state.
+	public StateKey(State s) {
+		long t = 0L;
+		t |= colors(s.cup.num_green, s.cup.num_yellow, s.cup.num_red) << cup_shift;
+		t |= colors(s.hand) << hand_shift;
+		t |= colors(s.blasts) << blasts_shift;
+		t |= packBrains(s.brains_collected) << brains_shift;
+		t |= ((long) s.current_choice.ordinal()) << choice_shift;
+		t |= ((long) s.current_seat) << seat_shift;
+		t |= ((long) (s.num_players - 1)) << players_shift;
+		long p = 0L;
+		for (int seat = 0; seat < s.num_players; seat++) {
+			p |= packScore(s.brains_eaten[seat]) << (seat * score_bits);
+		}
+		this.turn = t;
+		this.scores = p;
+	}
+
+	// Constructor -- Rebuild a key from its packed words.
+	public StateKey(long turn, long scores) {
+		this.turn = turn;
+		this.scores = scores;
+	}
+
+	// packBrains -- Return the given brains collected, to be packed into a
+	// key, or throw an exception if the key cannot hold them.
+	static long packBrains(int brains) {
+		if ((brains < 0) || (brains > max_brains)) {
+			throw new IllegalArgumentException("brains collected out of the range of a state key: " + brains);
+		}
+		return (brains);
+	}
+
+	// packScore -- Return the given score, to be packed into a key, or
+	// throw an exception if the key cannot hold it.
+	static long packScore(int score) {
+		if ((score < 0) || (score > max_score)) {
+			throw new IllegalArgumentException("score out of the range of a state key: " + score);
+		}
+		return (score);
+	}
+
+	// colors -- Pack counts of green, yellow and red dice.
+	static long colors(int green, int yellow, int red) {
+		return (((long) green) | (((long) yellow) << color_bits) | (((long) red) << (2 * color_bits)));
+	}
+
+	// colors -- Pack the counts of each color in the given list of dice.
+	static long colors(java.util.List<Die> dice) {
+		int green = 0;
+		int yellow = 0;
+		int red = 0;
+		for (Die d : dice) {
+			switch (d.getColor()) {
+			case green:
+				green++;
+				break;
+			case yellow:
+				yellow++;
+				break;
+			case red:
+				red++;
+				break;
+			default:
+				break;
+			}
+		}
+		return (colors(green, yellow, red));
+	}
+
+	// seat -- Return the current seat recorded in the key.
+	public int seat() {
+		return ((int) ((turn >>> seat_shift) & 0x7));
+	}
+
+	// numPlayers -- Return the number of players recorded in the key.
+	public int numPlayers() {
+		return ((int) ((turn >>> players_shift) & 0x7) + 1);
+	}
+
+	// score -- Return the score of the given seat recorded in the key.
+	public int score(int seat) {
+		return ((int) ((scores >>> (seat * score_bits)) & 0xff));
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof StateKey)) {
+			return (false);
+		}
+		StateKey k = (StateKey) o;
+		return ((turn == k.turn) && (scores == k.scores));
+	}
+
+	@Override
+	public int hashCode() {
+		long h = (turn * 0x9e3779b97f4a7c15L) ^ scores;
+		h ^= (h >>> 29);
+		return ((int) (h ^ (h >>> 32)));
+	}
+
+	@Override
+	public String toString() {
+		return (String.format("%012x:%016x", turn, scores));
+	}
+
+}
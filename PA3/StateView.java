@@ -0,0 +1,178 @@
+//
+// StateView
+//
+// This class implements a read-only view of a state of play encoded by
+// "StateCodec", answering queries straight from the buffer without
+// decoding the state.  A view is a flyweight: it is pointed at one
+// encoded state after another with "wrap", so a single view can walk a
+// whole buffer of states without allocating.  The view holds no copy of
+// the state, so a change to the buffer shows through the view at once.
+// Only the scores are gathered into an array of the view's own, for the
+// evaluation functions that take the scores as an array.
+//
+// A view can be evaluated by "Eval.heuristic", and searched by
+// "Searcher.value" and "Searcher.choose".
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.nio.*;
+
+
+public class StateView {
+
+	// Buffer and index of the state in view ...
+	ByteBuffer buffer = null;
+	int at = 0;
+
+	// Choices, by ordinal ...
+	static final Choice[] choices = Choice.values();
+
+	// Scores gathered for evaluation ...
+	final int[] scores = new int[State.max_players];
+
+	// Default constructor ...
+	public StateView() {
+	}
+
+	// Constructor with the buffer and index of the state specified ...
+	public StateView(ByteBuffer b, int at) {
+		wrap(b, at);
+	}
+
+	// wrap -- View the state encoded in the given buffer at the given
+	// index, and return this view.
+	public StateView wrap(ByteBuffer b, int at) {
+		this.buffer = b;
+		this.at = at;
+		return (this);
+	}
+
+	// numPlayers -- Return the number of players.
+	public int numPlayers() {
+		return (buffer.get(at + StateCodec.o_players));
+	}
+
+	// currentSeat -- Return the seat of the current player.
+	public int currentSeat() {
+		return (buffer.get(at + StateCodec.o_seat));
+	}
+
+	// currentChoice -- Return the current choice.
+	public Choice currentChoice() {
+		return (choices[buffer.get(at + StateCodec.o_choice)]);
+	}
+
+	// brainsCollected -- Return the brains collected this turn.
+	public int brainsCollected() {
+		return (buffer.get(at + StateCodec.o_brains));
+	}
+
+	// blastsCollected -- Return the blasts collected this turn.
+	public int blastsCollected() {
+		return (buffer.get(at + StateCodec.o_blasts));
+	}
+
+	// brainsEaten -- Return the score of the given seat.
+	public int brainsEaten(int seat) {
+		return (buffer.getShort(at + StateCodec.o_scores + (2 * seat)));
+	}
+
+	// scores -- Return the scores, indexed by seat, in an array owned by
+	// this view and overwritten by the next call.
+	public int[] scores() {
+		int n = numPlayers();
+		for (int seat = 0; seat < n; seat++) {
+			scores[seat] = brainsEaten(seat);
+		}
+		return (scores);
+	}
+
+	// count -- Return the number of dice of the given color (0 for green,
+	// 1 for yellow, 2 for red) showing the given face, in the
+	// given zone (see "StateCodec").
+	public int count(int zone, int color, DieFace face) {
+		return (buffer.get(at + StateCodec.dice(zone, color, face.ordinal() - 1)));
+	}
+
+	// count -- Return the number of dice of the given color in the given
+	// zone.
+	public int count(int zone, int color) {
+		int n = 0;
+		for (int f = 0; f < StateCodec.num_faces; f++) {
+			n += buffer.get(at + StateCodec.dice(zone, color, f));
+		}
+		return (n);
+	}
+
+	// count -- Return the number of dice in the given zone.
+	public int count(int zone) {
+		int n = 0;
+		for (int c = 0; c < StateCodec.num_colors; c++) {
+			n += count(zone, c);
+		}
+		return (n);
+	}
+
+	// numDiceInHand -- Return the number of dice in the current hand.
+	public int numDiceInHand() {
+		return (count(StateCodec.hand));
+	}
+
+	// cupIsEmpty -- Returns true iff the cup is empty.
+	public boolean cupIsEmpty() {
+		return (count(StateCodec.cup) <= 0);
+	}
+
+	// shotgunned -- Return true iff the blasts collected meet the blast
+	// limit, as in "State.shotgunned".
+	public boolean shotgunned() {
+		return (blastsCollected() >= State.num_terminal_blasts);
+	}
+
+	// leader -- Return the seat of the player with the strictly highest
+	// score, or -1 if the highest score is shared.
+	public int leader() {
+		int n = numPlayers();
+		int best = 0;
+		for (int i = 1; i < n; i++) {
+			if (brainsEaten(i) > brainsEaten(best)) {
+				best = i;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			if ((i != best) && (brainsEaten(i) == brainsEaten(best))) {
+				return (-1);
+			}
+		}
+		return (best);
+	}
+
+	// terminal -- Return true iff the state in view is a terminal state,
+	// as in "State.terminal".
+	public boolean terminal() {
+		if ((currentSeat() != (numPlayers() - 1)) || (currentChoice() != Choice.stop)) {
+			return (false);
+		}
+		int winner = leader();
+		return ((winner >= 0) && (brainsEaten(winner) >= State.brains_to_win));
+	}
+
+	// payoff -- Return the utility of the state in view for the player
+	// in the given seat, as in "State.payoff".
+	public double payoff(int seat) {
+		if (terminal()) {
+			return ((leader() == seat) ? State.win_payoff : -State.win_payoff);
+		} else {
+			return (Eval.heuristic(this, seat));
+		}
+	}
+
+	// state -- Return a decoded copy of the state in view.
+	public State state() {
+		return (StateCodec.read(buffer, at));
+	}
+
+}
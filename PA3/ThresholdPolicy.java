@@ -0,0 +1,68 @@
+//
+// ThresholdPolicy
+//
+// This class implements the simplest sensible Zombie Dice policy: keep
+// rolling until a given number of brains have been collected this turn,
+// or until one more blast could end the turn.  A player that is behind
+// at the end of the last round keeps rolling until it takes the lead.
+// Optionally, the policy also stops whenever the chance of being
+// shotgunned by the next roll, taken from the "RollTable", is too high.
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+public class ThresholdPolicy implements Policy {
+
+	// Stop once this many brains have been collected ...
+	int brains_threshold;
+	// Stop once this many blasts have been collected ...
+	int blasts_threshold;
+	// Stop once the shotgun risk of rolling exceeds this ...
+	double max_risk = 1.0;
+
+	// Constructor with the brain threshold specified ...
+	public ThresholdPolicy(int brains_threshold) {
+		this(brains_threshold, State.num_terminal_blasts - 1);
+	}
+
+	// Constructor with both thresholds specified ...
+	public ThresholdPolicy(int brains_threshold, int blasts_threshold) {
+		this.brains_threshold = brains_threshold;
+		this.blasts_threshold = blasts_threshold;
+	}
+
+	// Constructor with both thresholds and a shotgun risk limit
+	// specified ...
+	public ThresholdPolicy(int brains_threshold, int blasts_threshold, double max_risk) {
+		this(brains_threshold, blasts_threshold);
+		this.max_risk = max_risk;
+	}
+
+	// choose -- Return the action taken by this policy.
+	public Choice choose(State s) {
+		// Always roll if no brains have been collected ...
+		if (s.brains_collected == 0) {
+			return (Choice.roll);
+		}
+		int mine = s.brains_eaten[s.current_seat] + s.brains_collected;
+		int best = s.bestOpponentScore(s.current_seat);
+		// In the final round, the last seat must take the lead ...
+		if ((s.current_seat == s.num_players - 1) && (best >= State.brains_to_win) && (mine <= best)) {
+			return (Choice.roll);
+		}
+		// Bank a winning score ...
+		if (mine >= State.brains_to_win) {
+			return (Choice.stop);
+		}
+		if ((s.brains_collected >= brains_threshold) || (s.blasts_collected >= blasts_threshold)) {
+			return (Choice.stop);
+		}
+		if ((max_risk < 1.0) && (RollTable.get().shotgunRisk(s) > max_risk)) {
+			return (Choice.stop);
+		}
+		return (Choice.roll);
+	}
+
+}
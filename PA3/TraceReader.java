@@ -0,0 +1,180 @@
+//
+// TraceReader
+//
+// This class provides a "main" method that reads a trace of searches
+// written by "SearchTrace", in constant memory.  It summarizes the trace
+// by depth: the nodes at each depth, how many of them were leaves, table
+// hits, expanded or abandoned, and the time spent in their subtrees.  It
+// then lists the hot spots: the nodes below the roots of the searches,
+// and no deeper than the given depth, whose subtrees took the longest to
+// search.  If a node id is given, the nodes of its subtree no deeper
+// than the given depth are listed as well, children first, indented by
+// depth.
+//
+// Usage:  java TraceReader <trace file> [max depth] [subtree node id] [hot spots]
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+
+
+public class TraceReader {
+
+	// A record of a trace ...
+	static final class Record {
+		long id;
+		long parent;
+		long turn;
+		long scores;
+		double prob;
+		double value;
+		long nanos;
+		int nodes;
+		int depth;
+		int choice;
+		int outcome;
+
+		// copy -- Return a copy of this record.
+		Record copy() {
+			Record r = new Record();
+			r.id = id;
+			r.parent = parent;
+			r.turn = turn;
+			r.scores = scores;
+			r.prob = prob;
+			r.value = value;
+			r.nanos = nanos;
+			r.nodes = nodes;
+			r.depth = depth;
+			r.choice = choice;
+			r.outcome = outcome;
+			return (r);
+		}
+
+		// write -- Print this record on one line, indented by the given
+		// number of spaces.
+		void write(PrintStream out, int indent) {
+			out.printf("%" + (indent + 1) + "s%d %s %-9s %-9s depth %d p %.4f value %9.3f %d nodes %.3f ms\n", "", id,
+					new StateKey(turn, scores), Choice.values()[choice], SearchTrace.outcome_names[outcome], depth, prob,
+					value, nodes, nanos / 1.0e6);
+		}
+	}
+
+	// Header of the trace being read ...
+	int depth_limit;
+	int unit;
+
+	// read -- Pass every record of the given trace file to the given
+	// consumer. The same record object is reused for each.
+	void read(File f, Consumer<Record> each) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16))) {
+			if (in.readInt() != SearchTrace.magic) {
+				throw new IOException("not a search trace: " + f);
+			}
+			if (in.readInt() != SearchTrace.record_bytes) {
+				throw new IOException("search trace has records of a different size: " + f);
+			}
+			depth_limit = in.readInt();
+			unit = in.readInt();
+			Record r = new Record();
+			while (true) {
+				try {
+					r.id = in.readLong();
+				} catch (EOFException e) {
+					return;
+				}
+				r.parent = in.readLong();
+				r.turn = in.readLong();
+				r.scores = in.readLong();
+				r.prob = in.readDouble();
+				r.value = in.readDouble();
+				r.nanos = in.readLong();
+				r.nodes = in.readInt();
+				r.depth = in.readShort();
+				r.choice = in.readByte();
+				r.outcome = in.readByte();
+				each.accept(r);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: java TraceReader <trace file> [max depth] [subtree node id] [hot spots]");
+			System.exit(1);
+		}
+		File file = new File(args[0]);
+		int max_depth = (args.length > 1) ? Integer.parseInt(args[1]) : Integer.MAX_VALUE;
+		long subtree = (args.length > 2) ? Long.parseLong(args[2]) : -1L;
+		int hot = (args.length > 3) ? Integer.parseInt(args[3]) : 10;
+		TraceReader reader = new TraceReader();
+
+		// Summary by depth, and the hot spots ...
+		TreeMap<Integer, long[]> by_depth = new TreeMap<Integer, long[]>();
+		PriorityQueue<Record> hottest = new PriorityQueue<Record>(Comparator.comparingLong((Record r) -> r.nanos));
+		long[] total = new long[2];
+		long[] range = { -1L, -1L };
+		reader.read(file, r -> {
+			total[0]++;
+			if (r.parent < 0L) {
+				total[1]++;
+			}
+			long[] d = by_depth.computeIfAbsent(r.depth, k -> new long[SearchTrace.outcome_names.length + 2]);
+			d[r.outcome]++;
+			d[SearchTrace.outcome_names.length] += r.nanos;
+			d[SearchTrace.outcome_names.length + 1]++;
+			if (r.id == subtree) {
+				range[0] = r.id;
+				range[1] = r.id + r.nodes;
+			}
+			if ((r.parent >= 0L) && (r.depth <= max_depth)
+					&& ((hottest.size() < hot) || (r.nanos > hottest.peek().nanos))) {
+				hottest.add(r.copy());
+				if (hottest.size() > hot) {
+					hottest.poll();
+				}
+			}
+		});
+		System.out.printf("%d nodes in %d searches, depth limit %d plies of %d units\n", total[0], total[1],
+				reader.depth_limit, reader.unit);
+		System.out.printf("%6s %12s", "depth", "nodes");
+		for (String name : SearchTrace.outcome_names) {
+			System.out.printf(" %12s", name);
+		}
+		System.out.printf(" %14s\n", "subtree ms");
+		for (Map.Entry<Integer, long[]> e : by_depth.entrySet()) {
+			long[] d = e.getValue();
+			System.out.printf("%6d %12d", e.getKey(), d[SearchTrace.outcome_names.length + 1]);
+			for (int o = 0; o < SearchTrace.outcome_names.length; o++) {
+				System.out.printf(" %12d", d[o]);
+			}
+			System.out.printf(" %14.3f\n", d[SearchTrace.outcome_names.length] / 1.0e6);
+		}
+		System.out.println("hot spots:");
+		List<Record> hot_spots = new ArrayList<Record>(hottest);
+		hot_spots.sort(Comparator.comparingLong((Record r) -> -r.nanos));
+		for (Record r : hot_spots) {
+			r.write(System.out, 2);
+		}
+
+		// The nodes of the given subtree ...
+		if (subtree >= 0L) {
+			if (range[0] < 0L) {
+				System.out.println("no node " + subtree);
+				return;
+			}
+			System.out.println("subtree of node " + subtree + ":");
+			reader.read(file, r -> {
+				if ((r.id >= range[0]) && (r.id < range[1]) && (r.depth <= max_depth)) {
+					r.write(System.out, 2 + (2 * r.depth));
+				}
+			});
+		}
+	}
+
+}
@@ -0,0 +1,234 @@
+//
+// TransTable
+//
+// This class implements a fixed-size transposition table of search
+// results, shared by every search running in the JVM.  Each entry holds
+// a state key (see "StateKey"), the remaining search depth at which the
+// state was evaluated, a bound type, and the backed-up value.  Entries
+// live off the Java heap, in a direct buffer whose size is fixed when
+// the table is created, so the table never grows and is invisible to
+// the garbage collector.
+//
+// Reads and writes take no locks.  Each entry is five aligned 64-bit
+// words, and the last word is a check word: the exclusive-or of the
+// other four.  A writer stores the four words and then the check word.
+// A reader loads all five words and accepts the entry only if the check
+// word matches, so an entry torn by a concurrent write is treated as a
+// miss rather than returning a wrong value.
+//
+// The size of the shared table is set, in megabytes, by the "zombie.tt.mb"
+// system property (default 64).  A size of zero disables the table.
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.lang.invoke.*;
+import java.nio.*;
+import java.util.concurrent.atomic.*;
+
+
+public final class TransTable {
+
+	// Bound types ...
+	public static final int exact = 0;
+	public static final int lower = 1;
+	public static final int upper = 2;
+
+	// Entry layout, in bytes ...
+	static final int w_turn = 0;
+	static final int w_scores = 8;
+	static final int w_value = 16;
+	static final int w_meta = 24;
+	static final int w_check = 32;
+	static final int entry_bytes = 40;
+	// Entries probed for each key ...
+	static final int bucket_size = 4;
+
+	// Atomic access to the longs of a byte buffer ...
+	static final VarHandle words = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+	// The table shared by all searches ...
+	static TransTable shared = null;
+
+	// Entry storage ...
+	final ByteBuffer entries;
+	final long num_buckets;
+
+	// Snapshot of an earlier run consulted on a miss, or null ...
+	volatile CacheSnapshot warm = null;
+
+	// Statistics ...
+	final LongAdder probes = new LongAdder();
+	final LongAdder hits = new LongAdder();
+	final LongAdder stores = new LongAdder();
+
+	// Constructor -- Allocate a table of at most the given size.
+	public TransTable(long max_bytes) {
+		long buckets = Long.highestOneBit(Math.max(max_bytes / (entry_bytes * bucket_size), 1L));
+		// A single direct buffer is limited to 2 GB ...
+		while (buckets * entry_bytes * bucket_size > Integer.MAX_VALUE) {
+			buckets = buckets / 2;
+		}
+		this.num_buckets = buckets;
+		this.entries = ByteBuffer.allocateDirect((int) (buckets * entry_bytes * bucket_size));
+	}
+
+	// shared -- Return the table shared by all searches, or null if the
+	// shared table is disabled.
+	public static synchronized TransTable shared() {
+		if (shared == null) {
+			long mb = Long.getLong("zombie.tt.mb", 64L);
+			if (mb <= 0L) {
+				return (null);
+			}
+			shared = new TransTable(mb << 20);
+		}
+		return (shared);
+	}
+
+	// bytes -- Return the off-heap memory held by this table.
+	public long bytes() {
+		return (entries.capacity());
+	}
+
+	// context -- Return a stamp of everything, other than the state and
+	// remaining depth, that search values depend upon: the
+	// rules and the heuristic in use. Entries stored under a
+	// different stamp are ignored. The stamp is the same from
+	// one run to the next, so it can be saved to disk.
+	public static int context() {
+		int h = State.brains_to_win;
+		h = (31 * h) + State.num_terminal_blasts;
+		h = (31 * h) + State.hand_size;
+		h = (31 * h) + Double.hashCode(State.win_payoff);
+		h = (31 * h) + Cup.total_num_green;
+		h = (31 * h) + Cup.total_num_yellow;
+		h = (31 * h) + Cup.total_num_red;
+		h = (31 * h) + Double.hashCode(Die.green_brains) + Double.hashCode(Die.green_blasts);
+		h = (31 * h) + Double.hashCode(Die.yellow_brains) + Double.hashCode(Die.yellow_blasts);
+		h = (31 * h) + Double.hashCode(Die.red_brains) + Double.hashCode(Die.red_blasts);
+		h = (31 * h) + ((Eval.heuristic_table == null) ? 0 : Eval.heuristic_table.fingerprint());
+		return (h & 0xffff);
+	}
+
+	// meta -- Pack the remaining depth, bound type and context stamp.
+	static long meta(int remaining, int bound, int context) {
+		return ((((long) context) << 32) | (((long) bound) << 16) | (remaining & 0xffffL));
+	}
+
+	// bucket -- Return the byte offset of the bucket for a key.
+	long bucket(long turn, long scores) {
+		long h = (turn * 0x9e3779b97f4a7c15L) ^ (scores * 0xc2b2ae3d27d4eb4fL);
+		h ^= (h >>> 31);
+		return ((h & (num_buckets - 1)) * entry_bytes * bucket_size);
+	}
+
+	// get -- Return the value stored for the given key at the given
+	// remaining depth and context, or NaN if there is none.
+	// Only exact values are returned.
+	public double get(long turn, long scores, int remaining, int context) {
+		probes.increment();
+		long base = bucket(turn, scores);
+		long want = meta(remaining, exact, context);
+		for (int e = 0; e < bucket_size; e++) {
+			int at = (int) (base + (e * entry_bytes));
+			long t = (long) words.getOpaque(entries, at + w_turn);
+			long p = (long) words.getOpaque(entries, at + w_scores);
+			long v = (long) words.getOpaque(entries, at + w_value);
+			long m = (long) words.getOpaque(entries, at + w_meta);
+			long c = (long) words.getOpaque(entries, at + w_check);
+			if ((t == turn) && (p == scores) && (m == want) && (c == (t ^ p ^ v ^ m))) {
+				hits.increment();
+				return (Double.longBitsToDouble(v));
+			}
+		}
+		// Fall back on a snapshot from an earlier run ...
+		CacheSnapshot snapshot = warm;
+		if (snapshot != null) {
+			double val = snapshot.get(turn, scores, want);
+			if (!(Double.isNaN(val))) {
+				hits.increment();
+				put(turn, scores, remaining, exact, context, val);
+				return (val);
+			}
+		}
+		return (Double.NaN);
+	}
+
+	// put -- Store a value for the given key at the given remaining
+	// depth and context. The entry replaced is one already
+	// holding the key, or else the one with the least remaining
+	// depth in the bucket.
+	public void put(long turn, long scores, int remaining, int bound, int context, double value) {
+		stores.increment();
+		long base = bucket(turn, scores);
+		int victim = (int) base;
+		int victim_depth = Integer.MAX_VALUE;
+		for (int e = 0; e < bucket_size; e++) {
+			int at = (int) (base + (e * entry_bytes));
+			long t = (long) words.getOpaque(entries, at + w_turn);
+			long p = (long) words.getOpaque(entries, at + w_scores);
+			long m = (long) words.getOpaque(entries, at + w_meta);
+			if ((t == turn) && (p == scores)) {
+				victim = at;
+				break;
+			}
+			// Empty entries have no remaining depth and no context ...
+			int depth = (m == 0L) ? -1 : (int) (m & 0xffffL);
+			if (depth < victim_depth) {
+				victim = at;
+				victim_depth = depth;
+			}
+		}
+		long v = Double.doubleToRawLongBits(value);
+		long m = meta(remaining, bound, context);
+		// Invalidate the entry while it is rewritten ...
+		words.setOpaque(entries, victim + w_check, 0L);
+		words.setOpaque(entries, victim + w_turn, turn);
+		words.setOpaque(entries, victim + w_scores, scores);
+		words.setOpaque(entries, victim + w_value, v);
+		words.setOpaque(entries, victim + w_meta, m);
+		words.setRelease(entries, victim + w_check, turn ^ scores ^ v ^ m);
+	}
+
+	// entry -- Copy the entry at the given index into the given array,
+	// as turn, scores, value and meta words, returning false if
+	// the entry is empty or torn.
+	boolean entry(long index, long[] out) {
+		int at = (int) (index * entry_bytes);
+		long t = (long) words.getOpaque(entries, at + w_turn);
+		long p = (long) words.getOpaque(entries, at + w_scores);
+		long v = (long) words.getOpaque(entries, at + w_value);
+		long m = (long) words.getOpaque(entries, at + w_meta);
+		long c = (long) words.getAcquire(entries, at + w_check);
+		if ((m == 0L) || (c != (t ^ p ^ v ^ m))) {
+			return (false);
+		}
+		out[0] = t;
+		out[1] = p;
+		out[2] = v;
+		out[3] = m;
+		return (true);
+	}
+
+	// numEntries -- Return the number of entry slots in the table.
+	long numEntries() {
+		return (num_buckets * bucket_size);
+	}
+
+	// clear -- Remove every entry from the table.
+	public void clear() {
+		for (int at = 0; at + 8 <= entries.capacity(); at += 8) {
+			words.setOpaque(entries, at, 0L);
+		}
+	}
+
+	// hitRate -- Return the fraction of probes that found a value.
+	public double hitRate() {
+		long n = probes.sum();
+		return ((n == 0L) ? 0.0 : ((double) hits.sum()) / n);
+	}
+
+}
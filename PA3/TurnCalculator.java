@@ -0,0 +1,409 @@
+//
+// TurnCalculator
+//
+// This class implements an exact calculator of what a policy banks in
+// one turn: the probability of banking each number of brains, the
+// probability of being shotgunned, and the expected number of rolls.
+// Rather than simulating turns, it follows every way the turn can go,
+// through the draws from the cup and the outcomes of each roll, with
+// the probabilities of the "Cup" counts and the "Die" faces (by way of
+// the "RollTable").  The turn is played as "Game.takeAction" plays it:
+// dice showing feet are held and rolled again, the hand is filled from
+// the cup, and when the cup runs dry the collected brain dice are put
+// back in the cup and the hand is rolled with the dice it has.  The
+// policy is consulted whenever the game would consult it, with a state
+// of play built for the purpose, so any policy that looks only at the
+// state of play may be given, threshold policies being the usual case.
+//
+// Positions within a turn are remembered, so each is evaluated once.  A
+// hand of held dice that all show feet again returns to the same
+// position, which is solved for exactly rather than followed forever.
+// A turn that collects "max_brains" brains is counted as stopping
+// there; only a policy that never stops could get that far.
+//
+// The "main" method prints the distribution for each given policy, with
+// the dice cup holding the given numbers of green, yellow and red dice,
+// and can check the calculation by simulating turns through "Game".
+//
+// Usage:  java TurnCalculator [policies, e.g. 2,3,4] [cup, e.g. 6,4,3] [simulated turns]
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.io.*;
+import java.util.*;
+
+
+public class TurnCalculator {
+
+	// Most brains a turn is followed to ...
+	static int max_brains = 63;
+
+	// Layout of a position within a turn ...
+	static final int t_cup = 0; // three colors
+	static final int t_hand = 3; // three colors, all held showing feet
+	static final int t_blast_dice = 6; // three colors
+	static final int t_brain_dice = 9; // three colors
+	static final int t_brains = 12; // brains collected this turn
+	static final int t_blasts = 13; // blasts collected this turn
+	static final int t_size = 14;
+
+	// Most dice of one color in one zone that a key can hold ...
+	static final int max_count = 15;
+
+	// Colors (as in "Searcher") ...
+	static final int num_colors = 3;
+
+	// What a policy banks from a position to the end of the turn ...
+	public static final class Distribution {
+		// Probability of banking each number of brains, not counting
+		// shotguns ...
+		public final double[] banked = new double[max_brains + 1];
+		// Probability of being shotgunned ...
+		public double shotgun = 0.0;
+		// Expected number of rolls ...
+		public double rolls = 0.0;
+		// Most brains banked with any probability ...
+		int top = 0;
+
+		// add -- Add the given distribution, weighted by the given
+		// probability.
+		void add(Distribution d, double p) {
+			for (int b = 0; b <= d.top; b++) {
+				banked[b] += p * d.banked[b];
+			}
+			top = Math.max(top, d.top);
+			shotgun += p * d.shotgun;
+			rolls += p * d.rolls;
+		}
+
+		// scale -- Multiply every probability and expectation by the
+		// given factor.
+		void scale(double k) {
+			for (int b = 0; b <= top; b++) {
+				banked[b] *= k;
+			}
+			shotgun *= k;
+			rolls *= k;
+		}
+
+		// mean -- Return the expected number of brains banked.
+		public double mean() {
+			double m = 0.0;
+			for (int b = 0; b < banked.length; b++) {
+				m += b * banked[b];
+			}
+			return (m);
+		}
+
+		// total -- Return the total probability, which should be one.
+		public double total() {
+			double p = shotgun;
+			for (int b = 0; b < banked.length; b++) {
+				p += banked[b];
+			}
+			return (p);
+		}
+	}
+
+	// Marker of a position being evaluated ...
+	static final Distribution in_progress = new Distribution();
+
+	// Policy whose turns are calculated ...
+	final Policy policy;
+	final RollTable rolls = RollTable.get();
+
+	// State of play at the start of the turn being calculated, and the
+	// positions of the turn evaluated so far ...
+	State start = null;
+	final HashMap<Long, Distribution> memo = new HashMap<Long, Distribution>();
+
+	// Statistics ...
+	long decisions = 0L;
+
+	// Constructor with the policy specified ...
+	public TurnCalculator(Policy policy) {
+		this.policy = policy;
+	}
+
+	// turn -- Return what the policy banks from the given state of play
+	// to the end of the current player's turn. The current choice
+	// must be undecided, as it is at the start of a turn, and
+	// any dice in the hand must show feet. The dice of each
+	// color must number at most "max_count".
+	public Distribution turn(State s) {
+		if (s.current_choice != Choice.undecided) {
+			throw new IllegalArgumentException("the current choice must be undecided: " + s.current_choice);
+		}
+		if ((Cup.total_num_green > max_count) || (Cup.total_num_yellow > max_count)
+				|| (Cup.total_num_red > max_count)) {
+			throw new IllegalArgumentException("more than " + max_count + " dice of one color in the cup: "
+					+ Cup.total_num_green + "," + Cup.total_num_yellow + "," + Cup.total_num_red);
+		}
+		start = s;
+		memo.clear();
+		decisions = 0L;
+		int[] t = new int[t_size];
+		t[t_cup + 0] = s.cup.num_green;
+		t[t_cup + 1] = s.cup.num_yellow;
+		t[t_cup + 2] = s.cup.num_red;
+		Searcher.count(s.hand, t, t_hand);
+		Searcher.count(s.blasts, t, t_blast_dice);
+		Searcher.count(s.brains, t, t_brain_dice);
+		t[t_brains] = s.brains_collected;
+		t[t_blasts] = s.blasts_collected;
+		for (int i = 0; i < t_brains; i++) {
+			if (t[i] > max_count) {
+				throw new IllegalArgumentException("more than " + max_count + " dice of one color in one zone");
+			}
+		}
+		return (decide(t));
+	}
+
+	// turn -- Return what the policy banks in the first turn of a game
+	// between two players.
+	public Distribution turn() {
+		return (turn(new State()));
+	}
+
+	// positions -- Return the number of positions evaluated by the last
+	// calculation.
+	public int positions() {
+		return (memo.size());
+	}
+
+	// key -- Return a key identifying the given position. Each count of
+	// dice takes four bits, so none may exceed "max_count". The
+	// packed counts are multiplied by an odd constant, which
+	// keeps them distinct but spreads them over the bits that
+	// "Long.hashCode" keeps.
+	static long key(int[] t) {
+		long k = 0L;
+		for (int i = 0; i < t_brains; i++) {
+			k |= ((long) t[i]) << (4 * i);
+		}
+		k |= ((long) t[t_brains]) << 48;
+		k |= ((long) t[t_blasts]) << 56;
+		return (k * 0x9e3779b97f4a7c15L);
+	}
+
+	// decide -- Return what the policy banks from the given position,
+	// where it must choose to roll or stop.
+	Distribution decide(int[] t) {
+		long k = key(t);
+		Distribution d = memo.get(k);
+		if (d == in_progress) {
+			throw new IllegalStateException("turn returns to a position it has not left");
+		}
+		if (d != null) {
+			return (d);
+		}
+		memo.put(k, in_progress);
+		d = new Distribution();
+		if ((t[t_brains] >= max_brains) || (policy.choose(state(t)) != Choice.roll)) {
+			d.top = Math.min(t[t_brains], max_brains);
+			d.banked[d.top] = 1.0;
+		} else {
+			double again = roll(t, k, d);
+			// Solve for the rolls that come back to this position ...
+			d.rolls += 1.0;
+			d.scale(1.0 / (1.0 - again));
+		}
+		decisions++;
+		memo.put(k, d);
+		return (d);
+	}
+
+	// A hand drawn before rolling, and the chance of drawing it ...
+	static final class Drawn {
+		final int[] t;
+		double p = 0.0;
+
+		Drawn(int[] t) {
+			this.t = t;
+		}
+	}
+
+	// roll -- Add to the given distribution what the policy banks after
+	// rolling from the given position, whose key is given. Return
+	// the probability of coming back to the same position, which
+	// is left out of the distribution. Dice drawn in different
+	// orders make the same hand, which is rolled once.
+	double roll(int[] t, long k, Distribution d) {
+		int need = State.hand_size - (t[t_hand] + t[t_hand + 1] + t[t_hand + 2]);
+		Map<Long, Drawn> hands = new LinkedHashMap<Long, Drawn>();
+		draw(t.clone(), need, 1.0, hands);
+		double again = 0.0;
+		for (Drawn h : hands.values()) {
+			again += rolled(h.t, h.p, k, d);
+		}
+		return (again);
+	}
+
+	// draw -- Draw the given number of dice into the hand of the given
+	// position, reached with the given probability, adding the
+	// hands drawn to the given map, by key.
+	void draw(int[] t, int need, double p, Map<Long, Drawn> hands) {
+		int in_cup = t[t_cup] + t[t_cup + 1] + t[t_cup + 2];
+		if ((need > 0) && (in_cup == 0)) {
+			// Reuse collected brain dice, and roll the hand as it is ...
+			for (int c = 0; c < num_colors; c++) {
+				t[t_cup + c] += t[t_brain_dice + c];
+				t[t_brain_dice + c] = 0;
+			}
+			need = 0;
+		}
+		if (need == 0) {
+			hands.computeIfAbsent(key(t), x -> new Drawn(t)).p += p;
+			return;
+		}
+		for (int c = 0; c < num_colors; c++) {
+			if (t[t_cup + c] > 0) {
+				int[] u = t.clone();
+				u[t_cup + c]--;
+				u[t_hand + c]++;
+				draw(u, need - 1, p * t[t_cup + c] / in_cup, hands);
+			}
+		}
+	}
+
+	// rolled -- Roll the hand of the given position, reached with the
+	// given probability. Return the probability of coming back
+	// to the position with the given key.
+	double rolled(int[] t, double p, long k, Distribution d) {
+		double again = 0.0;
+		for (RollTable.Outcome o : rolls.outcomes(t[t_hand], t[t_hand + 1], t[t_hand + 2])) {
+			double q = p * o.prob;
+			int[] u = t.clone();
+			// Collect brains and blasts from the hand ...
+			for (int c = 0; c < num_colors; c++) {
+				int b = o.brains[c + 1];
+				int x = o.blasts[c + 1];
+				u[t_hand + c] -= (b + x);
+				u[t_brain_dice + c] += b;
+				u[t_blast_dice + c] += x;
+				u[t_brains] += b;
+				u[t_blasts] += x;
+			}
+			if (u[t_blasts] >= State.num_terminal_blasts) {
+				d.shotgun += q;
+			} else if (key(u) == k) {
+				again += q;
+			} else {
+				d.add(decide(u), q);
+			}
+		}
+		return (again);
+	}
+
+	// state -- Return the state of play at the given position, for the
+	// policy to choose from.
+	State state(int[] t) {
+		State s = new State(start);
+		s.current_choice = Choice.undecided;
+		s.brains_collected = t[t_brains];
+		s.blasts_collected = t[t_blasts];
+		// Fill fresh lists, rather than those shared with the start ...
+		s.hand = new ArrayList<Die>();
+		s.blasts = new ArrayList<Die>();
+		s.brains = new ArrayList<Die>();
+		s.shared = 0;
+		s.cup = new Cup();
+		s.cup.dice.clear();
+		s.cup.num_dice = 0;
+		s.cup.num_green = 0;
+		s.cup.num_yellow = 0;
+		s.cup.num_red = 0;
+		int feet = DieFace.feet.ordinal() - 1;
+		for (int c = 0; c < num_colors; c++) {
+			for (int n = t[t_cup + c]; n > 0; n--) {
+				s.cup.replace(new Die(StateCodec.colors[c]));
+			}
+			StateCodec.fill(s.hand, t[t_hand + c], c, feet);
+			StateCodec.fill(s.blasts, t[t_blast_dice + c], c, DieFace.blast.ordinal() - 1);
+			StateCodec.fill(s.brains, t[t_brain_dice + c], c, DieFace.brain.ordinal() - 1);
+		}
+		return (s);
+	}
+
+	// simulate -- Play the given number of first turns of games through
+	// "Game" with the given policy, and return the fraction
+	// banking each number of brains, with the fraction
+	// shotgunned last.
+	static double[] simulate(Policy policy, int turns) {
+		double[] found = new double[max_brains + 2];
+		for (int i = 0; i < turns; i++) {
+			Game g = new Game(PolicyCompare.seed(i, 0, 0));
+			g.verbose = false;
+			Choice act = Choice.invalid;
+			while (g.status.current_seat == 0) {
+				act = policy.choose(g.status);
+				g.takeAction(act);
+			}
+			// A turn ended by a roll was ended by a shotgun ...
+			if (act == Choice.roll) {
+				found[max_brains + 1] += 1.0;
+			} else {
+				found[Math.min(g.status.brains_eaten[0], max_brains)] += 1.0;
+			}
+		}
+		for (int b = 0; b < found.length; b++) {
+			found[b] /= turns;
+		}
+		return (found);
+	}
+
+	// write -- Print the given distribution, beside the given simulated
+	// fractions if they are not null.
+	static void write(PrintStream out, Distribution d, double[] simulated) {
+		out.printf("  shotgunned %.6f", d.shotgun);
+		if (simulated != null) {
+			out.printf("   simulated %.6f", simulated[max_brains + 1]);
+		}
+		out.println();
+		for (int b = 0; b <= max_brains; b++) {
+			if ((d.banked[b] < 1.0e-9) && ((simulated == null) || (simulated[b] == 0.0))) {
+				continue;
+			}
+			out.printf("  banked %2d  %.6f", b, d.banked[b]);
+			if (simulated != null) {
+				out.printf("   simulated %.6f", simulated[b]);
+			}
+			out.println();
+		}
+	}
+
+	public static void main(String[] args) {
+		String[] policies = ((args.length > 0) ? args[0] : "1,2,3,4,5,6").split(",");
+		if (args.length > 1) {
+			String[] cup = args[1].split(",");
+			Cup.total_num_green = Integer.parseInt(cup[0]);
+			Cup.total_num_yellow = Integer.parseInt(cup[1]);
+			Cup.total_num_red = Integer.parseInt(cup[2]);
+			Cup.total_num_dice = Cup.total_num_green + Cup.total_num_yellow + Cup.total_num_red;
+		}
+		int turns = (args.length > 2) ? Integer.parseInt(args[2]) : 0;
+		System.out.printf("cup of %d green, %d yellow and %d red dice\n", Cup.total_num_green, Cup.total_num_yellow,
+				Cup.total_num_red);
+		System.out.printf("%-10s %10s %10s %10s %10s %10s\n", "policy", "banked", "shotgun", "rolls", "positions",
+				"ms");
+		List<Distribution> found = new ArrayList<Distribution>();
+		for (String name : policies) {
+			TurnCalculator calc = new TurnCalculator(PolicyCompare.policy(name));
+			long start = System.nanoTime();
+			Distribution d = calc.turn();
+			double ms = (System.nanoTime() - start) / 1.0e6;
+			found.add(d);
+			System.out.printf("%-10s %10.4f %10.4f %10.4f %10d %10.2f\n", name, d.mean(), d.shotgun, d.rolls,
+					calc.positions(), ms);
+		}
+		for (int i = 0; i < policies.length; i++) {
+			System.out.printf("policy %s:\n", policies[i]);
+			double[] simulated = (turns > 0) ? simulate(PolicyCompare.policy(policies[i]), turns) : null;
+			write(System.out, found.get(i), simulated);
+		}
+	}
+
+}